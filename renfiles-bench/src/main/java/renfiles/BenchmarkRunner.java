@@ -0,0 +1,24 @@
+package renfiles;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler (allocation rate per operation), so that
+ * allocations in the per-file path show up next to the throughput.
+ * Accepts the usual JMH command line options, e.g. a benchmark name pattern or -p fileCount=1000.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		Options _options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(_options).run();
+	}
+}
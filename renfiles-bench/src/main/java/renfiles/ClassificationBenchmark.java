@@ -0,0 +1,45 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the mapping of a file name to its destination with the rule table, without moving anything.
+ * The rule table is read from the system property renfiles.rules (default renfiles/renfiles.rules,
+ * i.e. the benchmarks are started in the project root directory).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+	private String[] names;
+	private RuleEngine ruleEngine;
+
+	@Setup
+	public void setup() throws IOException {
+		names = SampleNames.names(1024);
+		Map<String, String> _config = new HashMap<String, String>();
+		_config.put("doc", "/tmp/doc");
+		_config.put("news", "/tmp/news");
+		ruleEngine = RuleEngine.load(new File(System.getProperty("renfiles.rules", "renfiles/renfiles.rules")), _config);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public void classify(Blackhole bh) {
+		for (String _name : names) {
+			bh.consume(ruleEngine.classify(_name));
+		}
+	}
+}
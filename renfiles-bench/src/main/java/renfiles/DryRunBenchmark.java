@@ -0,0 +1,83 @@
+package renfiles;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks a complete run in testMode (scan, classification, report; no moves) over a synthetic
+ * inbox in a temporary directory. The output of the run is discarded.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DryRunBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int fileCount;
+
+	@Param({ "1", "4" })
+	public int threadCount;
+
+	private Path baseDir;
+	private File propertiesFile;
+	private PrintStream stdout;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		baseDir = Files.createTempDirectory("renfiles-bench");
+		Path _inbox = Files.createDirectory(baseDir.resolve("inbox"));
+		for (int i = 0; i < fileCount; i++) {
+			Files.createFile(_inbox.resolve(SampleNames.name(i)));
+		}
+		propertiesFile = baseDir.resolve("renfiles.properties").toFile();
+		// all tables are given with absolute paths (next to the rule table), independent of the working directory
+		File _rules = new File(System.getProperty("renfiles.rules", "renfiles/renfiles.rules")).getAbsoluteFile();
+		PrintWriter _out = new PrintWriter(propertiesFile, "ISO-8859-1");
+		try {
+			_out.println("srcDirName=" + _inbox);
+			_out.println("docDirName=" + baseDir.resolve("doc"));
+			_out.println("newsDirName=" + baseDir.resolve("news"));
+			_out.println("podcastSrcDirName=" + baseDir.resolve("podcasts"));
+			_out.println("podcastDestDirName=" + baseDir.resolve("podcasts"));
+			_out.println("ruleFileName=" + _rules.getPath());
+			_out.println("podcastRuleFileName=" + new File(_rules.getParentFile(), "renfiles.podcasts").getPath());
+			_out.println("backupRuleFileName=" + new File(_rules.getParentFile(), "renfiles.backups").getPath());
+			_out.println("pdfMetaRuleFileName=" + new File(_rules.getParentFile(), "renfiles.pdfmeta").getPath());
+			_out.println("testMode=true");
+			_out.println("tagBackend=none");
+			_out.println("threadCount=" + threadCount);
+		}
+		finally {
+			_out.close();
+		}
+		stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		System.setOut(stdout);
+		FileMover.deleteTree(baseDir);
+	}
+
+	@Benchmark
+	public void dryRun() throws IOException, InterruptedException {
+		new RenameFiles(propertiesFile.getPath()).run();
+	}
+}
@@ -0,0 +1,52 @@
+package renfiles;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the extension filter used for the directory scans.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileFilterBenchmark {
+	private final File dir = new File("/tmp");
+	private final RenameFileFilter filter = new RenameFileFilter(".pdf");
+	private String[] names;
+	private Path[] paths;
+
+	@Setup
+	public void setup() {
+		names = SampleNames.names(1024);
+		paths = new Path[names.length];
+		for (int i = 0; i < names.length; i++) {
+			paths[i] = Paths.get("/tmp", names[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public void acceptName(Blackhole bh) {
+		for (String _name : names) {
+			bh.consume(filter.accept(dir, _name));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public void acceptPath(Blackhole bh) {
+		for (Path _path : paths) {
+			bh.consume(filter.accept(_path));
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package renfiles;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the parsing of the leading date of file names (with and without date).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeadingDateBenchmark {
+	private String[] names;
+
+	@Setup
+	public void setup() {
+		names = SampleNames.names(1024);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public void parseLeading(Blackhole bh) {
+		for (String _name : names) {
+			bh.consume(DateParser.parseLeading(_name));
+		}
+	}
+}
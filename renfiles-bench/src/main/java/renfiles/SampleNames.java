@@ -0,0 +1,46 @@
+package renfiles;
+
+/**
+ * Synthetic inbox file names for the benchmarks; a mix of all rule types,
+ * names with a leading date but no meaning and names that are not recognized.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+final class SampleNames {
+	private static final String[] PREFIXES = {
+		"NZZS_20140105_", "NZZ_20140106_", "ZH_20140108_", "taz-ges-2014-01-09_", "sonze-2014-01-10_",
+		"EQUITY_20140111_", "FOLIO_20140112_", "GESE_20140113_", "communications201402_", "compw-2014-01-14_",
+		"input_gl_bka_201401151200_", "kw03_mmgl_xx_20140116_", "20140117ic_", "20140118rg_", "20140119zkb_",
+		"20140120pf_", "20140121lohn_", "20140122diary_", "2014xxxxabstract_", "20140123kof_", "20140124book_",
+		"20140125itc_", "20140126offer_", "20140127meeting_", "201401", "2014", "scan_", "Rechnung ", "IMG_"
+	};
+	private static final String[] POSTFIXES = { ".pdf", ".pdf", ".pdf", "_zsr.pdf", "pres.pdf", ".PDF", ".dmg", ".txt" };
+
+	private SampleNames() {
+	}
+
+	/**
+	 * Returns the i-th synthetic file name; all names are distinct.
+	 *
+	 * @param i		the index of the name
+	 * @return		the file name
+	 */
+	static String name(int i) {
+		return PREFIXES[i % PREFIXES.length] + i + POSTFIXES[(i / PREFIXES.length) % POSTFIXES.length];
+	}
+
+	/**
+	 * Returns the first n synthetic file names.
+	 *
+	 * @param n		the number of names
+	 * @return		the file names
+	 */
+	static String[] names(int n) {
+		String[] _names = new String[n];
+		for (int i = 0; i < n; i++) {
+			_names[i] = name(i);
+		}
+		return _names;
+	}
+}
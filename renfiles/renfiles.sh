@@ -0,0 +1,14 @@
+#!/bin/sh
+# Fast start of RenameFiles, e.g. for cron or watch usage:
+# - the configuration is read from the snapshot renfiles.snapshot (written by the first run, see ConfigSnapshot)
+# - the application classes are mapped from the class data sharing archive of the build (mvn -Pappcds package)
+# - the JIT stops at C1 and the serial GC is used, as the runs are short
+# All arguments are passed on, e.g. renfiles.sh plan plan.txt
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$DIR/target/renfiles-1.0-SNAPSHOT.jar"
+JSA="$DIR/target/renfiles.jsa"
+CDS=""
+if [ -f "$JSA" ] && [ "$JSA" -nt "$JAR" ]; then
+	CDS="-XX:SharedArchiveFile=$JSA"
+fi
+exec java $CDS -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -jar "$JAR" -s renfiles.snapshot "$@"
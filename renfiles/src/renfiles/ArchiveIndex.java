@@ -0,0 +1,386 @@
+package renfiles;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A persistent index of the archived files (name, leading date, finder tags, size, modification time),
+ * to find untagged files or missing dates (e.g. missing epapers) without walking the whole archive.<p>
+ * The index is updated with each file that is moved into the archive ({@link #add(File, String)}), and
+ * reconciled with the file system by {@link #reconcile()}: only directories whose modification time changed
+ * since the last reconciliation are listed again, and only new or changed files are read (the tags from the
+ * extended attribute, see {@link XattrTagger}). For unchanged directories, a single stat call is needed.
+ * Note that adding tags to an existing file does not change any modification time, i.e. tags added
+ * manually in finder are only seen when the file is indexed again.<p>
+ * The index is stored in a text file: a <code>D</code> line (modification time, path) per directory, followed
+ * by an <code>F</code> line (size, modification time, date, tags, name) per file of the directory.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class ArchiveIndex {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** modification time of a directory that is known to exist, but was never listed */
+	private static final long UNLISTED = -1;
+
+	private final Path indexPath;
+	private final List<Path> roots;
+	private final TreeMap<String, Dir> dirs = new TreeMap<String, Dir>();
+	private boolean dirty = false;
+
+	/**
+	 * An archived directory with its files.
+	 */
+	private static class Dir {
+		private long modified = UNLISTED;
+		private final Map<String, Entry> files = new TreeMap<String, Entry>();
+	}
+
+	/**
+	 * An archived file.
+	 */
+	public static class Entry {
+		private final File file;
+		private final long size;
+		private final long modified;
+		private final int date;
+		private final String tags;
+
+		private Entry(File file, long size, long modified, String tags) {
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+			this.date = DateParser.parseLeading(file.getName());
+			this.tags = tags;
+		}
+
+		/**
+		 * @return	the archived file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return	the leading date of the file name (see {@link DateParser}) or DateParser.NONE
+		 */
+		public int getDate() {
+			return date;
+		}
+
+		/**
+		 * @return	comma-separated list of tags or null
+		 */
+		public String getTags() {
+			return tags;
+		}
+	}
+
+	/**
+	 * Constructor; loads the index if it exists.
+	 *
+	 * @param indexPath		the index file
+	 * @param roots			the root directories of the archive
+	 * @throws IOException if the index can not be read
+	 */
+	public ArchiveIndex(Path indexPath, List<Path> roots) throws IOException {
+		this.indexPath = indexPath;
+		this.roots = new ArrayList<Path>();
+		for (Path _root : roots) {
+			this.roots.add(_root.toAbsolutePath().normalize());
+		}
+		if (Files.exists(indexPath)) {
+			load();
+		}
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader _reader = Files.newBufferedReader(indexPath, UTF8)) {
+			String _line;
+			Dir _dir = null;
+			String _dirName = null;
+			while ((_line = _reader.readLine()) != null) {
+				String[] _col = _line.split("\t", -1);
+				if (_col.length == 3 && _col[0].equals("D")) {
+					_dir = new Dir();
+					_dir.modified = Long.parseLong(_col[1]);
+					_dirName = _col[2];
+					dirs.put(_dirName, _dir);
+				}
+				else if (_col.length == 6 && _col[0].equals("F") && _dir != null) {
+					_dir.files.put(_col[5], new Entry(new File(_dirName, _col[5]), Long.parseLong(_col[1]), Long.parseLong(_col[2]),
+							_col[4].isEmpty() ? null : _col[4]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds (or replaces) a file that was moved into the archive. Files outside the root directories (e.g. podcast
+	 * episodes) are ignored, as they would never be reconciled.
+	 *
+	 * @param f		the archived file
+	 * @param tags	comma-separated list of the tags added to the file or null
+	 */
+	public synchronized void add(File f, String tags) {
+		Path _path = f.toPath().toAbsolutePath().normalize();
+		if (isArchived(_path) == false) {
+			return;
+		}
+		File _file = _path.toFile();
+		String _dirName = _path.getParent().toString();
+		Dir _dir = dirs.get(_dirName);
+		if (_dir == null) {  // listed at the next reconciliation, the other files are not known yet
+			_dir = new Dir();
+			dirs.put(_dirName, _dir);
+		}
+		// the modification time of the directory is not updated, i.e. the directory is listed again at the next
+		// reconciliation; the file itself is unchanged then and its tags need not be read again
+		_dir.files.put(_file.getName(), new Entry(_file, _file.length(), _file.lastModified(), tags));
+		dirty = true;
+	}
+
+	private boolean isArchived(Path path) {
+		for (Path _root : roots) {
+			if (path.startsWith(_root) && path.equals(_root) == false) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Brings the index up to date with the archive directories.
+	 *
+	 * @return	the number of directories listed
+	 * @throws IOException if a root directory can not be read
+	 */
+	public synchronized int reconcile() throws IOException {
+		int _listed = 0;
+		for (Path _root : roots) {
+			if (Files.isDirectory(_root)) {
+				_listed += reconcile(_root);
+			}
+		}
+		return _listed;
+	}
+
+	private int reconcile(Path dir) throws IOException {
+		String _dirName = dir.toString();
+		BasicFileAttributes _attrs;
+		try {
+			_attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException _ex) {
+			removeTree(_dirName);
+			return 0;
+		}
+		Dir _dir = dirs.get(_dirName);
+		if (_dir == null) {
+			_dir = new Dir();
+			dirs.put(_dirName, _dir);
+		}
+		int _listed = 0;
+		if (_dir.modified != _attrs.lastModifiedTime().toMillis()) {
+			list(dir, _dir);
+			_dir.modified = _attrs.lastModifiedTime().toMillis();
+			dirty = true;
+			_listed++;
+		}
+		for (String _subdir : getSubdirectories(_dirName)) {
+			_listed += reconcile(Paths.get(_subdir));
+		}
+		return _listed;
+	}
+
+	/**
+	 * Lists a changed directory: updates the files and the known subdirectories.
+	 */
+	private void list(Path dir, Dir d) throws IOException {
+		Map<String, Entry> _files = new HashMap<String, Entry>();
+		Set<String> _subdirs = new HashSet<String>();
+		try (DirectoryStream<Path> _stream = Files.newDirectoryStream(dir)) {
+			for (Path _entry : _stream) {
+				String _name = _entry.getFileName().toString();
+				if (_name.startsWith(".")) {
+					continue;
+				}
+				BasicFileAttributes _attrs;
+				try {
+					_attrs = Files.readAttributes(_entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				}
+				catch (NoSuchFileException _ex) {  // removed in the meantime
+					continue;
+				}
+				if (_attrs.isDirectory()) {
+					_subdirs.add(_entry.toString());
+				}
+				else if (_attrs.isRegularFile()) {
+					Entry _old = d.files.get(_name);
+					if (_old != null && _old.size == _attrs.size() && _old.modified == _attrs.lastModifiedTime().toMillis()) {
+						_files.put(_name, _old);
+					}
+					else {
+						_files.put(_name, new Entry(_entry.toFile(), _attrs.size(), _attrs.lastModifiedTime().toMillis(), readTags(_entry)));
+					}
+				}
+			}
+		}
+		d.files.clear();
+		d.files.putAll(_files);
+		for (String _subdir : getSubdirectories(dir.toString())) {
+			if (_subdirs.remove(_subdir) == false) {
+				removeTree(_subdir);
+			}
+		}
+		for (String _subdir : _subdirs) {  // new subdirectories
+			dirs.put(_subdir, new Dir());
+		}
+	}
+
+	private static String readTags(Path file) {
+		try {
+			List<String> _tags = XattrTagger.readTags(file);
+			if (_tags.isEmpty() == false) {
+				StringBuilder _sb = new StringBuilder();
+				for (String _tag : _tags) {
+					_sb.append(_sb.length() == 0 ? "" : ",").append(_tag);
+				}
+				return _sb.toString();
+			}
+		}
+		catch (IOException _ex) {
+			// not readable -> regarded as untagged
+		}
+		return null;
+	}
+
+	/**
+	 * @return	the known direct subdirectories of a directory
+	 */
+	private List<String> getSubdirectories(String dirName) {
+		List<String> _subdirs = new ArrayList<String>();
+		String _prefix = dirName + File.separator;
+		for (String _name : dirs.subMap(_prefix, true, _prefix + Character.MAX_VALUE, false).keySet()) {
+			if (_name.indexOf(File.separatorChar, _prefix.length()) < 0) {
+				_subdirs.add(_name);
+			}
+		}
+		return _subdirs;
+	}
+
+	/**
+	 * Removes a directory and all its subdirectories.
+	 */
+	private void removeTree(String dirName) {
+		dirs.remove(dirName);
+		String _prefix = dirName + File.separator;
+		dirs.subMap(_prefix, true, _prefix + Character.MAX_VALUE, false).clear();
+		dirty = true;
+	}
+
+	/**
+	 * @return	all archived files without tags, sorted by path
+	 */
+	public synchronized List<File> getUntagged() {
+		List<File> _untagged = new ArrayList<File>();
+		for (Dir _dir : dirs.values()) {
+			for (Entry _entry : _dir.files.values()) {
+				if (_entry.tags == null) {
+					_untagged.add(_entry.file);
+				}
+			}
+		}
+		return _untagged;
+	}
+
+	/**
+	 * Determines the days of a year for which there is no file with this date in a directory tree, e.g. the
+	 * missing epapers of a newspaper (only days up to today are checked).
+	 *
+	 * @param dir	the directory (e.g. news/nzz)
+	 * @param year	the year
+	 * @return		the missing days (packed dates, see {@link DateParser})
+	 */
+	public synchronized List<Integer> getMissingDays(Path dir, int year) {
+		String _dirName = dir.toAbsolutePath().normalize().toString();
+		boolean[] _found = new boolean[13 * 32];
+		List<Dir> _dirs = new ArrayList<Dir>();
+		if (dirs.containsKey(_dirName)) {
+			_dirs.add(dirs.get(_dirName));
+		}
+		_dirs.addAll(dirs.subMap(_dirName + File.separator, true, _dirName + File.separator + Character.MAX_VALUE, false).values());
+		for (Dir _dir : _dirs) {
+			for (Entry _entry : _dir.files.values()) {
+				if (DateParser.precision(_entry.date) == DateParser.DAY && DateParser.year(_entry.date) == year) {
+					_found[DateParser.month(_entry.date) * 32 + DateParser.day(_entry.date)] = true;
+				}
+			}
+		}
+		List<Integer> _missing = new ArrayList<Integer>();
+		Calendar _day = new GregorianCalendar(year, Calendar.JANUARY, 1);
+		Calendar _today = Calendar.getInstance();
+		while (_day.get(Calendar.YEAR) == year && _day.before(_today)) {
+			int _month = _day.get(Calendar.MONTH) + 1;
+			int _dayOfMonth = _day.get(Calendar.DAY_OF_MONTH);
+			if (_found[_month * 32 + _dayOfMonth] == false) {
+				_missing.add(DateParser.pack(DateParser.DAY, year, _month, _dayOfMonth));
+			}
+			_day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		return _missing;
+	}
+
+	/**
+	 * @return	the number of indexed files
+	 */
+	public synchronized int size() {
+		int _size = 0;
+		for (Dir _dir : dirs.values()) {
+			_size += _dir.files.size();
+		}
+		return _size;
+	}
+
+	/**
+	 * Writes the index, if it was changed.
+	 *
+	 * @throws IOException if the index can not be written
+	 */
+	public synchronized void save() throws IOException {
+		if (dirty == false) {
+			return;
+		}
+		Path _tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try (BufferedWriter _writer = Files.newBufferedWriter(_tmp, UTF8)) {
+			for (Map.Entry<String, Dir> _dir : dirs.entrySet()) {
+				if (isStorable(_dir.getKey()) == false) {
+					continue;		// listed again next time
+				}
+				StringBuilder _files = new StringBuilder();
+				long _modified = _dir.getValue().modified;
+				for (Map.Entry<String, Entry> _file : _dir.getValue().files.entrySet()) {
+					Entry _entry = _file.getValue();
+					if (isStorable(_file.getKey()) && (_entry.tags == null || isStorable(_entry.tags))) {
+						_files.append("F\t").append(_entry.size).append('\t').append(_entry.modified).append('\t');
+						DateParser.append(_files, _entry.date).append('\t');
+						_files.append(_entry.tags == null ? "" : _entry.tags).append('\t').append(_file.getKey()).append('\n');
+					}
+					else {
+						_modified = UNLISTED;		// the directory is listed again next time
+					}
+				}
+				_writer.write("D\t" + _modified + "\t" + _dir.getKey() + "\n");
+				_writer.write(_files.toString());
+			}
+		}
+		Files.move(_tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		dirty = false;
+	}
+
+	private static boolean isStorable(String s) {
+		return s.indexOf('\t') < 0 && s.indexOf('\n') < 0;
+	}
+}
@@ -0,0 +1,306 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves the archived files to the destinations of the current rules, e.g. after the destPath of a rule was
+ * changed (see {@link RuleEngine#relocate(String, long)}); the names of the files are kept.<p>
+ * The archive directories are walked with a fork/join pool (each directory is listed by its own task, as in
+ * {@link BackupCollector}), which results in a {@link MovePlan} of the files that are not at their destination.
+ * The plan is applied in batches of at most batchSize files of the same destination directory (the directory is
+ * created once per batch). The files are only renamed, without replacing a destination (see {@link FileMover}):
+ * a file on another volume than its destination is skipped instead of copied, as are files whose destination
+ * already exists.<p>
+ * Each move is recorded in the {@link Journal} and the journal is forced to disk after each batch (a checkpoint),
+ * i.e. the move that was interrupted by an abort is completed by the next run; the remaining files are planned
+ * again by the next relayout.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class ArchiveRelayout {
+	private final ForkJoinPool pool;
+	private final RuleEngine engine;
+	private final RenameFileFilter filter;
+	private final AtomicInteger dirCount = new AtomicInteger();
+	private final AtomicInteger fileCount = new AtomicInteger();
+
+	/**
+	 * Notified while the plan is applied.
+	 */
+	public interface Progress {
+		/**
+		 * Called after a file was moved.
+		 *
+		 * @param src	the previous location of the file
+		 * @param dest	the new location of the file
+		 */
+		void moved(File src, File dest);
+
+		/**
+		 * Called after each batch, when the journal was forced to disk.
+		 *
+		 * @param done		the number of processed files (moved, skipped or failed)
+		 * @param total		the number of files of the plan
+		 * @param nanos		the time since the first batch was started
+		 */
+		void checkpoint(int done, int total, long nanos);
+	}
+
+	/**
+	 * The outcome of applying a plan.
+	 */
+	public static class Result {
+		private int moved = 0;
+		private int existing = 0;
+		private int otherVolume = 0;
+		private final List<String> failures = new ArrayList<String>();
+
+		/**
+		 * @return	the number of moved files
+		 */
+		public int getMoved() {
+			return moved;
+		}
+
+		/**
+		 * @return	the number of files that were skipped because their destination already exists
+		 */
+		public int getExisting() {
+			return existing;
+		}
+
+		/**
+		 * @return	the number of files that were skipped because their destination is on another volume
+		 */
+		public int getOtherVolume() {
+			return otherVolume;
+		}
+
+		/**
+		 * @return	the failed moves, one line per file
+		 */
+		public List<String> getFailures() {
+			return failures;
+		}
+	}
+
+	/**
+	 * Lists one directory, adds its misplaced files to the plan and forks a task for each subdirectory.
+	 * Hidden entries (e.g. the lease directories, see {@link LeaseClaims}) are ignored.
+	 */
+	private class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+		private final MovePlan plan;
+
+		private ScanTask(Path dir, MovePlan plan) {
+			this.dir = dir;
+			this.plan = plan;
+		}
+
+		@Override
+		protected void compute() {
+			List<ScanTask> _subTasks = new ArrayList<ScanTask>();
+			Path _dir = dir.toAbsolutePath().normalize();
+			dirCount.incrementAndGet();
+			try (DirectoryStream<Path> _stream = Files.newDirectoryStream(dir)) {
+				for (Path _entry : _stream) {
+					String _name = _entry.getFileName().toString();
+					if (_name.startsWith(".")) {
+						continue;
+					}
+					BasicFileAttributes _attrs;
+					try {
+						_attrs = Files.readAttributes(_entry, BasicFileAttributes.class);
+					}
+					catch (NoSuchFileException _ex) {  // removed in the meantime
+						continue;
+					}
+					if (_attrs.isDirectory()) {
+						ScanTask _task = new ScanTask(_entry, plan);
+						_task.fork();
+						_subTasks.add(_task);
+						continue;
+					}
+					if (filter.accept(_entry, _attrs) == false) {
+						continue;
+					}
+					fileCount.incrementAndGet();
+					Classification _result = engine.relocate(_name, _attrs.lastModifiedTime().toMillis());
+					if (_result != null) {
+						Path _destDir = Paths.get(_result.getDestDirName()).toAbsolutePath().normalize();
+						if (_destDir.equals(_dir) == false) {
+							plan.add(_entry.toFile(), _destDir.resolve(_name).toFile(), null);
+						}
+					}
+				}
+			}
+			catch (IOException _ex) {
+				System.out.println("******** failed to read " + dir + " with " + _ex.toString() + "*********");
+			}
+			for (ScanTask _task : _subTasks) {
+				_task.join();
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param engine		the current rules
+	 * @param filter		the archived files to relocate (e.g. the pdf files)
+	 * @param threadCount	the number of threads that list the directories
+	 */
+	public ArchiveRelayout(RuleEngine engine, RenameFileFilter filter, int threadCount) {
+		this.engine = engine;
+		this.filter = filter;
+		pool = new ForkJoinPool(Math.max(1, threadCount));
+	}
+
+	/**
+	 * Walks the archive directories in parallel and plans a move for each file that is not at the destination
+	 * of the current rules. A root within another root is walked once only.
+	 *
+	 * @param roots	the archive directories
+	 * @return		the moves
+	 */
+	public MovePlan plan(List<Path> roots) {
+		MovePlan _plan = new MovePlan();
+		Set<Path> _roots = new LinkedHashSet<Path>();
+		for (Path _root : roots) {
+			_roots.add(_root.toAbsolutePath().normalize());
+		}
+		List<ScanTask> _tasks = new ArrayList<ScanTask>();
+		for (Path _root : _roots) {
+			boolean _nested = false;
+			for (Path _other : _roots) {
+				_nested |= _other.equals(_root) == false && _root.startsWith(_other);
+			}
+			if (_nested == false) {
+				ScanTask _task = new ScanTask(_root, _plan);
+				pool.execute(_task);
+				_tasks.add(_task);
+			}
+		}
+		for (ScanTask _task : _tasks) {
+			_task.join();
+		}
+		return _plan;
+	}
+
+	/**
+	 * @return	the number of directories listed by {@link #plan(List)}
+	 */
+	public int getDirCount() {
+		return dirCount.get();
+	}
+
+	/**
+	 * @return	the number of files checked by {@link #plan(List)}
+	 */
+	public int getFileCount() {
+		return fileCount.get();
+	}
+
+	/**
+	 * Moves the files of a plan in batches of the same destination directory.
+	 *
+	 * @param operations	the moves, sorted by destination (see {@link MovePlan#sort()})
+	 * @param batchSize		the maximal number of files per batch
+	 * @param journal		the journal of the moves or null
+	 * @param progress		notified of each move and batch
+	 * @return				the outcome
+	 * @throws IOException if the journal can not be written
+	 */
+	public Result apply(List<MovePlan.Operation> operations, int batchSize, Journal journal, Progress progress) throws IOException {
+		Result _result = new Result();
+		long _start = System.nanoTime();
+		int _done = 0;
+		while (_done < operations.size()) {
+			String _dirName = operations.get(_done).getDestination().getParent();
+			int _end = _done;
+			while (_end < operations.size() && _end - _done < Math.max(1, batchSize) &&
+					operations.get(_end).getDestination().getParent().equals(_dirName)) {
+				_end++;
+			}
+			boolean _created = true;
+			try {
+				Files.createDirectories(Paths.get(_dirName));
+			}
+			catch (IOException _ex) {
+				_result.failures.add("creating " + _dirName + " failed with " + _ex.toString());
+				_created = false;
+			}
+			for (int i = _done; i < _end && _created; i++) {
+				move(operations.get(i), journal, progress, _result);
+			}
+			if (journal != null) {
+				journal.checkpoint();
+			}
+			_done = _end;
+			progress.checkpoint(_done, operations.size(), System.nanoTime() - _start);
+		}
+		return _result;
+	}
+
+	/**
+	 * Renames a file to its destination, unless the destination exists or is on another volume.
+	 */
+	private static void move(MovePlan.Operation op, Journal journal, Progress progress, Result result) throws IOException {
+		File _src = op.getSource();
+		File _dest = op.getDestination();
+		if (_dest.exists()) {
+			result.existing++;
+			return;
+		}
+		if (journal != null) {
+			journal.planned(_src, _dest, null);
+		}
+		try {
+			FileMover.rename(_src.toPath(), _dest.toPath());  // never replaces a destination created meanwhile
+		}
+		catch (FileAlreadyExistsException _ex) {
+			result.existing++;
+			if (journal != null) {
+				journal.failed(_dest);
+			}
+			return;
+		}
+		catch (FileMover.SourceKeptException _ex) {  // the destination is complete, the source is left over
+			result.failures.add("moving " + _src.getPath() + " to " + _dest.getPath() + ": " + _ex.getMessage());
+		}
+		catch (AtomicMoveNotSupportedException _ex) {
+			result.otherVolume++;
+			if (journal != null) {
+				journal.failed(_dest);
+			}
+			return;
+		}
+		catch (IOException _ex) {
+			result.failures.add("moving " + _src.getPath() + " to " + _dest.getPath() + " failed with " + _ex.toString());
+			if (journal != null) {
+				journal.failed(_dest);
+			}
+			return;
+		}
+		if (journal != null) {
+			journal.moved(_dest);
+		}
+		result.moved++;
+		progress.moved(_src, _dest);
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,234 @@
+package renfiles;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches the backups of several {@link BackupSource}s in parallel and selects the backups to save.<p>
+ * The directory trees are walked with a fork/join pool: each directory is listed by its own task, which forks
+ * a task for each subdirectory (up to the maximal depth of the source), so that the thousands of timestamped
+ * backup directories of a source are listed concurrently and idle threads steal the pending directories of
+ * the other sources.<p>
+ * Of each source, the newest backups (by the date of the rule, then by path) are saved, at most one per
+ * destination and at most keep backups (0 = all); the remaining backups are obsolete.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class BackupCollector {
+	private final ForkJoinPool pool;
+
+	/**
+	 * A backup found below the root of a source.
+	 */
+	public static class Backup implements Comparable<Backup> {
+		private final Path path;
+		private final Path relPath;
+		private final Classification result;
+		private boolean obsolete = false;
+
+		private Backup(Path path, Path relPath, Classification result) {
+			this.path = path;
+			this.relPath = relPath;
+			this.result = result;
+		}
+
+		/**
+		 * @return	the backup file or directory
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return	the entry of the root that contains the backup or null if the backup is an entry of the root itself
+		 */
+		public Path getContainer() {
+			Path _container = path;
+			for (int i = 1; i < relPath.getNameCount(); i++) {
+				_container = _container.getParent();
+			}
+			return _container == path ? null : _container;
+		}
+
+		/**
+		 * @return	the destination of the backup
+		 */
+		public Classification getResult() {
+			return result;
+		}
+
+		/**
+		 * @return	true if the backup is not saved (older than the saved backups)
+		 */
+		public boolean isObsolete() {
+			return obsolete;
+		}
+
+		/**
+		 * Newest first: by date, then by the path (e.g. a timestamp within the name of the backup directory).
+		 */
+		public int compareTo(Backup other) {
+			int _date = result.getDate() & 0xFFFFFF;
+			int _otherDate = other.result.getDate() & 0xFFFFFF;
+			if (_date != _otherDate) {
+				return _date > _otherDate ? -1 : 1;
+			}
+			return other.relPath.toString().compareTo(relPath.toString());
+		}
+	}
+
+	/**
+	 * The backups of a source.
+	 */
+	public static class Result {
+		private final BackupSource source;
+		private final List<Backup> backups;
+		private final IOException failure;
+
+		private Result(BackupSource source, List<Backup> backups, IOException failure) {
+			this.source = source;
+			this.backups = backups;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return	the source
+		 */
+		public BackupSource getSource() {
+			return source;
+		}
+
+		/**
+		 * @return	all backups of the source, newest first (see {@link Backup#isObsolete()})
+		 */
+		public List<Backup> getBackups() {
+			return backups;
+		}
+
+		/**
+		 * @return	the reason why the root of the source could not be read or null
+		 */
+		public IOException getFailure() {
+			return failure;
+		}
+	}
+
+	/**
+	 * Lists one directory and forks a task for each subdirectory that is not a backup itself.
+	 */
+	private static class ScanTask extends RecursiveTask<List<Backup>> {
+		private static final long serialVersionUID = 1L;
+		private final BackupSource source;
+		private final Path root;
+		private final Path dir;
+		private final int depth;
+		private IOException failure = null;
+
+		private ScanTask(BackupSource source, Path root, Path dir, int depth) {
+			this.source = source;
+			this.root = root;
+			this.dir = dir;
+			this.depth = depth;
+		}
+
+		@Override
+		protected List<Backup> compute() {
+			List<Backup> _backups = new ArrayList<Backup>();
+			List<ScanTask> _subTasks = new ArrayList<ScanTask>();
+			try (DirectoryStream<Path> _stream = Files.newDirectoryStream(dir)) {
+				for (Path _entry : _stream) {
+					BasicFileAttributes _attrs;
+					try {
+						_attrs = Files.readAttributes(_entry, BasicFileAttributes.class);
+					}
+					catch (NoSuchFileException _ex) {  // removed in the meantime
+						continue;
+					}
+					Path _relPath = root.relativize(_entry);
+					Classification _result = source.classify(_relPath, _attrs.lastModifiedTime().toMillis());
+					if (_result != null) {
+						_backups.add(new Backup(_entry, _relPath, _result));
+					}
+					else if (_attrs.isDirectory() && depth < source.getMaxDepth()) {
+						ScanTask _task = new ScanTask(source, root, _entry, depth + 1);
+						_task.fork();
+						_subTasks.add(_task);
+					}
+				}
+			}
+			catch (IOException _ex) {
+				if (depth == 1) {
+					failure = _ex;
+				}
+				else {
+					System.out.println("******** failed to read " + dir + " with " + _ex.toString() + "*********");
+				}
+			}
+			for (ScanTask _task : _subTasks) {
+				_backups.addAll(_task.join());
+			}
+			return _backups;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount	the number of threads that list the directories
+	 */
+	public BackupCollector(int threadCount) {
+		pool = new ForkJoinPool(Math.max(1, threadCount));
+	}
+
+	/**
+	 * Searches the backups of all sources in parallel and marks the backups that are not saved as obsolete.
+	 *
+	 * @param sources	the backup sources
+	 * @return			the backups of each source, in the order of the sources
+	 */
+	public List<Result> collect(List<BackupSource> sources) {
+		List<ScanTask> _tasks = new ArrayList<ScanTask>();
+		for (BackupSource _source : sources) {
+			Path _root = _source.getRoot().toPath();
+			ScanTask _task = new ScanTask(_source, _root, _root, 1);
+			pool.execute(_task);
+			_tasks.add(_task);
+		}
+		List<Result> _results = new ArrayList<Result>();
+		for (ScanTask _task : _tasks) {
+			List<Backup> _backups = _task.join();
+			select(_task.source, _backups);
+			_results.add(new Result(_task.source, _backups, _task.failure));
+		}
+		return _results;
+	}
+
+	/**
+	 * Sorts the backups newest first and marks all but the newest keep backups (one per destination) as obsolete.
+	 */
+	private static void select(BackupSource source, List<Backup> backups) {
+		Collections.sort(backups);
+		Set<String> _destinations = new HashSet<String>();
+		int _saved = 0;
+		for (Backup _backup : backups) {
+			String _dest = _backup.result.getDestFile().getPath();
+			if (_destinations.add(_dest) == false || (source.getKeep() > 0 && _saved >= source.getKeep())) {
+				_backup.obsolete = true;
+			}
+			else {
+				_saved++;
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
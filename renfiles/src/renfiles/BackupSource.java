@@ -0,0 +1,138 @@
+package renfiles;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A backup source of the backup table (see renfiles.backups): a root directory that is searched up to a
+ * maximal depth, the number of (newest) backups to save, whether the saved backup directories are removed, and a
+ * {@link RenameRule} that selects the backups and determines their destination. The rule is applied to the path
+ * of a backup relative to the root (with <code>/</code> as separator), so that the date can be taken from the
+ * name of a backup directory as well as from the backup file itself, e.g.
+ * <pre>
+ * /Users/bruno/Documents/dfs/sysadm/ProSaldoBackup | 2 | 0 | yes | ipostfix:.sdb | yyyy-MM-dd@0 | ${date}.sdb | ${backup} | -
+ * </pre>
+ * saves <code>2013-12-14 10-00-00/Business.sdb</code> as <code>20131214.sdb</code>.
+ * A backup is a file or a directory (e.g. a package like <code>.bentodb</code>) that matches the rule;
+ * the content of a backup is not searched.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class BackupSource {
+	private final File root;
+	private final int maxDepth;
+	private final int keep;
+	private final boolean cleanup;
+	private final RuleEngine engine;
+
+	/**
+	 * Constructor; parses one line of the backup table.
+	 *
+	 * @param line		the source definition
+	 * @param config	the configuration variables that can be used within the templates
+	 * @throws IllegalArgumentException if the source definition is not valid
+	 */
+	public BackupSource(String line, Map<String, String> config) {
+		String[] _col = line.split("\\|", 5);
+		if (_col.length != 5) {
+			throw new IllegalArgumentException("expected 9 columns");
+		}
+		root = new File(_col[0].trim());
+		try {
+			maxDepth = Integer.parseInt(_col[1].trim());
+			keep = Integer.parseInt(_col[2].trim());
+		}
+		catch (NumberFormatException _ex) {
+			throw new IllegalArgumentException("invalid depth or number of backups: " + _ex.getMessage());
+		}
+		if (maxDepth < 1 || keep < 0) {
+			throw new IllegalArgumentException("invalid depth or number of backups");
+		}
+		String _cleanup = _col[3].trim();
+		if (_cleanup.equals("yes") == false && _cleanup.equals("no") == false) {
+			throw new IllegalArgumentException("invalid cleanup (yes or no): " + _cleanup);
+		}
+		cleanup = _cleanup.equals("yes");
+		engine = new RuleEngine(Collections.singletonList(new RenameRule(_col[4], 0, config)));
+	}
+
+	/**
+	 * Loads the backup table. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param reader		the table (closed afterwards)
+	 * @param name			the name of the table for the error messages
+	 * @param config		the configuration variables that can be used within the templates (e.g. doc)
+	 * @return				the backup sources
+	 * @throws IOException if the file can not be read or contains an invalid source
+	 */
+	public static List<BackupSource> load(Reader reader, String name, Map<String, String> config) throws IOException {
+		List<BackupSource> _sources = new ArrayList<BackupSource>();
+		BufferedReader _reader = new BufferedReader(reader);
+		try {
+			String _line;
+			int _lineNr = 0;
+			while ((_line = _reader.readLine()) != null) {
+				_lineNr++;
+				_line = _line.trim();
+				if (_line.isEmpty() || _line.startsWith("#")) {
+					continue;
+				}
+				try {
+					_sources.add(new BackupSource(_line, config));
+				}
+				catch (IllegalArgumentException _ex) {
+					throw new IOException(name + ":" + _lineNr + ": " + _ex.getMessage());
+				}
+			}
+		}
+		finally {
+			_reader.close();
+		}
+		return _sources;
+	}
+
+	/**
+	 * @return	the root directory of the backups
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return	the maximal depth of the backups below the root (1 = the entries of the root only)
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return	the number of newest backups that are saved or 0 for all
+	 */
+	public int getKeep() {
+		return keep;
+	}
+
+	/**
+	 * @return	true if the directory of a saved backup (the entry of the root that contains it) is removed
+	 * 			and older backups than the saved ones are deleted
+	 */
+	public boolean isCleanup() {
+		return cleanup;
+	}
+
+	/**
+	 * Determines the destination of a backup.
+	 *
+	 * @param relPath		the path of the backup relative to the root
+	 * @param lastModified	the modification time of the backup
+	 * @return				the destination or null if the entry is not a backup of this source
+	 */
+	public Classification classify(Path relPath, long lastModified) {
+		String _name = relPath.toString();
+		if (File.separatorChar != '/') {
+			_name = _name.replace(File.separatorChar, '/');
+		}
+		return engine.classify(_name, lastModified);
+	}
+}
@@ -0,0 +1,470 @@
+package renfiles;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses a backup (a file or a directory tree) into a gzip file, using all cores (as pigz does).<p>
+ * A directory tree is packed into a tar stream (ustar with the GNU extensions for long names and large files)
+ * first, i.e. the result is a <code>.tar.gz</code> that is unpacked with the standard tools. The (tar) stream is
+ * cut into blocks of blockSize bytes, and each block is compressed by its own task into an independent gzip member
+ * (the members of a gzip file are concatenated, see RFC 1952). The members are written in order with a FileChannel;
+ * at most two blocks per thread are pending, i.e. the memory is bounded, independently of the size of the backup.<p>
+ * Each member contains its total length in an extra field (subfield <code>RB</code>, as the BSIZE of BGZF), so that
+ * {@link #verify(Path)} splits the file into members without inflating it and checks the members in parallel
+ * (the CRC-32 and length of the data of each member). A file is compressed into a <code>.part</code> file first,
+ * which is renamed when it is complete.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class BlockCompressor {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String PART_SUFFIX = ".part";
+	/** gzip header with FEXTRA, the 4 bytes of the member length at offset 16 are filled in */
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 8, 0, 'R', 'B', 4, 0, 0, 0, 0, 0 };
+	private static final int TRAILER_SIZE = 8;
+	private static final int TAR_BLOCK = 512;
+
+	private final ExecutorService executor;
+	private final int maxPending;
+	private final int blockSize;
+	private final int level;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount	the number of threads that compress or verify blocks (0 = one per core)
+	 * @param blockSize		the number of bytes per block
+	 * @param level			the compression level (1 = fastest, 9 = best)
+	 */
+	public BlockCompressor(int threadCount, int blockSize, int level) {
+		int _threads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+		executor = Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread _t = new Thread(r, "renfiles-compress");
+				_t.setDaemon(true);
+				return _t;
+			}
+		});
+		maxPending = 2 * _threads;
+		this.blockSize = Math.max(TAR_BLOCK, blockSize);
+		this.level = level;
+	}
+
+	/**
+	 * The compressed output: collects the data in blocks, compresses each full block by a task and writes the
+	 * compressed blocks in order.
+	 */
+	private class BlockOutput {
+		private final FileChannel channel;
+		private final Deque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+		private byte[] block = new byte[blockSize];
+		private int length = 0;
+		private long size = 0;
+
+		private BlockOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int _n = Math.min(len, blockSize - length);
+				System.arraycopy(b, off, block, length, _n);
+				length += _n;
+				off += _n;
+				len -= _n;
+				if (length == blockSize) {
+					flushBlock();
+				}
+			}
+		}
+
+		/**
+		 * Reads exactly count bytes of a file directly into the blocks.
+		 */
+		private void transferFrom(FileChannel in, long count) throws IOException {
+			while (count > 0) {
+				int _n = (int) Math.min(count, blockSize - length);
+				ByteBuffer _buffer = ByteBuffer.wrap(block, length, _n);
+				while (_buffer.hasRemaining()) {
+					if (in.read(_buffer) < 0) {
+						throw new IOException("file was truncated while it was compressed");
+					}
+				}
+				length += _n;
+				count -= _n;
+				if (length == blockSize) {
+					flushBlock();
+				}
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			final byte[] _data = block;
+			final int _length = length;
+			pending.add(executor.submit(new Callable<ByteBuffer>() {
+				public ByteBuffer call() {
+					return deflate(_data, _length);
+				}
+			}));
+			size += length;
+			block = new byte[blockSize];
+			length = 0;
+			while (pending.size() >= maxPending) {
+				writeNext();
+			}
+		}
+
+		private void writeNext() throws IOException {
+			ByteBuffer _member = get(pending.removeFirst());
+			while (_member.hasRemaining()) {
+				channel.write(_member);
+			}
+		}
+
+		/**
+		 * Compresses the last block and writes all pending blocks.
+		 *
+		 * @return	the number of uncompressed bytes
+		 */
+		private long finish() throws IOException {
+			if (length > 0 || size == 0) {  // an empty file is a single empty member
+				flushBlock();
+			}
+			while (pending.isEmpty() == false) {
+				writeNext();
+			}
+			return size;
+		}
+
+		private void cancel() {
+			for (Future<ByteBuffer> _future : pending) {
+				_future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Compresses a file or directory tree; a directory is packed into a tar stream.
+	 *
+	 * @param src		the file or directory to compress
+	 * @param name		the name of the directory within the tar stream (e.g. the renamed backup)
+	 * @param dest		the compressed file (must not exist)
+	 * @return			the number of uncompressed bytes (of the tar stream for a directory)
+	 * @throws IOException if the source can not be read or the destination can not be written; no destination
+	 * 		is created in this case
+	 */
+	public long compress(Path src, String name, Path dest) throws IOException {
+		if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+			throw new FileAlreadyExistsException(dest.toString());
+		}
+		Path _part = dest.resolveSibling(dest.getFileName() + PART_SUFFIX);
+		long _size;
+		try (FileChannel _out = FileChannel.open(_part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			BlockOutput _output = new BlockOutput(_out);
+			try {
+				if (Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+					writeTar(src, name, _output);
+				}
+				else {
+					try (FileChannel _in = FileChannel.open(src, StandardOpenOption.READ)) {
+						_output.transferFrom(_in, _in.size());
+					}
+				}
+				_size = _output.finish();
+			}
+			finally {
+				_output.cancel();
+			}
+			_out.force(true);
+		}
+		catch (IOException _ex) {
+			Files.deleteIfExists(_part);
+			throw _ex;
+		}
+		Files.move(_part, dest, StandardCopyOption.ATOMIC_MOVE);
+		return _size;
+	}
+
+	/**
+	 * Checks a file written by {@link #compress(Path, String, Path)}: the members are read with a FileChannel
+	 * and inflated in parallel, and the CRC-32 and length of each member are compared.
+	 *
+	 * @param file	the compressed file
+	 * @return		the number of uncompressed bytes
+	 * @throws IOException if the file can not be read, is not a block compressed file or is corrupt
+	 */
+	public long verify(Path file) throws IOException {
+		Deque<Future<Integer>> _pending = new ArrayDeque<Future<Integer>>();
+		long _total = 0;
+		try (FileChannel _in = FileChannel.open(file, StandardOpenOption.READ)) {
+			long _fileSize = _in.size();
+			long _pos = 0;
+			ByteBuffer _header = ByteBuffer.allocate(HEADER.length).order(ByteOrder.LITTLE_ENDIAN);
+			while (_pos < _fileSize) {
+				_header.clear();
+				readFully(_in, _header, _pos);
+				for (int i = 0; i < 16; i++) {
+					if ((i < 4 || i > 8) && _header.get(i) != HEADER[i]) {		// except the time and flags
+						throw new IOException(file + ": no block compressed member at " + _pos);
+					}
+				}
+				int _length = _header.getInt(16);
+				if (_length < HEADER.length + TRAILER_SIZE || _pos + _length > _fileSize) {
+					throw new IOException(file + ": truncated member at " + _pos);
+				}
+				final byte[] _member = new byte[_length];
+				readFully(_in, ByteBuffer.wrap(_member), _pos);
+				final long _offset = _pos;
+				_pending.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws IOException {
+						return inflate(_member, _offset);
+					}
+				}));
+				_pos += _length;
+				while (_pending.size() >= maxPending) {
+					_total += get(_pending.removeFirst());
+				}
+			}
+			while (_pending.isEmpty() == false) {
+				_total += get(_pending.removeFirst());
+			}
+		}
+		finally {
+			for (Future<Integer> _future : _pending) {
+				_future.cancel(false);
+			}
+		}
+		return _total;
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Compresses a block into a gzip member.
+	 */
+	private ByteBuffer deflate(byte[] data, int length) {
+		Deflater _deflater = new Deflater(level, true);
+		try {
+			_deflater.setInput(data, 0, length);
+			_deflater.finish();
+			byte[] _out = new byte[HEADER.length + length + (length >> 4) + 64 + TRAILER_SIZE];
+			int _pos = HEADER.length;
+			while (_deflater.finished() == false) {
+				if (_pos == _out.length - TRAILER_SIZE) {
+					_out = Arrays.copyOf(_out, _out.length * 2);
+				}
+				_pos += _deflater.deflate(_out, _pos, _out.length - TRAILER_SIZE - _pos);
+			}
+			CRC32 _crc = new CRC32();
+			_crc.update(data, 0, length);
+			System.arraycopy(HEADER, 0, _out, 0, HEADER.length);
+			ByteBuffer _member = ByteBuffer.wrap(_out, 0, _pos + TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			_member.putInt(16, _pos + TRAILER_SIZE);
+			_member.putInt(_pos, (int) _crc.getValue());
+			_member.putInt(_pos + 4, length);
+			return _member;
+		}
+		finally {
+			_deflater.end();
+		}
+	}
+
+	/**
+	 * Inflates a gzip member and checks its CRC-32 and length.
+	 *
+	 * @return	the number of uncompressed bytes
+	 */
+	private static int inflate(byte[] member, long offset) throws IOException {
+		Inflater _inflater = new Inflater(true);
+		try {
+			int _dataLength = member.length - HEADER.length - TRAILER_SIZE;
+			_inflater.setInput(member, HEADER.length, _dataLength);
+			byte[] _buffer = new byte[64 * 1024];
+			CRC32 _crc = new CRC32();
+			int _size = 0;
+			while (_inflater.finished() == false) {
+				int _n = _inflater.inflate(_buffer);
+				if (_n == 0 && (_inflater.needsInput() || _inflater.needsDictionary())) {
+					throw new IOException("truncated data in member at " + offset);
+				}
+				_crc.update(_buffer, 0, _n);
+				_size += _n;
+			}
+			ByteBuffer _trailer = ByteBuffer.wrap(member, member.length - TRAILER_SIZE, TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (_inflater.getRemaining() != 0 || _trailer.getInt() != (int) _crc.getValue() || _trailer.getInt() != _size) {
+				throw new IOException("checksum mismatch in member at " + offset);
+			}
+			return _size;
+		}
+		catch (DataFormatException _ex) {
+			throw new IOException("corrupt member at " + offset + ": " + _ex.getMessage());
+		}
+		finally {
+			_inflater.end();
+		}
+	}
+
+	/**
+	 * Waits for a block task.
+	 */
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException _ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a block");
+		}
+		catch (ExecutionException _ex) {
+			if (_ex.getCause() instanceof IOException) {
+				throw (IOException) _ex.getCause();
+			}
+			throw new IOException(_ex.getCause());
+		}
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int _n = in.read(buffer, position + buffer.position());
+			if (_n < 0) {
+				throw new IOException("unexpected end of file at " + (position + buffer.position()));
+			}
+		}
+	}
+
+	/**
+	 * Packs a directory tree into a tar stream; the entries are named relative to the directory, prefixed by name.
+	 */
+	private static void writeTar(final Path dir, final String name, final BlockOutput output) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+				writeEntry(output, entryName(d) + "/", '5', 0, attrs, 0755, null);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isSymbolicLink()) {
+					writeEntry(output, entryName(file), '2', 0, attrs, 0777, Files.readSymbolicLink(file).toString());
+				}
+				else if (attrs.isRegularFile()) {
+					writeEntry(output, entryName(file), '0', attrs.size(), attrs, 0644, null);
+					try (FileChannel _in = FileChannel.open(file, StandardOpenOption.READ)) {
+						output.transferFrom(_in, attrs.size());
+					}
+					pad(output, attrs.size());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			private String entryName(Path path) {
+				StringBuilder _sb = new StringBuilder(name);
+				for (Path _part : dir.relativize(path)) {
+					if (_part.toString().length() > 0) {
+						_sb.append('/').append(_part.toString());
+					}
+				}
+				return _sb.toString();
+			}
+		});
+		output.write(new byte[2 * TAR_BLOCK], 0, 2 * TAR_BLOCK);
+	}
+
+	/**
+	 * Writes a tar header, preceded by GNU long name entries if the name or link is longer than 100 bytes.
+	 */
+	private static void writeEntry(BlockOutput output, String name, char type, long size, BasicFileAttributes attrs,
+			int mode, String link) throws IOException {
+		byte[] _name = name.getBytes(UTF8);
+		byte[] _link = link == null ? new byte[0] : link.getBytes(UTF8);
+		if (_link.length > 100) {
+			writeLongName(output, 'K', _link);
+		}
+		if (_name.length > 100) {
+			writeLongName(output, 'L', _name);
+		}
+		byte[] _header = header(_name, type, size, attrs.lastModifiedTime().toMillis() / 1000, mode, _link);
+		output.write(_header, 0, _header.length);
+	}
+
+	private static void writeLongName(BlockOutput output, char type, byte[] name) throws IOException {
+		byte[] _header = header("././@LongLink".getBytes(UTF8), type, name.length + 1, 0, 0, new byte[0]);
+		output.write(_header, 0, _header.length);
+		output.write(name, 0, name.length);
+		output.write(new byte[1], 0, 1);
+		pad(output, name.length + 1);
+	}
+
+	/**
+	 * Fills the last tar block of an entry with zeros.
+	 */
+	private static void pad(BlockOutput output, long size) throws IOException {
+		int _rest = (int) (size % TAR_BLOCK);
+		if (_rest > 0) {
+			output.write(new byte[TAR_BLOCK - _rest], 0, TAR_BLOCK - _rest);
+		}
+	}
+
+	private static byte[] header(byte[] name, char type, long size, long mtime, int mode, byte[] link) {
+		byte[] _h = new byte[TAR_BLOCK];
+		System.arraycopy(name, 0, _h, 0, Math.min(100, name.length));
+		octal(_h, 100, 8, mode);
+		octal(_h, 108, 8, 0);
+		octal(_h, 116, 8, 0);
+		octal(_h, 124, 12, size);
+		octal(_h, 136, 12, Math.max(0, mtime));
+		_h[156] = (byte) type;
+		System.arraycopy(link, 0, _h, 157, Math.min(100, link.length));
+		System.arraycopy("ustar  ".getBytes(UTF8), 0, _h, 257, 7);		// GNU magic and version
+		Arrays.fill(_h, 148, 156, (byte) ' ');
+		long _sum = 0;
+		for (byte _b : _h) {
+			_sum += _b & 0xFF;
+		}
+		octal(_h, 148, 7, _sum);
+		return _h;
+	}
+
+	/**
+	 * Writes a numeric header field: octal digits terminated by NUL or, if the value does not fit, base-256
+	 * (GNU, for files of 8 GB and more).
+	 */
+	private static void octal(byte[] h, int offset, int length, long value) {
+		if (value < (1L << (3 * (length - 1)))) {
+			for (int i = offset + length - 2; i >= offset; i--) {
+				h[i] = (byte) ('0' + (value & 7));
+				value >>>= 3;
+			}
+			h[offset + length - 1] = 0;
+		}
+		else {
+			for (int i = offset + length - 1; i > offset; i--) {
+				h[i] = (byte) value;
+				value >>>= 8;
+			}
+			h[offset] = (byte) 0x80;
+		}
+	}
+}
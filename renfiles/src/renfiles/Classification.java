@@ -0,0 +1,88 @@
+package renfiles;
+import java.io.File;
+
+/**
+ * The result of classifying a file name: the destination directory and file name,
+ * the finder tags to add and the date of the file.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class Classification {
+	private final RenameRule rule;
+	private final String destDirName;
+	private final String destFileName;
+	private final String tags;
+	private final int date;
+
+	/**
+	 * Constructor for a file without a known date.
+	 *
+	 * @param rule			the rule that matched
+	 * @param destDirName	the destination directory
+	 * @param destFileName	the destination file name
+	 * @param tags			comma-separated list of tags or null
+	 */
+	public Classification(RenameRule rule, String destDirName, String destFileName, String tags) {
+		this(rule, destDirName, destFileName, tags, DateParser.NONE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rule			the rule that matched
+	 * @param destDirName	the destination directory
+	 * @param destFileName	the destination file name
+	 * @param tags			comma-separated list of tags or null
+	 * @param date			the packed date of the file (see {@link DateParser}) or DateParser.NONE
+	 */
+	public Classification(RenameRule rule, String destDirName, String destFileName, String tags, int date) {
+		this.rule = rule;
+		this.destDirName = destDirName;
+		this.destFileName = destFileName;
+		this.tags = tags;
+		this.date = date;
+	}
+
+	/**
+	 * @return	the rule that matched
+	 */
+	public RenameRule getRule() {
+		return rule;
+	}
+
+	/**
+	 * @return	the destination directory
+	 */
+	public String getDestDirName() {
+		return destDirName;
+	}
+
+	/**
+	 * @return	the destination file name
+	 */
+	public String getDestFileName() {
+		return destFileName;
+	}
+
+	/**
+	 * @return	the destination file
+	 */
+	public File getDestFile() {
+		return new File(destDirName + File.separator + destFileName);
+	}
+
+	/**
+	 * @return	comma-separated list of finder tags or null if no tags are added
+	 */
+	public String getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return	the packed date of the file (see {@link DateParser}) or DateParser.NONE
+	 */
+	public int getDate() {
+		return date;
+	}
+}
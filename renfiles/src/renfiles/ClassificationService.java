@@ -0,0 +1,259 @@
+package renfiles;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running local HTTP service for scripts and download automations that need to know where a file goes
+ * (or want it converted now) without starting a JVM per request: the rules are loaded and compiled once and
+ * stay in memory, i.e. a name is classified within microseconds, well below the HTTP round trip.<p>
+ * The service only listens on the loopback address, as it moves files on request. The requests are:
+ * <ul>
+ * <li><code>GET /classify?name=..&amp;name=..</code> or <code>POST /classify</code> with one name per line:
+ *     one line per name with the name, the destination and the tags (or <code>-</code>), separated by tabs;
+ *     <code>-</code> as destination if no rule applies. A podcast file is given as <code>folder/name</code>,
+ *     where folder is the folder of its show within podcastSrcDirName.
+ * <li><code>POST /file?path=..</code> or with one path per line: converts the files now, which must be in
+ *     srcDirName or the folder of a podcast show; one line per file with the path and the destination, or
+ *     <code>-</code> and the reason why the file was not moved.
+ * <li><code>GET /metrics</code>: the metrics in the Prometheus text format (see {@link Metrics}), among them
+ *     the requests per endpoint (<code>service_requests</code>) and the latency of each endpoint
+ *     (stage <code>service_classify</code>, <code>service_file</code>).
+ * </ul>
+ * All requests and responses are text in UTF-8. Requests from a browser (with an <code>Origin</code> or a
+ * <code>Sec-Fetch-Site</code> header) are rejected, i.e. a web page can not convert files by a cross-site request
+ * to the loopback address; scripts (e.g. curl) do not send these headers.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class ClassificationService {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** maximal size of a request body */
+	private static final int MAX_BODY = 16 * 1024 * 1024;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Backend backend;
+	private final Metrics metrics;
+
+	/**
+	 * Answers the requests.
+	 */
+	public interface Backend {
+		/**
+		 * Determines the destination of a file name without accessing the file.
+		 *
+		 * @param name	the name of a pdf file or folder/name of a podcast file
+		 * @return		the destination or null if no rule applies
+		 */
+		Classification classify(String name);
+
+		/**
+		 * Converts files now.
+		 *
+		 * @param files	the files to convert
+		 * @return		one line per file: the destination or - and the reason why the file was not moved
+		 */
+		List<String> file(List<File> files);
+	}
+
+	/**
+	 * A request that failed because of the client.
+	 */
+	private static class BadRequestException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		private BadRequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Constructor; the service is started by {@link #start()}.
+	 *
+	 * @param port			the port on the loopback address (0 = any free port)
+	 * @param threadCount	the number of threads that answer requests
+	 * @param backend		answers the requests
+	 * @param metrics		records the requests and their latency
+	 * @throws IOException if the port can not be bound
+	 */
+	public ClassificationService(int port, int threadCount, Backend backend, Metrics metrics) throws IOException {
+		this.backend = backend;
+		this.metrics = metrics;
+		// without TCP_NODELAY, the response body waits for the delayed ACK of the headers (about 40 ms per request)
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+		server.setExecutor(executor);
+		server.createContext("/classify", new Endpoint("classify") {
+			protected String answer(HttpExchange exchange) throws IOException {
+				return classify(parameters(exchange, "name"));
+			}
+		});
+		server.createContext("/file", new Endpoint("file") {
+			protected String answer(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestMethod().equals("POST") == false) {
+					throw new BadRequestException(405, "use POST to convert files");
+				}
+				return file(parameters(exchange, "path"));
+			}
+		});
+		server.createContext("/metrics", new Endpoint("metrics") {
+			protected String answer(HttpExchange exchange) {
+				return ClassificationService.this.metrics.toPrometheus();
+			}
+		});
+	}
+
+	/**
+	 * Handles the requests of an endpoint: records the request count and latency and sends the answer.
+	 */
+	private abstract class Endpoint implements HttpHandler {
+		private final String name;
+
+		private Endpoint(String name) {
+			this.name = name;
+		}
+
+		protected abstract String answer(HttpExchange exchange) throws IOException;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			long _start = System.nanoTime();
+			int _status = 200;
+			String _answer;
+			try {
+				if (exchange.getRequestURI().getPath().equals("/" + name) == false) {
+					throw new BadRequestException(404, "unknown endpoint");
+				}
+				String _site = exchange.getRequestHeaders().getFirst("Sec-Fetch-Site");
+				if (exchange.getRequestHeaders().containsKey("Origin") || (_site != null && _site.equals("none") == false)) {
+					throw new BadRequestException(403, "requests from a browser are not accepted");
+				}
+				_answer = answer(exchange);
+			}
+			catch (BadRequestException _ex) {
+				_status = _ex.status;
+				_answer = _ex.getMessage() + "\n";
+			}
+			catch (IOException | RuntimeException _ex) {
+				_status = 500;
+				_answer = _ex.toString() + "\n";
+			}
+			try {
+				byte[] _body = _answer.getBytes(UTF8);
+				exchange.getResponseHeaders().set("Content-Type", name.equals("metrics") ?
+						"text/plain; version=0.0.4; charset=utf-8" : "text/plain; charset=utf-8");
+				exchange.sendResponseHeaders(_status, _body.length);
+				exchange.getResponseBody().write(_body);
+			}
+			finally {
+				exchange.close();
+				metrics.increment("service_requests", "endpoint", name);
+				if (_status != 200) {
+					metrics.increment("service_errors", "endpoint", name);
+				}
+				metrics.record("service_" + name, System.nanoTime() - _start);
+			}
+		}
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * @return	the address the service listens on
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops the service; the requests that are answered are completed (up to a second).
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	private String classify(List<String> names) {
+		StringBuilder _sb = new StringBuilder(names.size() * 64);
+		for (String _name : names) {
+			Classification _result = backend.classify(_name);
+			_sb.append(_name).append('\t');
+			if (_result == null) {
+				_sb.append('-');
+			}
+			else {
+				_sb.append(_result.getDestDirName()).append(File.separatorChar).append(_result.getDestFileName());
+				_sb.append('\t').append(_result.getTags() == null ? "-" : _result.getTags());
+			}
+			_sb.append('\n');
+		}
+		return _sb.toString();
+	}
+
+	private String file(List<String> paths) {
+		List<File> _files = new ArrayList<File>();
+		for (String _path : paths) {
+			_files.add(new File(_path));
+		}
+		List<String> _lines = backend.file(_files);
+		StringBuilder _sb = new StringBuilder();
+		for (int i = 0; i < paths.size(); i++) {
+			_sb.append(paths.get(i)).append('\t').append(_lines.get(i)).append('\n');
+		}
+		return _sb.toString();
+	}
+
+	/**
+	 * Collects the values of a query parameter and the non-empty lines of the request body.
+	 */
+	private static List<String> parameters(HttpExchange exchange, String key) throws IOException {
+		List<String> _values = new ArrayList<String>();
+		String _query = exchange.getRequestURI().getRawQuery();
+		if (_query != null) {
+			for (String _param : _query.split("&")) {
+				int _eq = _param.indexOf('=');
+				if (_eq > 0 && _param.substring(0, _eq).equals(key)) {
+					_values.add(URLDecoder.decode(_param.substring(_eq + 1), "UTF-8"));
+				}
+			}
+		}
+		ByteArrayOutputStream _body = new ByteArrayOutputStream();
+		InputStream _in = exchange.getRequestBody();
+		byte[] _buffer = new byte[8192];
+		int _n;
+		while ((_n = _in.read(_buffer)) > 0) {
+			_body.write(_buffer, 0, _n);
+			if (_body.size() > MAX_BODY) {
+				throw new BadRequestException(413, "request too large");
+			}
+		}
+		for (String _line : new String(_body.toByteArray(), UTF8).split("\r?\n")) {
+			if (_line.isEmpty() == false) {
+				_values.add(_line);
+			}
+		}
+		if (_values.isEmpty()) {
+			throw new BadRequestException(400, "no " + key + " given");
+		}
+		return _values;
+	}
+}
@@ -0,0 +1,149 @@
+package renfiles;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The configuration of a run: the properties and the tables they refer to (rules, podcast shows, backup sources).<p>
+ * A configuration is either read from the files (and records what was read) or from a snapshot, a single binary
+ * file written by {@link #write(Path)} after the configuration was loaded and validated successfully. Starting
+ * from a snapshot reads one file instead of four and skips the properties parser; the snapshot is only used as
+ * long as none of the recorded files was modified, otherwise the configuration is read from the files again.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class ConfigSnapshot {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x52465331;		// RFS1
+
+	private final Properties properties;
+	private final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+	private final Map<String, Long> modified = new HashMap<String, Long>();
+	private boolean snapshot = false;
+
+	private ConfigSnapshot(Properties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Reads the configuration from a properties file; the tables are read on demand by {@link #open(String)}.
+	 *
+	 * @param propertiesFileName	the configuration properties
+	 * @return						the configuration
+	 * @throws IOException if the file can not be read
+	 */
+	public static ConfigSnapshot fromFiles(String propertiesFileName) throws IOException {
+		ConfigSnapshot _config = new ConfigSnapshot(new Properties());
+		_config.properties.load(new InputStreamReader(new ByteArrayInputStream(_config.record(propertiesFileName)), "ISO-8859-1"));
+		return _config;
+	}
+
+	/**
+	 * Reads a snapshot. If one of the recorded files was modified since the snapshot was written,
+	 * the configuration is read from the files instead.
+	 *
+	 * @param snapshot	the snapshot file
+	 * @return			the configuration
+	 * @throws IOException if the snapshot (or the modified configuration) can not be read
+	 */
+	public static ConfigSnapshot read(Path snapshot) throws IOException {
+		try (DataInputStream _in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+			if (_in.readInt() != MAGIC) {
+				throw new IOException(snapshot + " is not a configuration snapshot");
+			}
+			ConfigSnapshot _config = new ConfigSnapshot(new Properties());
+			String _propertiesFileName = null;
+			boolean _stale = false;
+			for (int n = _in.readInt(); n > 0; n--) {
+				String _name = _in.readUTF();
+				long _modified = _in.readLong();
+				byte[] _content = new byte[_in.readInt()];
+				_in.readFully(_content);
+				if (_propertiesFileName == null) {
+					_propertiesFileName = _name;
+				}
+				_stale |= new File(_name).lastModified() != _modified;
+				_config.contents.put(_name, _content);
+				_config.modified.put(_name, _modified);
+			}
+			for (int n = _in.readInt(); n > 0; n--) {
+				_config.properties.setProperty(_in.readUTF(), _in.readUTF());
+			}
+			if (_stale) {
+				System.out.println("configuration changed since " + snapshot + " was written, reading " + _propertiesFileName);
+				return fromFiles(_propertiesFileName);
+			}
+			_config.snapshot = true;
+			return _config;
+		}
+	}
+
+	/**
+	 * @return	true if the configuration was read from a snapshot, false if it was read from the files
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return	the configuration properties
+	 */
+	public Properties getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Opens a table of the configuration, from the snapshot or from the file.
+	 *
+	 * @param fileName	the name of the table file
+	 * @return			a reader for the table
+	 * @throws IOException if the file can not be read
+	 */
+	public Reader open(String fileName) throws IOException {
+		byte[] _content = contents.get(fileName);
+		if (_content == null) {
+			_content = record(fileName);
+		}
+		return new InputStreamReader(new ByteArrayInputStream(_content), UTF8);
+	}
+
+	/**
+	 * Reads a file and records its content and modification time.
+	 */
+	private synchronized byte[] record(String fileName) throws IOException {
+		File _file = new File(fileName);
+		long _modified = _file.lastModified();
+		byte[] _content = Files.readAllBytes(_file.toPath());
+		contents.put(fileName, _content);
+		modified.put(fileName, _modified);
+		return _content;
+	}
+
+	/**
+	 * Writes the snapshot of the configuration, i.e. of the properties and all tables that were opened.
+	 *
+	 * @param snapshot	the snapshot file
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void write(Path snapshot) throws IOException {
+		Path _tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+		try (DataOutputStream _out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(_tmp)))) {
+			_out.writeInt(MAGIC);
+			_out.writeInt(contents.size());
+			for (Map.Entry<String, byte[]> _entry : contents.entrySet()) {
+				_out.writeUTF(_entry.getKey());
+				_out.writeLong(modified.get(_entry.getKey()));
+				_out.writeInt(_entry.getValue().length);
+				_out.write(_entry.getValue());
+			}
+			_out.writeInt(properties.size());
+			for (String _key : properties.stringPropertyNames()) {
+				_out.writeUTF(_key);
+				_out.writeUTF(properties.getProperty(_key));
+			}
+		}
+		Files.move(_tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
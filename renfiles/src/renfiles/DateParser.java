@@ -0,0 +1,253 @@
+package renfiles;
+import java.util.TimeZone;
+
+/**
+ * Parses the dates in file and directory names without creating any objects.<p>
+ * A date is returned as a packed int, which contains the year, month, day and the precision
+ * (year, year and month, or the full date). {@link #NONE} (0) means that no valid date was found.
+ * The parser recognises the following layouts:
+ * <ul>
+ * <li>yyyy[MM[dd]] at the beginning of a name (e.g. 20140117ic_abc.pdf, see {@link #parseLeading(CharSequence)})
+ * <li>yyyyMMdd or yyyyMM at an offset (e.g. NZZ_20140106.pdf, kw03_mmgl_xx_20140116.pdf)
+ * <li>yyyy-MM-dd at an offset (e.g. taz-ges-2014-01-09.pdf, Bento Backup - 2013-12-14.bentodb,
+ *     2014-01-09 12-00-00 for the ProSaldo backups)
+ * </ul>
+ * Years must be between 1 and 2999, months between 01 and 12 and days between 01 and 31
+ * (special cases like 31st of February are ignored).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public final class DateParser {
+	/** no valid date */
+	public static final int NONE = 0;
+	/** precision: only the year is known */
+	public static final int YEAR = 1;
+	/** precision: year and month are known */
+	public static final int MONTH = 2;
+	/** precision: year, month and day are known */
+	public static final int DAY = 3;
+
+	private DateParser() {
+	}
+
+	/**
+	 * Checks whether a String (typically a file name) starts with a date in the form of yyyyMMdd.
+	 * Days = 00 and / or Months = 00 are allowed and will be ignored, i.e. the precision of the
+	 * returned date is reduced to year and month or to the year only.
+	 *
+	 * @param s		the String to parse
+	 * @return		the packed date or NONE if there is no leading date
+	 */
+	public static int parseLeading(CharSequence s) {
+		// TODO: handle before christ (ad) dates
+		int _len = s.length();
+		int _year = digits(s, 0, 4);
+		if (_year <= 0 || _year >= 3000) {
+			return NONE;
+		}
+		int _month = _len >= 6 ? digits(s, 4, 2) : -1;
+		if (_month < 1 || _month > 12) {
+			return pack(YEAR, _year, 0, 0);
+		}
+		int _day = _len >= 8 ? digits(s, 6, 2) : -1;
+		if (_day < 1 || _day > 31) {
+			return pack(MONTH, _year, _month, 0);
+		}
+		return pack(DAY, _year, _month, _day);
+	}
+
+	/**
+	 * Parses a date in the form of yyyyMMdd at an offset.
+	 *
+	 * @param s			the String to parse
+	 * @param offset	the position of the date
+	 * @return			the packed date or NONE if there is no valid date at the offset
+	 */
+	public static int parseCompact(CharSequence s, int offset) {
+		return parse(s, offset, offset + 4, offset + 6);
+	}
+
+	/**
+	 * Parses a date in the form of yyyyMM at an offset.
+	 *
+	 * @param s			the String to parse
+	 * @param offset	the position of the date
+	 * @return			the packed date (with precision MONTH) or NONE if there is no valid date at the offset
+	 */
+	public static int parseMonth(CharSequence s, int offset) {
+		return parse(s, offset, offset + 4, -1);
+	}
+
+	/**
+	 * Parses a date in the form of yyyy-MM-dd at an offset.
+	 *
+	 * @param s			the String to parse
+	 * @param offset	the position of the date
+	 * @return			the packed date or NONE if there is no valid date at the offset
+	 */
+	public static int parseDashed(CharSequence s, int offset) {
+		if (s.length() < offset + 10 || s.charAt(offset + 4) != '-' || s.charAt(offset + 7) != '-') {
+			return NONE;
+		}
+		return parse(s, offset, offset + 5, offset + 8);
+	}
+
+	private static int parse(CharSequence s, int yearPos, int monthPos, int dayPos) {
+		if (yearPos < 0 || s.length() < Math.max(monthPos, dayPos) + 2) {
+			return NONE;
+		}
+		int _year = digits(s, yearPos, 4);
+		int _month = digits(s, monthPos, 2);
+		if (_year <= 0 || _year >= 3000 || _month < 1 || _month > 12) {
+			return NONE;
+		}
+		if (dayPos < 0) {
+			return pack(MONTH, _year, _month, 0);
+		}
+		int _day = digits(s, dayPos, 2);
+		if (_day < 1 || _day > 31) {
+			return NONE;
+		}
+		return pack(DAY, _year, _month, _day);
+	}
+
+	/**
+	 * Parses a number of decimal digits.
+	 * @return	the value or -1 if the String is too short or contains a non-digit
+	 */
+	private static int digits(CharSequence s, int offset, int count) {
+		if (s.length() < offset + count) {
+			return -1;
+		}
+		int _value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			_value = _value * 10 + (c - '0');
+		}
+		return _value;
+	}
+
+	/**
+	 * Converts a point in time (e.g. the modification time of a file) into the date in the default time zone.
+	 * In contrast to a SimpleDateFormat, this may be called concurrently.
+	 *
+	 * @param millis	the milliseconds since 1970-01-01 UTC
+	 * @return			the packed date or NONE if the year is not between 1 and 2999
+	 */
+	public static int fromMillis(long millis) {
+		long _local = millis + TimeZone.getDefault().getOffset(millis);
+		long _days = _local / 86400000L - (_local % 86400000L < 0 ? 1 : 0);
+		// civil date from days since 1970-01-01 (proleptic gregorian calendar), in eras of 400 years starting on March 1st
+		_days += 719468;
+		long _era = (_days >= 0 ? _days : _days - 146096) / 146097;
+		long _dayOfEra = _days - _era * 146097;
+		long _yearOfEra = (_dayOfEra - _dayOfEra / 1460 + _dayOfEra / 36524 - _dayOfEra / 146096) / 365;
+		long _dayOfYear = _dayOfEra - (365 * _yearOfEra + _yearOfEra / 4 - _yearOfEra / 100);
+		long _mp = (5 * _dayOfYear + 2) / 153;
+		int _day = (int) (_dayOfYear - (153 * _mp + 2) / 5 + 1);
+		int _month = (int) (_mp < 10 ? _mp + 3 : _mp - 9);
+		long _year = _yearOfEra + _era * 400 + (_month <= 2 ? 1 : 0);
+		if (_year <= 0 || _year >= 3000) {
+			return NONE;
+		}
+		return pack(DAY, (int) _year, _month, _day);
+	}
+
+	/**
+	 * Packs a date into an int.
+	 *
+	 * @param precision		YEAR, MONTH or DAY
+	 * @param year			the year (1 .. 2999)
+	 * @param month			the month (1 .. 12) or 0
+	 * @param day			the day (1 .. 31) or 0
+	 * @return				the packed date
+	 */
+	public static int pack(int precision, int year, int month, int day) {
+		return (precision << 24) | (year << 9) | (month << 5) | day;
+	}
+
+	/**
+	 * @param date	a packed date
+	 * @return		the precision (NONE, YEAR, MONTH or DAY)
+	 */
+	public static int precision(int date) {
+		return date >>> 24;
+	}
+
+	/**
+	 * @param date	a packed date
+	 * @return		the year
+	 */
+	public static int year(int date) {
+		return (date >>> 9) & 0xFFF;
+	}
+
+	/**
+	 * @param date	a packed date
+	 * @return		the month (1 .. 12) or 0
+	 */
+	public static int month(int date) {
+		return (date >>> 5) & 0xF;
+	}
+
+	/**
+	 * @param date	a packed date
+	 * @return		the day (1 .. 31) or 0
+	 */
+	public static int day(int date) {
+		return date & 0x1F;
+	}
+
+	/**
+	 * Appends a date as yyyy, yyyyMM or yyyyMMdd (according to its precision).
+	 *
+	 * @param sb	the buffer
+	 * @param date	a packed date
+	 * @return		the buffer
+	 */
+	public static StringBuilder append(StringBuilder sb, int date) {
+		if (precision(date) >= YEAR) {
+			appendDigits(sb, year(date), 4);
+		}
+		if (precision(date) >= MONTH) {
+			appendDigits(sb, month(date), 2);
+		}
+		if (precision(date) >= DAY) {
+			appendDigits(sb, day(date), 2);
+		}
+		return sb;
+	}
+
+	/**
+	 * Appends a number with leading zeros.
+	 *
+	 * @param sb		the buffer
+	 * @param value		the number
+	 * @param width		the number of digits
+	 * @return			the buffer
+	 */
+	public static StringBuilder appendDigits(StringBuilder sb, int value, int width) {
+		int _div = 1;
+		for (int i = 1; i < width; i++) {
+			_div *= 10;
+		}
+		for (; _div > 0; _div /= 10) {
+			sb.append((char) ('0' + (value / _div) % 10));
+		}
+		return sb;
+	}
+
+	/**
+	 * Formats a date as yyyy, yyyyMM or yyyyMMdd (according to its precision).
+	 *
+	 * @param date	a packed date
+	 * @return		the formatted date or "" for NONE
+	 */
+	public static String toString(int date) {
+		return append(new StringBuilder(8), date).toString();
+	}
+}
@@ -0,0 +1,94 @@
+package renfiles;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the destination directories that are known to exist, with their canonical paths.<p>
+ * Most files of a run are moved into a few directories (e.g. news/nzz/2014); with the cache, each of these
+ * directories is created and resolved once per run instead of once per file, which saves metadata round trips
+ * on network volumes. The cache holds at most maxSize directories and drops the least recently used ones.
+ * A directory is invalidated when a move into it fails (e.g. it was removed or the volume was unmounted).
+ * It may be used concurrently.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class DirectoryCache {
+	private final Map<String, File> dirs;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize	the maximal number of cached directories
+	 */
+	public DirectoryCache(final int maxSize) {
+		dirs = new LinkedHashMap<String, File>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, File> eldest) {
+				return size() > Math.max(1, maxSize);
+			}
+		};
+	}
+
+	/**
+	 * Looks up a directory.
+	 *
+	 * @param dirName	the name of the directory (as configured or classified)
+	 * @return			the canonical directory or null if it is not known to exist
+	 */
+	public synchronized File get(String dirName) {
+		File _dir = dirs.get(dirName);
+		if (_dir == null) {
+			missCount++;
+		}
+		else {
+			hitCount++;
+		}
+		return _dir;
+	}
+
+	/**
+	 * Remembers an existing directory.
+	 *
+	 * @param dirName	the name of the directory
+	 * @param dir		the canonical directory
+	 */
+	public synchronized void put(String dirName, File dir) {
+		dirs.put(dirName, dir);
+	}
+
+	/**
+	 * Forgets a directory, e.g. after a failed move into it.
+	 *
+	 * @param dirName	the name of the directory
+	 */
+	public synchronized void invalidate(String dirName) {
+		dirs.remove(dirName);
+	}
+
+	/**
+	 * @return	the number of lookups of known directories
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return	the number of lookups of unknown directories (i.e. directories created and resolved)
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return	a one-line summary of the lookups
+	 */
+	public synchronized String getSummary() {
+		return "destination directories: " + hitCount + " hits, " + missCount + " misses, " + dirs.size() + " cached";
+	}
+}
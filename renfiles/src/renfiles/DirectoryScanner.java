@@ -0,0 +1,160 @@
+package renfiles;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Streams the entries of a directory (or directory tree) to a {@link Visitor}.<p>
+ * In contrast to <code>File.listFiles()</code>, the directory is never materialized as an array;
+ * each entry is handed over as soon as it is read, so that the processing can start immediately
+ * (and the bounded {@link MovePipeline} throttles the scan). The attributes of each entry are read
+ * only once.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class DirectoryScanner {
+	/**
+	 * Receives the entries of a scan.
+	 */
+	public interface Visitor {
+		/**
+		 * Handles one directory entry.
+		 *
+		 * @param path		the entry
+		 * @param attrs		the attributes of the entry
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		void visit(Path path, BasicFileAttributes attrs) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * Sends each entry of a scan to the visitor of the first filter that accepts it, so that one pass over a
+	 * directory serves several kinds of files. As filter of the directory stream, the router only checks the
+	 * names; the attributes are read for the entries with an accepted name only, and then the remaining criteria
+	 * (age, size) of the filters are checked (see {@link RenameFileFilter#accept(Path, BasicFileAttributes)}).
+	 * Use the router as filter and visitor of the same scan.
+	 */
+	public static class Router implements DirectoryStream.Filter<Path>, Visitor {
+		private final List<RenameFileFilter> filters = new ArrayList<RenameFileFilter>();
+		private final List<Visitor> visitors = new ArrayList<Visitor>();
+
+		/**
+		 * Adds a route.
+		 *
+		 * @param filter	the selection criteria
+		 * @param visitor	receives the entries accepted by the filter (and not by a filter added before)
+		 * @return			this router
+		 */
+		public Router add(RenameFileFilter filter, Visitor visitor) {
+			filters.add(filter);
+			visitors.add(visitor);
+			return this;
+		}
+
+		public boolean accept(Path entry) {
+			for (RenameFileFilter _filter : filters) {
+				if (_filter.accept(entry)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void visit(Path path, BasicFileAttributes attrs) throws IOException, InterruptedException {
+			for (int i = 0; i < filters.size(); i++) {
+				if (filters.get(i).accept(path, attrs)) {
+					visitors.get(i).visit(path, attrs);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return filters.toString();
+		}
+	}
+
+	private DirectoryScanner() {
+	}
+
+	/**
+	 * Scans the entries of a directory that are accepted by a filter.
+	 *
+	 * @param dir		the directory to scan
+	 * @param filter	the selection criteria
+	 * @param visitor	receives the selected entries
+	 * @return			the number of entries handed over to the visitor
+	 * @throws IOException if the directory can not be read
+	 * @throws InterruptedException if the visitor is interrupted
+	 */
+	public static int scan(Path dir, DirectoryStream.Filter<? super Path> filter, Visitor visitor) throws IOException, InterruptedException {
+		int _count = 0;
+		DirectoryStream<Path> _stream = Files.newDirectoryStream(dir, filter);
+		try {
+			for (Path _entry : _stream) {
+				BasicFileAttributes _attrs;
+				try {
+					_attrs = Files.readAttributes(_entry, BasicFileAttributes.class);
+				}
+				catch (NoSuchFileException _ex) {  // removed in the meantime
+					continue;
+				}
+				visitor.visit(_entry, _attrs);
+				_count++;
+			}
+		}
+		finally {
+			_stream.close();
+		}
+		return _count;
+	}
+
+	/**
+	 * Walks a directory tree up to a maximal depth and hands over all files (not directories)
+	 * below the root that are accepted by a filter.
+	 *
+	 * @param root		the root directory
+	 * @param maxDepth	the maximal depth (1 = the entries of root only)
+	 * @param filter	the selection criteria
+	 * @param visitor	receives the selected files
+	 * @throws IOException if the root directory can not be read
+	 * @throws InterruptedException if the visitor is interrupted
+	 */
+	public static void walk(final Path root, int maxDepth, final DirectoryStream.Filter<? super Path> filter,
+			final Visitor visitor) throws IOException, InterruptedException {
+		final InterruptedException[] _interrupted = new InterruptedException[1];
+		Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isDirectory() == false && filter.accept(file)) {
+					try {
+						visitor.visit(file, attrs);
+					}
+					catch (InterruptedException _ex) {
+						_interrupted[0] = _ex;
+						return FileVisitResult.TERMINATE;
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+				if (file.equals(root)) {
+					throw ex;
+				}
+				System.out.println("******** failed to read " + file + " with " + ex.toString() + "*********");
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		if (_interrupted[0] != null) {
+			throw _interrupted[0];
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package renfiles;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Watches directories with a <code>WatchService</code> and reports new or changed files
+ * once they are complete.<p>
+ * A file is regarded as complete (e.g. a download has finished) if its size and modification time
+ * did not change during the settle time. Only the watched directories themselves are observed, not
+ * their subdirectories.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class DirectoryWatcher {
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+	private final Map<Path, Pending> pending = new LinkedHashMap<Path, Pending>();
+	private final long settleMillis;
+
+	/**
+	 * Receives the complete files.
+	 */
+	public interface Listener {
+		/**
+		 * Handles a group of complete files.
+		 *
+		 * @param files		the files (in the order in which they appeared)
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		void filesReady(List<Path> files) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * The last observed state of a file that is not yet complete.
+	 */
+	private static class Pending {
+		private long size;
+		private long modified;
+		private long lastChange;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param settleMillis	the time in ms the size and modification time of a file must be stable
+	 * @throws IOException if the watch service can not be created
+	 */
+	public DirectoryWatcher(long settleMillis) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * Starts watching a directory.
+	 *
+	 * @param dir	the directory to watch
+	 * @throws IOException if the directory can not be watched
+	 */
+	public void register(Path dir) throws IOException {
+		WatchKey _key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		keys.put(_key, dir);
+	}
+
+	/**
+	 * Watches the registered directories until the current thread is interrupted.
+	 *
+	 * @param listener		receives the complete files
+	 * @throws IOException
+	 * @throws InterruptedException if the thread is interrupted (i.e. watching is stopped)
+	 */
+	public void run(Listener listener) throws IOException, InterruptedException {
+		try {
+			while (keys.isEmpty() == false) {
+				// wait for events, but wake up in time to check the pending files
+				WatchKey _key = pending.isEmpty() ? watchService.take() : watchService.poll(Math.max(100, settleMillis / 4), java.util.concurrent.TimeUnit.MILLISECONDS);
+				while (_key != null) {
+					handleEvents(_key);
+					_key = watchService.poll();
+				}
+				List<Path> _ready = checkPending();
+				if (_ready.isEmpty() == false) {
+					listener.filesReady(_ready);
+				}
+			}
+		}
+		finally {
+			watchService.close();
+		}
+	}
+
+	private void handleEvents(WatchKey key) throws IOException {
+		Path _dir = keys.get(key);
+		for (WatchEvent<?> _event : key.pollEvents()) {
+			if (_event.kind() == StandardWatchEventKinds.OVERFLOW) {  // events lost -> check the whole directory
+				try (DirectoryStream<Path> _stream = Files.newDirectoryStream(_dir)) {
+					for (Path _entry : _stream) {
+						touch(_entry);
+					}
+				}
+			}
+			else {
+				touch(_dir.resolve((Path) _event.context()));
+			}
+		}
+		if (key.reset() == false) {  // directory is no longer accessible
+			System.out.println("******** stopped watching " + _dir + " *********");
+			keys.remove(key);
+		}
+	}
+
+	/**
+	 * Marks a file as changed.
+	 */
+	private void touch(Path file) {
+		Pending _p = pending.get(file);
+		if (_p == null) {
+			_p = new Pending();
+			_p.size = -1;
+			pending.put(file, _p);
+		}
+		_p.lastChange = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks the pending files and removes the complete ones.
+	 * @return	the complete files
+	 */
+	private List<Path> checkPending() {
+		List<Path> _ready = new ArrayList<Path>();
+		long _now = System.currentTimeMillis();
+		Iterator<Map.Entry<Path, Pending>> _it = pending.entrySet().iterator();
+		while (_it.hasNext()) {
+			Map.Entry<Path, Pending> _entry = _it.next();
+			Pending _p = _entry.getValue();
+			BasicFileAttributes _attrs;
+			try {
+				_attrs = Files.readAttributes(_entry.getKey(), BasicFileAttributes.class);
+			}
+			catch (IOException _ex) {  // removed or renamed in the meantime
+				_it.remove();
+				continue;
+			}
+			if (_attrs.isRegularFile() == false) {
+				_it.remove();
+			}
+			else if (_attrs.size() != _p.size || _attrs.lastModifiedTime().toMillis() != _p.modified) {
+				_p.size = _attrs.size();
+				_p.modified = _attrs.lastModifiedTime().toMillis();
+				_p.lastChange = _now;
+			}
+			else if (_now - _p.lastChange >= settleMillis) {
+				_ready.add(_entry.getKey());
+				_it.remove();
+			}
+		}
+		return _ready;
+	}
+}
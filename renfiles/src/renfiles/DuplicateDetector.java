@@ -0,0 +1,272 @@
+package renfiles;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Detects incoming files that are already in the archive with the same content (e.g. an epaper downloaded twice).<p>
+ * The detector keeps an index of the archived files by size. A file is compared in three steps, each of them
+ * only if the previous one matched: the size (a map lookup), the hash of the first block and the hash of the
+ * whole file. The hashes (SHA-256) are computed with memory-mapped reads and only when they are needed;
+ * they are kept in the index, so that each archived file is hashed at most once.<p>
+ * The index is stored in a text file (one line per file: size, modification time, block hash, full hash, path).
+ * If it does not exist, it is built by walking the archive directories (without reading any content);
+ * afterwards it is updated incrementally with each moved file. Entries whose file was changed or removed since
+ * it was indexed are replaced (or dropped) when they are looked up.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class DuplicateDetector {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+	private final Path indexPath;
+	private final Map<Long, List<Entry>> bySize = new HashMap<Long, List<Entry>>();
+	private final Map<String, Entry> pending = new HashMap<String, Entry>();
+	private boolean dirty = false;
+
+	/**
+	 * A file with its lazily computed hashes.
+	 */
+	private static class Entry {
+		private final File file;
+		private final long size;
+		private final long modified;
+		private String blockHash;
+		private String fullHash;
+
+		private Entry(File file, long size, long modified, String blockHash, String fullHash) {
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+			this.blockHash = blockHash;
+			this.fullHash = fullHash;
+		}
+
+		private synchronized String getBlockHash() throws IOException {
+			if (blockHash == null) {
+				blockHash = hash(file, Math.min(size, BLOCK_SIZE));
+				if (size <= BLOCK_SIZE) {
+					fullHash = blockHash;
+				}
+			}
+			return blockHash;
+		}
+
+		private synchronized String getFullHash() throws IOException {
+			if (fullHash == null) {
+				fullHash = hash(file, size);
+			}
+			return fullHash;
+		}
+	}
+
+	/**
+	 * Constructor; loads the index or builds it from the archive directories.
+	 *
+	 * @param indexPath		the index file
+	 * @param archiveDirs	the directories of the archive (only used if the index does not exist)
+	 * @throws IOException if the index can not be read
+	 */
+	public DuplicateDetector(Path indexPath, List<Path> archiveDirs) throws IOException {
+		this.indexPath = indexPath;
+		if (Files.exists(indexPath)) {
+			load();
+		}
+		else {
+			for (Path _dir : archiveDirs) {
+				if (Files.isDirectory(_dir)) {
+					index(_dir);
+				}
+			}
+			dirty = true;
+		}
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader _reader = Files.newBufferedReader(indexPath, UTF8)) {
+			String _line;
+			while ((_line = _reader.readLine()) != null) {
+				String[] _col = _line.split("\t", 5);
+				if (_col.length == 5) {
+					put(new Entry(new File(_col[4]), Long.parseLong(_col[0]), Long.parseLong(_col[1]),
+							_col[2].equals("-") ? null : _col[2], _col[3].equals("-") ? null : _col[3]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds all files of a directory tree to the index (metadata only).
+	 */
+	private void index(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && file.getFileName().toString().startsWith(".") == false) {
+					put(new Entry(file.toFile(), attrs.size(), attrs.lastModifiedTime().toMillis(), null, null));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) {
+				return FileVisitResult.CONTINUE;		// e.g. no permission
+			}
+		});
+	}
+
+	private void put(Entry entry) {
+		List<Entry> _entries = bySize.get(entry.size);
+		if (_entries == null) {
+			_entries = new ArrayList<Entry>(1);
+			bySize.put(entry.size, _entries);
+		}
+		_entries.add(entry);
+	}
+
+	/**
+	 * Looks for an archived file with the same content.
+	 *
+	 * @param f		the incoming file
+	 * @return		the archived file with the same content or null (always null for empty files)
+	 * @throws IOException if a file can not be read
+	 */
+	public File findDuplicate(File f) throws IOException {
+		Entry _incoming = new Entry(f, f.length(), f.lastModified(), null, null);
+		List<Entry> _candidates;
+		synchronized (this) {
+			pending.put(f.getPath(), _incoming);
+			List<Entry> _entries = bySize.get(_incoming.size);
+			if (_entries == null || _incoming.size == 0) {
+				return null;
+			}
+			_candidates = new ArrayList<Entry>(_entries);
+		}
+		for (Entry _candidate : _candidates) {
+			if (_candidate.file.length() != _candidate.size || _candidate.file.lastModified() != _candidate.modified) {
+				refresh(_candidate);		// changed or removed since it was indexed
+				continue;
+			}
+			if (_candidate.getBlockHash().equals(_incoming.getBlockHash()) &&
+					_candidate.getFullHash().equals(_incoming.getFullHash())) {
+				return _candidate.file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces an outdated entry by the current state of its file (if it still exists).
+	 */
+	private synchronized void refresh(Entry entry) {
+		List<Entry> _entries = bySize.get(entry.size);
+		if (_entries != null && _entries.remove(entry)) {
+			if (_entries.isEmpty()) {
+				bySize.remove(entry.size);
+			}
+			if (entry.file.isFile()) {
+				put(new Entry(entry.file, entry.file.length(), entry.file.lastModified(), null, null));
+			}
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Adds a moved file to the index; the hashes computed by {@link #findDuplicate(File)} are kept.
+	 *
+	 * @param src	the file before the move
+	 * @param dest	the archived file
+	 */
+	public synchronized void added(File src, File dest) {
+		Entry _entry = pending.remove(src.getPath());
+		if (_entry == null || _entry.size != dest.length()) {
+			_entry = new Entry(dest, dest.length(), dest.lastModified(), null, null);
+		}
+		else {
+			_entry = new Entry(dest, _entry.size, dest.lastModified(), _entry.blockHash, _entry.fullHash);
+		}
+		put(_entry);
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the hashes of an incoming file that was not moved.
+	 *
+	 * @param src	the incoming file
+	 */
+	public synchronized void skipped(File src) {
+		pending.remove(src.getPath());
+	}
+
+	/**
+	 * @return	the number of indexed files
+	 */
+	public synchronized int size() {
+		int _size = 0;
+		for (List<Entry> _entries : bySize.values()) {
+			_size += _entries.size();
+		}
+		return _size;
+	}
+
+	/**
+	 * Writes the index, if it was changed.
+	 *
+	 * @throws IOException if the index can not be written
+	 */
+	public synchronized void save() throws IOException {
+		if (dirty == false) {
+			return;
+		}
+		Path _tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try (BufferedWriter _writer = Files.newBufferedWriter(_tmp, UTF8)) {
+			for (List<Entry> _entries : bySize.values()) {
+				for (Entry _entry : _entries) {
+					String _path = _entry.file.getPath();
+					if (_path.indexOf('\n') >= 0) {
+						continue;		// can not be stored, will be hashed again
+					}
+					_writer.write(_entry.size + "\t" + _entry.modified + "\t" +
+							(_entry.blockHash == null ? "-" : _entry.blockHash) + "\t" +
+							(_entry.fullHash == null ? "-" : _entry.fullHash) + "\t" + _path + "\n");
+				}
+			}
+		}
+		Files.move(_tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		dirty = false;
+	}
+
+	/**
+	 * Computes the SHA-256 hash of the first length bytes of a file with memory-mapped reads.
+	 */
+	private static String hash(File f, long length) throws IOException {
+		MessageDigest _digest;
+		try {
+			_digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException _ex) {
+			throw new IOException(_ex.toString());
+		}
+		try (FileChannel _channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			long _length = Math.min(length, _channel.size());
+			for (long _pos = 0; _pos < _length; _pos += MAP_SIZE) {
+				MappedByteBuffer _buf = _channel.map(FileChannel.MapMode.READ_ONLY, _pos, Math.min(MAP_SIZE, _length - _pos));
+				_digest.update(_buf);
+			}
+		}
+		StringBuilder _sb = new StringBuilder(64);
+		for (byte b : _digest.digest()) {
+			_sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return _sb.toString();
+	}
+}
@@ -0,0 +1,42 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Coordinates several instances of RenameFiles that convert the files of the same (shared) source directories,
+ * so that each file is converted by one instance only (see {@link ShardClaims} and {@link LeaseClaims}).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public interface FileClaims {
+	/**
+	 * Claims a file for this instance before it is converted; may be called concurrently.
+	 *
+	 * @param f		the file to convert
+	 * @return		true if this instance converts the file, false if the file belongs to another instance
+	 * @throws IOException if the claim could not be checked
+	 */
+	boolean claim(File f) throws IOException;
+
+	/**
+	 * Checks whether the claim of a file was lost since it was claimed, e.g. the lease of a stalled instance was
+	 * broken by another instance; the file must not be moved any more.
+	 *
+	 * @param f		the claimed file
+	 * @return		true if this instance no longer holds the claim of the file
+	 */
+	boolean isLost(File f);
+
+	/**
+	 * Releases the claim of a file after its conversion (whether the file was moved or not).
+	 *
+	 * @param f		the claimed file
+	 */
+	void release(File f);
+
+	/**
+	 * Releases all claims at the end of a run.
+	 */
+	void close();
+}
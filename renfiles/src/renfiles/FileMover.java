@@ -0,0 +1,494 @@
+package renfiles;
+import java.io.IOException;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Moves files and directory trees.<p>
+ * A move is first tried as a rename within the file system. If the destination is on another file system
+ * (e.g. a mounted afp / smb volume), the source is copied with <code>FileChannel.transferTo</code> into a
+ * temporary <code>.part</code> file (or directory) next to the destination, verified (size, optionally CRC32
+ * checksum), renamed to the destination and only then deleted.<p>
+ * An existing destination is never overwritten, even if it is created by another thread or instance while the
+ * file is moved: as a rename (<code>rename(2)</code>) silently replaces an existing file, a file is renamed by
+ * creating a hard link at the destination (which fails if it exists) and removing the source. Directories and
+ * files on file systems without hard links are renamed with <code>ATOMIC_MOVE</code> after the destination was
+ * checked. If the destination is complete but the source can not be deleted, a {@link SourceKeptException}
+ * is thrown instead of a failed move.<p>
+ * Files of at least resumeThreshold bytes are copied in chunks: after each chunk, the <code>.part</code> file is
+ * forced to disk and its length and the CRC32 of the chunk are recorded in a <code>.part.resume</code> sidecar.
+ * If such a copy fails (e.g. the volume is disconnected), the partial copy is kept and the next move of the same
+ * (unmodified) source resumes after the last recorded chunk, once the chunk was verified against the checkpoint.
+ * The copies of all threads together are throttled to bytesPerSecond, and the progress of each chunk is
+ * reported to a {@link Progress} listener.<p>
+ * The mover counts the moved files and the copied bytes; it may be used concurrently.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class FileMover {
+	private static final String PART_SUFFIX = ".part";
+	private static final String RESUME_SUFFIX = ".resume";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int bufferSize;
+	private final boolean verifyChecksum;
+	private final long resumeThreshold;
+	private final long chunkSize;
+	private final long bytesPerSecond;
+	private long nextTransferNanos = 0;
+	private Progress progress = null;
+	private final AtomicLong renameCount = new AtomicLong();
+	private final AtomicLong copyCount = new AtomicLong();
+	private final AtomicLong bytesCopied = new AtomicLong();
+	private final AtomicLong copyNanos = new AtomicLong();
+	private final AtomicLong resumeCount = new AtomicLong();
+
+	/**
+	 * Thrown if a file was moved to its destination, but the source could not be deleted: the destination is
+	 * complete, i.e. the move succeeded, and the source needs to be removed manually.
+	 */
+	public static class SourceKeptException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private SourceKeptException(Path src, IOException cause) {
+			super("moved, but " + src + " could not be deleted: " + cause.toString(), cause);
+		}
+	}
+
+	/**
+	 * Receives the progress of the chunked copies.
+	 */
+	public interface Progress {
+		/**
+		 * Called after each chunk of a chunked copy.
+		 *
+		 * @param src		the file that is copied
+		 * @param copied	the number of bytes copied so far (including a resumed part)
+		 * @param size		the size of the file
+		 * @param nanos		the time since the start of this copy
+		 */
+		void copied(Path src, long copied, long size, long nanos);
+	}
+
+	/**
+	 * Constructor for a mover without chunked copies and throttling.
+	 *
+	 * @param bufferSize		the number of bytes transferred per call (and the buffer size for the checksum)
+	 * @param verifyChecksum	true if copies are verified with a checksum, false if only the size is compared
+	 */
+	public FileMover(int bufferSize, boolean verifyChecksum) {
+		this(bufferSize, verifyChecksum, Long.MAX_VALUE, 0, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bufferSize		the number of bytes transferred per call (and the buffer size for the checksum)
+	 * @param verifyChecksum	true if copies are verified with a checksum, false if only the size is compared
+	 * @param resumeThreshold	the minimal size of the files that are copied in resumable chunks
+	 * @param chunkSize			the number of bytes after which a chunked copy is checkpointed
+	 * @param bytesPerSecond	the maximal transfer rate of all copies together or 0 for no limit
+	 */
+	public FileMover(int bufferSize, boolean verifyChecksum, long resumeThreshold, long chunkSize, long bytesPerSecond) {
+		this.bufferSize = Math.max(4096, bufferSize);
+		this.verifyChecksum = verifyChecksum;
+		this.resumeThreshold = resumeThreshold;
+		this.chunkSize = Math.max(this.bufferSize, chunkSize);
+		this.bytesPerSecond = Math.max(0, bytesPerSecond);
+	}
+
+	/**
+	 * Sets the listener for the progress of the chunked copies.
+	 *
+	 * @param progress	the listener or null
+	 */
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Moves a file or directory.
+	 *
+	 * @param src		the file or directory to move
+	 * @param dest		the destination (must not exist)
+	 * @throws SourceKeptException if the destination is complete, but the source could not be deleted
+	 * @throws IOException if the move failed; the source is kept in this case
+	 */
+	public void move(File src, File dest) throws IOException {
+		move(src.toPath(), dest.toPath());
+	}
+
+	/**
+	 * Moves a file or directory.
+	 *
+	 * @param src		the file or directory to move
+	 * @param dest		the destination (must not exist)
+	 * @throws SourceKeptException if the destination is complete, but the source could not be deleted
+	 * @throws IOException if the move failed; the source is kept in this case
+	 */
+	public void move(Path src, Path dest) throws IOException {
+		if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+			throw new FileAlreadyExistsException(dest.toString());
+		}
+		try {
+			rename(src, dest);
+			renameCount.incrementAndGet();
+			return;
+		}
+		catch (AtomicMoveNotSupportedException _ex) {
+			// the destination is on another file system -> copy, verify and delete
+		}
+		long _start = System.nanoTime();
+		Path _part = dest.resolveSibling(dest.getFileName() + PART_SUFFIX);
+		long _bytes = 0;
+		if (Files.isRegularFile(src, LinkOption.NOFOLLOW_LINKS) && Files.size(src) >= resumeThreshold) {
+			_bytes = copyChunked(src, _part);	// keeps the partial copy on failure
+			renamePart(_part, dest);
+			Files.deleteIfExists(resumeFile(_part));
+		}
+		else {
+			deleteTree(_part);		// left over from an interrupted copy
+			try {
+				if (Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+					_bytes = copyTree(src, _part);
+				}
+				else {
+					_bytes = copyFile(src, _part);
+				}
+				renamePart(_part, dest);
+			}
+			catch (IOException _ex) {
+				deleteTree(_part);
+				throw _ex;
+			}
+		}
+		copyCount.incrementAndGet();
+		bytesCopied.addAndGet(_bytes);
+		copyNanos.addAndGet(System.nanoTime() - _start);
+		try {
+			deleteTree(src);
+		}
+		catch (IOException _ex) {
+			throw new SourceKeptException(src, _ex);
+		}
+	}
+
+	/**
+	 * Renames a file or directory within a file system without replacing an existing destination: a file is
+	 * linked to the destination (which fails atomically if the destination exists) and then removed from the
+	 * source; a directory (or a file on a file system without hard links) is renamed after the destination
+	 * was checked.
+	 * @throws AtomicMoveNotSupportedException if the destination is on another file system
+	 * @throws SourceKeptException if the file was linked, but the source could not be removed
+	 */
+	static void rename(Path src, Path dest) throws IOException {
+		if (Files.isRegularFile(src, LinkOption.NOFOLLOW_LINKS)) {
+			boolean _linked = false;
+			try {
+				Files.createLink(dest, src);
+				_linked = true;
+			}
+			catch (FileAlreadyExistsException _ex) {
+				throw _ex;
+			}
+			catch (IOException | UnsupportedOperationException _ex) {
+				// another file system or no hard links -> rename
+			}
+			if (_linked) {
+				try {
+					Files.delete(src);
+				}
+				catch (IOException _ex) {
+					throw new SourceKeptException(src, _ex);
+				}
+				return;
+			}
+		}
+		if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+			throw new FileAlreadyExistsException(dest.toString());
+		}
+		Files.move(src, dest, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Renames a complete copy to its destination.
+	 */
+	private static void renamePart(Path part, Path dest) throws IOException {
+		try {
+			rename(part, dest);
+		}
+		catch (SourceKeptException _ex) {
+			// the destination is complete, only the part (a second link of the copy) is left over
+		}
+	}
+
+	/**
+	 * Copies a directory tree.
+	 * @return	the number of bytes copied
+	 */
+	private long copyTree(final Path src, final Path dest) throws IOException {
+		final long[] _bytes = new long[1];
+		Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(dest.resolve(src.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				_bytes[0] += copyFile(file, dest.resolve(src.relativize(file).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return _bytes[0];
+	}
+
+	/**
+	 * Copies a single file with transferTo and verifies the copy.
+	 * @return	the number of bytes copied
+	 */
+	private long copyFile(Path src, Path dest) throws IOException {
+		long _size;
+		try (FileChannel _in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel _out = FileChannel.open(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			_size = _in.size();
+			long _pos = 0;
+			while (_pos < _size) {
+				_pos += transfer(_in, _pos, Math.min(bufferSize, _size - _pos), _out);
+			}
+			_out.force(true);	// the source is deleted afterwards
+		}
+		verify(src, dest, _size);
+		return _size;
+	}
+
+	/**
+	 * Copies a single file in chunks into a partial copy, resuming after the last checkpoint of a previous
+	 * copy of the same source, and verifies the copy.
+	 * @return	the number of bytes copied by this call
+	 */
+	private long copyChunked(Path src, Path part) throws IOException {
+		long _start = System.nanoTime();
+		Path _resume = resumeFile(part);
+		long _size = Files.size(src);
+		long _mtime = Files.getLastModifiedTime(src).toMillis();
+		try (FileChannel _in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel _out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long _pos = resumePosition(_resume, _size, _mtime, _out);
+			long _resumed = _pos;
+			if (_pos > 0) {
+				resumeCount.incrementAndGet();
+			}
+			_out.truncate(_pos);
+			_out.position(_pos);
+			while (_pos < _size) {
+				long _chunkStart = _pos;
+				long _chunkEnd = Math.min(_size, _pos + chunkSize);
+				while (_pos < _chunkEnd) {
+					_pos += transfer(_in, _pos, Math.min(bufferSize, _chunkEnd - _pos), _out);
+				}
+				_out.force(false);
+				writeCheckpoint(_resume, _size, _mtime, _chunkStart, _pos, checksum(_in, _chunkStart, _pos));
+				Progress _progress = progress;
+				if (_progress != null) {
+					_progress.copied(src, _pos, _size, System.nanoTime() - _start);
+				}
+			}
+			_out.force(true);	// the source is deleted afterwards
+			verify(src, part, _size);
+			return _size - _resumed;
+		}
+	}
+
+	/**
+	 * Determines where a chunked copy is resumed: after the last checkpoint if the checkpoint belongs to the same
+	 * source (size and modification time) and the last chunk of the partial copy still has the recorded checksum.
+	 * @return	the position to resume or 0 to start from the beginning
+	 */
+	private long resumePosition(Path resume, long size, long mtime, FileChannel part) throws IOException {
+		if (Files.exists(resume) == false) {
+			return 0;
+		}
+		String[] _col = new String(Files.readAllBytes(resume), UTF8).trim().split(" ");
+		try {
+			if (_col.length != 5 || Long.parseLong(_col[0]) != size || Long.parseLong(_col[1]) != mtime) {
+				return 0;
+			}
+			long _chunkStart = Long.parseLong(_col[2]);
+			long _pos = Long.parseLong(_col[3]);
+			if (_chunkStart < 0 || _chunkStart > _pos || _pos > size || part.size() < _pos ||
+					checksum(part, _chunkStart, _pos) != Long.parseLong(_col[4])) {
+				return 0;
+			}
+			return _pos;
+		}
+		catch (NumberFormatException _ex) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Records the end of the last chunk that was forced to disk; the checkpoint is replaced atomically.
+	 */
+	private static void writeCheckpoint(Path resume, long size, long mtime, long chunkStart, long pos, long crc) throws IOException {
+		Path _tmp = resume.resolveSibling(resume.getFileName() + ".tmp");
+		Files.write(_tmp, (size + " " + mtime + " " + chunkStart + " " + pos + " " + crc + "\n").getBytes(UTF8));
+		Files.move(_tmp, resume, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Path resumeFile(Path part) {
+		return part.resolveSibling(part.getFileName() + RESUME_SUFFIX);
+	}
+
+	/**
+	 * Transfers a part of a file, throttled to bytesPerSecond over all threads: each transfer reserves its
+	 * time slot and waits until the slot starts.
+	 * @return	the number of bytes transferred
+	 */
+	private long transfer(FileChannel in, long pos, long count, FileChannel out) throws IOException {
+		if (bytesPerSecond > 0) {
+			long _wait;
+			synchronized (this) {
+				long _now = System.nanoTime();
+				long _slot = Math.max(_now, nextTransferNanos);
+				nextTransferNanos = _slot + count * 1000000000L / bytesPerSecond;
+				_wait = _slot - _now;
+			}
+			if (_wait > 0) {
+				try {
+					Thread.sleep(_wait / 1000000, (int) (_wait % 1000000));
+				}
+				catch (InterruptedException _ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("copy interrupted");
+				}
+			}
+		}
+		return in.transferTo(pos, count, out);
+	}
+
+	/**
+	 * Verifies a copy by its size and (optionally) its checksum and sets its modification time.
+	 */
+	private void verify(Path src, Path dest, long size) throws IOException {
+		if (Files.size(dest) != size) {
+			throw new IOException("size of copy " + dest + " differs from " + src);
+		}
+		if (verifyChecksum && checksum(src) != checksum(dest)) {
+			throw new IOException("checksum of copy " + dest + " differs from " + src);
+		}
+		Files.setLastModifiedTime(dest, Files.getLastModifiedTime(src));
+	}
+
+	/**
+	 * Computes the CRC32 checksum of a part of a file.
+	 */
+	private long checksum(FileChannel channel, long start, long end) throws IOException {
+		CRC32 _crc = new CRC32();
+		byte[] _bytes = new byte[bufferSize];
+		ByteBuffer _buf = ByteBuffer.wrap(_bytes);
+		long _pos = start;
+		while (_pos < end) {
+			_buf.limit((int) Math.min(_bytes.length, end - _pos));
+			int n = channel.read(_buf, _pos);
+			if (n < 0) {
+				break;
+			}
+			_crc.update(_bytes, 0, n);
+			_pos += n;
+			_buf.clear();
+		}
+		return _crc.getValue();
+	}
+
+	/**
+	 * Computes the CRC32 checksum of a file.
+	 */
+	private long checksum(Path file) throws IOException {
+		CRC32 _crc = new CRC32();
+		byte[] _bytes = new byte[bufferSize];
+		ByteBuffer _buf = ByteBuffer.wrap(_bytes);
+		try (FileChannel _in = FileChannel.open(file, StandardOpenOption.READ)) {
+			int n;
+			while ((n = _in.read(_buf)) >= 0) {
+				_crc.update(_bytes, 0, n);
+				_buf.clear();
+			}
+		}
+		return _crc.getValue();
+	}
+
+	/**
+	 * Deletes a file or directory tree (if it exists).
+	 */
+	static void deleteTree(Path path) throws IOException {
+		if (Files.exists(path, LinkOption.NOFOLLOW_LINKS) == false) {
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+				if (ex != null) {
+					throw ex;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * @return	the number of moves done by renaming
+	 */
+	public long getRenameCount() {
+		return renameCount.get();
+	}
+
+	/**
+	 * @return	the number of moves done by copying
+	 */
+	public long getCopyCount() {
+		return copyCount.get();
+	}
+
+	/**
+	 * @return	the number of bytes copied
+	 */
+	public long getBytesCopied() {
+		return bytesCopied.get();
+	}
+
+	/**
+	 * @return	the number of chunked copies that were resumed
+	 */
+	public long getResumeCount() {
+		return resumeCount.get();
+	}
+
+	/**
+	 * Returns a one line summary of the moves, e.g. for the end of a run.
+	 * @return	the summary
+	 */
+	public String getSummary() {
+		long _millis = Math.max(1, copyNanos.get() / 1000000);
+		return renameCount.get() + " files renamed, " + copyCount.get() + " copied (" +
+				(bytesCopied.get() / 1024 / 1024) + " MB in " + (_millis / 1000.0) + " s, " +
+				(bytesCopied.get() * 1000 / 1024 / 1024 / _millis) + " MB/s" +
+				(resumeCount.get() > 0 ? ", " + resumeCount.get() + " resumed)" : ")");
+	}
+}
@@ -0,0 +1,301 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * An append-only journal of the planned and completed conversions, used to resume a run that was aborted.<p>
+ * Each conversion is recorded with up to three lines: <code>P</code> (planned: source, destination, tags)
+ * before the move, <code>M</code> (moved) after the move and <code>T</code> (tagged) after the finder tags
+ * were added. A failed move, where the source is kept, is closed with <code>F</code>. A conversion is
+ * unfinished if it was planned but not moved, or moved but not yet tagged.<p>
+ * The records are written with a FileChannel and forced to disk in groups of syncInterval records and at each
+ * {@link #checkpoint()}, i.e. after a crash at most the last group of records is lost. When the journal is
+ * opened, the unfinished conversions of the previous run are loaded (see {@link #getUnfinished()}) and the
+ * file is compacted to these; when no conversion is unfinished at a checkpoint, the file is emptied.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class Journal {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** planned, not yet moved */
+	public static final int PLANNED = 0;
+	/** moved, not yet tagged */
+	public static final int MOVED = 1;
+
+	private final Path path;
+	private final int syncInterval;
+	private final Map<String, Entry> unfinished = new LinkedHashMap<String, Entry>();
+	private final FileChannel channel;
+	private int unsynced = 0;
+
+	/**
+	 * An unfinished conversion.
+	 */
+	public static class Entry {
+		private final File src;
+		private final File dest;
+		private final String tags;
+		private int state = PLANNED;
+
+		private Entry(File src, File dest, String tags) {
+			this.src = src;
+			this.dest = dest;
+			this.tags = tags;
+		}
+
+		/**
+		 * @return	the file to convert
+		 */
+		public File getSource() {
+			return src;
+		}
+
+		/**
+		 * @return	the destination of the file
+		 */
+		public File getDestination() {
+			return dest;
+		}
+
+		/**
+		 * @return	comma-separated list of tags or null
+		 */
+		public String getTags() {
+			return tags;
+		}
+
+		/**
+		 * @return	PLANNED or MOVED
+		 */
+		public int getState() {
+			return state;
+		}
+	}
+
+	/**
+	 * Constructor; opens (or creates) the journal and loads the unfinished conversions of the previous run.
+	 *
+	 * @param path			the journal file
+	 * @param syncInterval	the number of records after which the journal is forced to disk
+	 * @throws IOException if the journal can not be read or written
+	 */
+	public Journal(Path path, int syncInterval) throws IOException {
+		this.path = path;
+		this.syncInterval = Math.max(1, syncInterval);
+		if (Files.exists(path)) {
+			load();
+			compact();
+		}
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Reads all complete records; an incomplete last line (interrupted write) is ignored.
+	 */
+	private void load() throws IOException {
+		String _content = new String(Files.readAllBytes(path), UTF8);
+		int _start = 0;
+		int _end;
+		while ((_end = _content.indexOf('\n', _start)) >= 0) {
+			String[] _col = _content.substring(_start, _end).split("\t", -1);
+			_start = _end + 1;
+			if (_col.length == 4 && _col[0].equals("P")) {
+				Entry _entry = new Entry(new File(unescape(_col[1])), new File(unescape(_col[2])),
+						_col[3].isEmpty() ? null : unescape(_col[3]));
+				unfinished.put(_entry.dest.getPath(), _entry);
+			}
+			else if (_col.length == 2) {
+				Entry _entry = unfinished.get(unescape(_col[1]));
+				if (_entry == null) {
+					continue;
+				}
+				if (_col[0].equals("M") && _entry.tags != null) {
+					_entry.state = MOVED;
+				}
+				else if (_col[0].equals("M") || _col[0].equals("T") || _col[0].equals("F")) {
+					unfinished.remove(_entry.dest.getPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the journal with the unfinished conversions only.
+	 */
+	private void compact() throws IOException {
+		StringBuilder _sb = new StringBuilder();
+		for (Entry _entry : unfinished.values()) {
+			appendPlanned(_sb, _entry);
+			if (_entry.state == MOVED) {
+				appendRecord(_sb, 'M', _entry.dest);
+			}
+		}
+		Path _tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel _out = FileChannel.open(_tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(_out, _sb);
+			_out.force(true);
+		}
+		Files.move(_tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return	the unfinished conversions of the previous run, in the order in which they were planned
+	 */
+	public synchronized List<Entry> getUnfinished() {
+		return new ArrayList<Entry>(unfinished.values());
+	}
+
+	/**
+	 * Records a conversion before the file is moved.
+	 *
+	 * @param src	the file to convert
+	 * @param dest	the destination of the file
+	 * @param tags	comma-separated list of tags or null
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void planned(File src, File dest, String tags) throws IOException {
+		Entry _entry = new Entry(src, dest, tags);
+		unfinished.put(dest.getPath(), _entry);
+		StringBuilder _sb = new StringBuilder();
+		appendPlanned(_sb, _entry);
+		append(_sb);
+	}
+
+	/**
+	 * Records that a file was moved to its destination.
+	 *
+	 * @param dest	the destination of the file
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void moved(File dest) throws IOException {
+		Entry _entry = unfinished.get(dest.getPath());
+		if (_entry != null && _entry.tags != null) {
+			_entry.state = MOVED;
+		}
+		else {
+			unfinished.remove(dest.getPath());
+		}
+		append(appendRecord(new StringBuilder(), 'M', dest));
+	}
+
+	/**
+	 * Records that the finder tags were added to a moved file.
+	 *
+	 * @param dest	the destination of the file
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void tagged(File dest) throws IOException {
+		if (unfinished.remove(dest.getPath()) != null) {
+			append(appendRecord(new StringBuilder(), 'T', dest));
+		}
+	}
+
+	/**
+	 * Records that a move failed and the source was kept, i.e. the conversion is abandoned.
+	 *
+	 * @param dest	the destination of the file
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void failed(File dest) throws IOException {
+		if (unfinished.remove(dest.getPath()) != null) {
+			append(appendRecord(new StringBuilder(), 'F', dest));
+		}
+	}
+
+	/**
+	 * Forces all records to disk; empties the journal if no conversion is unfinished.
+	 *
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void checkpoint() throws IOException {
+		if (unfinished.isEmpty()) {
+			channel.truncate(0);
+		}
+		channel.force(false);
+		unsynced = 0;
+	}
+
+	/**
+	 * Writes a checkpoint and closes the journal.
+	 *
+	 * @throws IOException if the journal can not be written
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			checkpoint();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	private void append(StringBuilder record) throws IOException {
+		write(channel, record);
+		if (++unsynced >= syncInterval) {
+			channel.force(false);
+			unsynced = 0;
+		}
+	}
+
+	private static void write(FileChannel channel, StringBuilder record) throws IOException {
+		ByteBuffer _buf = UTF8.encode(record.toString());
+		while (_buf.hasRemaining()) {
+			channel.write(_buf);
+		}
+	}
+
+	private static void appendPlanned(StringBuilder sb, Entry entry) {
+		sb.append('P').append('\t');
+		escape(sb, entry.src.getPath()).append('\t');
+		escape(sb, entry.dest.getPath()).append('\t');
+		if (entry.tags != null) {
+			escape(sb, entry.tags);
+		}
+		sb.append('\n');
+	}
+
+	private static StringBuilder appendRecord(StringBuilder sb, char type, File dest) {
+		sb.append(type).append('\t');
+		return escape(sb, dest.getPath()).append('\n');
+	}
+
+	/**
+	 * Escapes backslash, tab and newline, which separate the columns and records.
+	 */
+	static StringBuilder escape(StringBuilder sb, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\': sb.append("\\\\"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\n': sb.append("\\n"); break;
+			default: sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+	static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		StringBuilder _sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				c = s.charAt(++i);
+				_sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c);
+			}
+			else {
+				_sb.append(c);
+			}
+		}
+		return _sb.toString();
+	}
+}
@@ -0,0 +1,264 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Dynamic partitioning of the files among any number of instances: an instance claims a file by creating a lease
+ * file <code>.renfiles-leases/&lt;name&gt;.lease</code> in the directory of the file. The creation is atomic
+ * (<code>CREATE_NEW</code>), i.e. of several instances that try to claim the same file, exactly one succeeds.<p>
+ * Each lease contains a unique token (the owner, the time and a random nonce). The leases of an instance are renewed
+ * (their modification time is set) every third of the expiry time until the file is converted and the lease is
+ * deleted; before a lease is renewed, released or the file is moved (see {@link #isLost(File)}), the token is
+ * checked, i.e. a lease that was broken and created anew by another instance (e.g. while this instance stalled)
+ * is regarded as lost and left alone. The lease of an instance that stopped (or hangs) expires and is broken
+ * by the next instance that claims the file: the expired lease is renamed to a name of the breaking instance (which
+ * succeeds for one instance only) and checked again, so that a lease renewed in the meantime is restored.
+ * As the instances compare the modification time with their own clock, the clocks of the machines must agree to
+ * well within the expiry time.<p>
+ * When the claims are closed, expired leases of files that no longer exist are removed from the lease directories.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class LeaseClaims implements FileClaims {
+	/** the name of the lease directory within a source directory */
+	public static final String LEASE_DIR_NAME = ".renfiles-leases";
+	private static final String LEASE_SUFFIX = ".lease";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final long expiryMillis;
+	private final String owner;
+	private final ConcurrentMap<File, Lease> leases = new ConcurrentHashMap<File, Lease>();
+	private final Set<File> lost = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+	private final Set<Path> leaseDirs = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private final ScheduledExecutorService renewal;
+
+	/**
+	 * A lease held by this instance.
+	 */
+	private static class Lease {
+		private final Path path;
+		private final String token;
+
+		private Lease(Path path, String token) {
+			this.path = path;
+			this.token = token;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expiryMillis	the time after which the lease of another instance is broken
+	 * @param owner			the name of this instance (e.g. pid@host), written into its leases
+	 */
+	public LeaseClaims(long expiryMillis, String owner) {
+		this.expiryMillis = expiryMillis;
+		this.owner = owner;
+		renewal = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread _t = new Thread(r, "renfiles-leases");
+				_t.setDaemon(true);
+				return _t;
+			}
+		});
+		long _period = Math.max(1, expiryMillis / 3);
+		renewal.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				renew();
+			}
+		}, _period, _period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Claims a file by creating its lease, or by breaking an expired lease of another instance.
+	 *
+	 * @return	true if this instance holds the lease of the file and the file still exists
+	 */
+	public boolean claim(File f) throws IOException {
+		Path _dir = f.toPath().resolveSibling(LEASE_DIR_NAME);
+		Path _lease = _dir.resolve(f.getName() + LEASE_SUFFIX);
+		if (leaseDirs.contains(_dir) == false) {
+			Files.createDirectories(_dir);
+			leaseDirs.add(_dir);
+		}
+		for (int _attempt = 0; _attempt < 2; _attempt++) {
+			try {
+				String _token = owner + " " + System.currentTimeMillis() + " " + Long.toHexString(ThreadLocalRandom.current().nextLong());
+				Files.write(_lease, _token.getBytes(UTF8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				lost.remove(f);
+				leases.put(f, new Lease(_lease, _token));
+				if (f.exists() == false) {  // converted by another instance in the meantime
+					release(f);
+					return false;
+				}
+				return true;
+			}
+			catch (FileAlreadyExistsException _ex) {
+				if (isExpired(_lease) == false || breakLease(_lease) == false) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Breaks an expired lease of another instance.
+	 *
+	 * @return	true if the lease was broken (or removed by another instance), false if it is in use
+	 */
+	private boolean breakLease(Path lease) throws IOException {
+		Path _broken = lease.resolveSibling(lease.getFileName() + "." + owner.replaceAll("[^A-Za-z0-9.-]", "_"));
+		try {
+			Files.move(lease, _broken, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (NoSuchFileException _ex) {  // broken or released by another instance
+			return true;
+		}
+		if (isExpired(_broken) == false) {  // renewed or created anew since it was checked: restore it
+			try {
+				Files.move(_broken, lease);
+			}
+			catch (FileAlreadyExistsException _ex) {
+				Files.delete(_broken);
+			}
+			return false;
+		}
+		System.out.println("lease " + lease + " expired, broken by " + owner);
+		Files.delete(_broken);
+		return true;
+	}
+
+	private boolean isExpired(Path lease) throws IOException {
+		try {
+			return System.currentTimeMillis() - Files.getLastModifiedTime(lease).toMillis() > expiryMillis;
+		}
+		catch (NoSuchFileException _ex) {
+			return true;
+		}
+	}
+
+	/**
+	 * @return	true if the lease file still contains the token of this instance
+	 */
+	private static boolean isOwn(Lease lease) {
+		try {
+			return new String(Files.readAllBytes(lease.path), UTF8).equals(lease.token);
+		}
+		catch (IOException _ex) {  // removed or not readable: not held any more
+			return false;
+		}
+	}
+
+	/**
+	 * Gives up a lease that was broken by another instance.
+	 */
+	private void lose(File f, Lease lease) {
+		if (leases.remove(f, lease)) {
+			lost.add(f);
+			System.out.println("******** lease " + lease.path + " was broken by another instance *********");
+		}
+	}
+
+	/**
+	 * @return	true if the lease of a claimed file was broken by another instance, i.e. the file must not be
+	 * 			converted by this instance any more
+	 */
+	public boolean isLost(File f) {
+		Lease _lease = leases.get(f);
+		if (_lease == null || isOwn(_lease)) {
+			return lost.contains(f);
+		}
+		lose(f, _lease);
+		return true;
+	}
+
+	/**
+	 * Deletes the lease of a file, if it is still held by this instance: the lease is renamed to a name of this
+	 * instance first and checked there, so that a lease created anew by another instance is restored.
+	 */
+	public void release(File f) {
+		Lease _lease = leases.remove(f);
+		lost.remove(f);
+		if (_lease == null) {
+			return;
+		}
+		Path _released = _lease.path.resolveSibling(_lease.path.getFileName() + ".released." +
+				owner.replaceAll("[^A-Za-z0-9.-]", "_"));
+		try {
+			Files.move(_lease.path, _released, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (NoSuchFileException _ex) {  // broken and released by another instance
+			return;
+		}
+		catch (IOException _ex) {
+			System.out.println("releasing " + _lease.path + " failed with " + _ex.toString());
+			return;
+		}
+		try {
+			if (isOwn(new Lease(_released, _lease.token)) == false) {  // the lease of another instance: restore it
+				System.out.println("******** lease " + _lease.path + " was broken by another instance *********");
+				try {
+					Files.move(_released, _lease.path);
+					return;
+				}
+				catch (FileAlreadyExistsException _ex) {  // created anew in the meantime, this one is obsolete
+				}
+			}
+			Files.deleteIfExists(_released);
+		}
+		catch (IOException _ex) {
+			System.out.println("releasing " + _lease.path + " failed with " + _ex.toString());
+		}
+	}
+
+	/**
+	 * Sets the modification time of all leases that are (still) held.
+	 */
+	private void renew() {
+		FileTime _now = FileTime.fromMillis(System.currentTimeMillis());
+		for (Map.Entry<File, Lease> _entry : leases.entrySet()) {
+			Lease _lease = _entry.getValue();
+			if (isOwn(_lease) == false) {  // released meanwhile, or broken by another instance
+				lose(_entry.getKey(), _lease);
+				continue;
+			}
+			try {
+				Files.setLastModifiedTime(_lease.path, _now);
+			}
+			catch (IOException _ex) {
+				System.out.println("renewing " + _lease.path + " failed with " + _ex.toString());
+			}
+		}
+	}
+
+	/**
+	 * Stops the renewal, releases all leases and removes the expired leases of files that no longer exist.
+	 */
+	public void close() {
+		renewal.shutdownNow();
+		for (File _f : new ArrayList<File>(leases.keySet())) {
+			release(_f);
+		}
+		for (Path _dir : leaseDirs) {
+			try (DirectoryStream<Path> _stream = Files.newDirectoryStream(_dir)) {
+				for (Path _lease : _stream) {
+					String _name = _lease.getFileName().toString();
+					int _suffix = _name.lastIndexOf(LEASE_SUFFIX);
+					if (_suffix > 0 && isExpired(_lease) && Files.exists(_dir.resolveSibling(_name.substring(0, _suffix))) == false) {
+						Files.deleteIfExists(_lease);
+					}
+				}
+			}
+			catch (IOException _ex) {
+				System.out.println("cleaning up " + _dir + " failed with " + _ex.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Collects the metrics of a run: counters (optionally with one label, e.g. the rule), gauges (values that are
+ * set, e.g. the startup time) and latency histograms of the stages (scan, classify, move, tag).<p>
+ * The metrics are written as a JSON summary and in the Prometheus text format (for the textfile collector
+ * of the node exporter). Both files are written to a temporary file first and then renamed, so that a
+ * reader never sees a partial file. The metrics may be recorded concurrently.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class Metrics {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String PREFIX = "renfiles_";
+	/** the upper bounds of the histogram buckets in seconds */
+	private static final double[] BUCKETS = { 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60 };
+	private static final String[] BUCKET_LABELS = { "0.0001", "0.0005", "0.001", "0.005", "0.01", "0.05", "0.1", "0.5", "1", "5", "10", "60" };
+
+	private final long startMillis = System.currentTimeMillis();
+	private final Map<String, Counter> counters = new TreeMap<String, Counter>();
+	private final Map<String, Long> gauges = new TreeMap<String, Long>();
+	private final Map<String, Histogram> stages = new TreeMap<String, Histogram>();
+
+	/**
+	 * A counter, identified by its name and label.
+	 */
+	private static class Counter {
+		private final String name;
+		private final String labelKey;
+		private final String labelValue;
+		private long value = 0;
+
+		private Counter(String name, String labelKey, String labelValue) {
+			this.name = name;
+			this.labelKey = labelKey;
+			this.labelValue = labelValue;
+		}
+	}
+
+	/**
+	 * The latencies of a stage.
+	 */
+	private static class Histogram {
+		private final long[] buckets = new long[BUCKETS.length];
+		private long count = 0;
+		private long sumNanos = 0;
+		private long maxNanos = 0;
+
+		private void record(long nanos) {
+			double _seconds = nanos / 1e9;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				if (_seconds <= BUCKETS[i]) {
+					buckets[i]++;
+					break;
+				}
+			}
+			count++;
+			sumNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+	}
+
+	/**
+	 * Increments a counter by one.
+	 *
+	 * @param name			the name of the counter (e.g. conversions)
+	 * @param labelKey		the name of the label (e.g. rule) or null
+	 * @param labelValue	the value of the label
+	 */
+	public synchronized void increment(String name, String labelKey, String labelValue) {
+		getCounter(name, labelKey, labelValue).value++;
+	}
+
+	/**
+	 * Sets a counter that is maintained elsewhere (e.g. the bytes copied by the {@link FileMover}).
+	 *
+	 * @param name		the name of the counter
+	 * @param value		the current value
+	 */
+	public synchronized void set(String name, long value) {
+		getCounter(name, null, null).value = value;
+	}
+
+	/**
+	 * Sets a gauge, i.e. a value that is reported as it is rather than as a total (e.g. the startup time).
+	 *
+	 * @param name		the name of the gauge
+	 * @param value		the current value
+	 */
+	public synchronized void setGauge(String name, long value) {
+		gauges.put(name, value);
+	}
+
+	private Counter getCounter(String name, String labelKey, String labelValue) {
+		String _id = labelKey == null ? name : name + "{" + labelKey + "=" + labelValue + "}";
+		Counter _counter = counters.get(_id);
+		if (_counter == null) {
+			_counter = new Counter(name, labelKey, labelValue);
+			counters.put(_id, _counter);
+		}
+		return _counter;
+	}
+
+	/**
+	 * Records the duration of a stage.
+	 *
+	 * @param stage		the name of the stage (e.g. move)
+	 * @param nanos		the duration in nanoseconds
+	 */
+	public synchronized void record(String stage, long nanos) {
+		Histogram _histogram = stages.get(stage);
+		if (_histogram == null) {
+			_histogram = new Histogram();
+			stages.put(stage, _histogram);
+		}
+		_histogram.record(nanos);
+	}
+
+	/**
+	 * Creates a tagger that records the duration of each call of another tagger as stage <code>tag</code>.
+	 *
+	 * @param tagger	the tagger to measure
+	 * @return			the measuring tagger
+	 */
+	public Tagger timed(final Tagger tagger) {
+		return new Tagger() {
+			public void addTags(String tags, List<File> files) throws IOException {
+				long _start = System.nanoTime();
+				try {
+					tagger.addTags(tags, files);
+				}
+				finally {
+					record("tag", System.nanoTime() - _start);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writes the metrics as JSON.
+	 *
+	 * @param path	the JSON file
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void writeJson(Path path) throws IOException {
+		StringBuilder _sb = new StringBuilder(1024);
+		SimpleDateFormat _format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+		_sb.append("{\n  \"start\": \"").append(_format.format(new Date(startMillis))).append("\",\n");
+		_sb.append("  \"durationSeconds\": ").append(seconds((System.currentTimeMillis() - startMillis) * 1000000L)).append(",\n");
+		_sb.append("  \"counters\": {");
+		String _sep = "\n";
+		String _lastName = null;
+		boolean _open = false;
+		for (Counter _counter : counters.values()) {  // labeled counters as an object per name, e.g. "conversions": { "date": 3 }
+			if (_counter.name.equals(_lastName) == false) {
+				_sb.append(_open ? " }" : "");
+				_sb.append(_sep).append("    \"").append(_counter.name).append("\": ");
+				_open = _counter.labelKey != null;
+				_sb.append(_open ? "{ " : "");
+				_lastName = _counter.name;
+			}
+			else {
+				_sb.append(", ");
+			}
+			if (_counter.labelKey != null) {
+				_sb.append('"');
+				escapeJson(_sb, _counter.labelValue).append("\": ");
+			}
+			_sb.append(_counter.value);
+			_sep = ",\n";
+		}
+		_sb.append(_open ? " }" : "");
+		_sb.append("\n  },\n  \"gauges\": {");
+		_sep = "\n";
+		for (Map.Entry<String, Long> _entry : gauges.entrySet()) {
+			_sb.append(_sep).append("    \"").append(_entry.getKey()).append("\": ").append(_entry.getValue());
+			_sep = ",\n";
+		}
+		_sb.append("\n  },\n  \"stages\": {");
+		_sep = "\n";
+		for (Map.Entry<String, Histogram> _entry : stages.entrySet()) {
+			Histogram _h = _entry.getValue();
+			_sb.append(_sep).append("    \"").append(_entry.getKey()).append("\": { \"count\": ").append(_h.count);
+			_sb.append(", \"sumSeconds\": ").append(seconds(_h.sumNanos));
+			_sb.append(", \"maxSeconds\": ").append(seconds(_h.maxNanos));
+			_sb.append(", \"buckets\": {");
+			for (int i = 0; i < BUCKETS.length; i++) {
+				_sb.append(i == 0 ? " \"" : ", \"").append(BUCKET_LABELS[i]).append("\": ").append(_h.buckets[i]);
+			}
+			_sb.append(" } }");
+			_sep = ",\n";
+		}
+		_sb.append("\n  }\n}\n");
+		write(path, _sb);
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text format; the histogram buckets are cumulative.
+	 *
+	 * @param path	the file, e.g. in the directory of the node exporter textfile collector (*.prom)
+	 * @throws IOException if the file can not be written
+	 */
+	public void writePrometheus(Path path) throws IOException {
+		write(path, formatPrometheus());
+	}
+
+	/**
+	 * Formats the metrics in the Prometheus text format, e.g. for a scrape of the {@link ClassificationService}.
+	 *
+	 * @return	the metrics
+	 */
+	public String toPrometheus() {
+		return formatPrometheus().toString();
+	}
+
+	private synchronized StringBuilder formatPrometheus() {
+		StringBuilder _sb = new StringBuilder(1024);
+		String _lastName = null;
+		for (Counter _counter : counters.values()) {
+			String _name = PREFIX + _counter.name + "_total";
+			if (_name.equals(_lastName) == false) {
+				_sb.append("# TYPE ").append(_name).append(" counter\n");
+				_lastName = _name;
+			}
+			_sb.append(_name);
+			if (_counter.labelKey != null) {
+				_sb.append('{').append(_counter.labelKey).append("=\"");
+				escapePrometheus(_sb, _counter.labelValue).append("\"}");
+			}
+			_sb.append(' ').append(_counter.value).append('\n');
+		}
+		for (Map.Entry<String, Long> _entry : gauges.entrySet()) {
+			_sb.append("# TYPE ").append(PREFIX).append(_entry.getKey()).append(" gauge\n");
+			_sb.append(PREFIX).append(_entry.getKey()).append(' ').append(_entry.getValue()).append('\n');
+		}
+		if (stages.isEmpty() == false) {
+			_sb.append("# TYPE ").append(PREFIX).append("stage_seconds histogram\n");
+		}
+		for (Map.Entry<String, Histogram> _entry : stages.entrySet()) {
+			Histogram _h = _entry.getValue();
+			String _stage = "stage=\"" + _entry.getKey() + "\"";
+			long _cumulative = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				_cumulative += _h.buckets[i];
+				_sb.append(PREFIX).append("stage_seconds_bucket{").append(_stage).append(",le=\"").append(BUCKET_LABELS[i]).append("\"} ").append(_cumulative).append('\n');
+			}
+			_sb.append(PREFIX).append("stage_seconds_bucket{").append(_stage).append(",le=\"+Inf\"} ").append(_h.count).append('\n');
+			_sb.append(PREFIX).append("stage_seconds_sum{").append(_stage).append("} ").append(seconds(_h.sumNanos)).append('\n');
+			_sb.append(PREFIX).append("stage_seconds_count{").append(_stage).append("} ").append(_h.count).append('\n');
+		}
+		_sb.append("# TYPE ").append(PREFIX).append("last_run_timestamp_seconds gauge\n");
+		_sb.append(PREFIX).append("last_run_timestamp_seconds ").append(startMillis / 1000).append('\n');
+		return _sb;
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+	}
+
+	private static StringBuilder escapeJson(StringBuilder sb, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+	private static StringBuilder escapePrometheus(StringBuilder sb, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c == '\n') {
+				sb.append("\\n");
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+	private static void write(Path path, StringBuilder content) throws IOException {
+		Path _tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.write(_tmp, content.toString().getBytes(UTF8));
+		Files.move(_tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,190 @@
+package renfiles;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Executes the conversion of files on a bounded pool of worker threads.<p>
+ * Each file is handled by a {@link Task} in two steps: the classification, which determines the
+ * destination directory, and the execution (move, tagging). Classifications run in parallel;
+ * executions into the same destination directory are run one after the other in the order in which
+ * they were classified, executions into different directories run in parallel. This keeps the
+ * concurrent load on each (network) directory low.<p>
+ * The number of submitted but not yet completed tasks is bounded, i.e. {@link #submit(Task)} blocks
+ * if too many tasks are in flight.<p>
+ * With one thread, the pipeline executes each task directly in the calling thread (as before).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class MovePipeline {
+	private final ExecutorService pool;
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final Map<String, ArrayDeque<Task>> lanes = new HashMap<String, ArrayDeque<Task>>();
+	private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * The conversion of one file.
+	 */
+	public static abstract class Task {
+		/**
+		 * Classifies the file.
+		 * @return	the destination directory (the ordering key) or null if nothing needs to be done
+		 * @throws IOException
+		 */
+		protected abstract String classify() throws IOException;
+
+		/**
+		 * Executes the conversion (called only if classify() returned a destination directory).
+		 * @throws IOException
+		 */
+		protected abstract void execute() throws IOException;
+
+		/**
+		 * @return	the name of the task (e.g. the file name), used to report failures
+		 */
+		protected abstract String getName();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount	the number of worker threads; 1 means serial execution in the calling thread
+	 * @param maxInFlight	the maximal number of submitted tasks that are not yet completed
+	 */
+	public MovePipeline(int threadCount, int maxInFlight) {
+		if (threadCount > 1) {
+			pool = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+				private int count = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread _t = new Thread(r, "renfiles-worker-" + (++count));
+					_t.setDaemon(true);
+					return _t;
+				}
+			});
+			this.maxInFlight = Math.max(1, maxInFlight);
+			inFlight = new Semaphore(this.maxInFlight);
+		}
+		else {
+			pool = null;
+			inFlight = null;
+			this.maxInFlight = 0;
+		}
+	}
+
+	/**
+	 * @return	true if tasks are executed by worker threads
+	 */
+	public boolean isConcurrent() {
+		return pool != null;
+	}
+
+	/**
+	 * Submits a task. In serial mode, the task is executed directly and exceptions are passed on to the caller.
+	 * In concurrent mode, failures are collected and returned by {@link #await()}.
+	 *
+	 * @param task		the task to execute
+	 * @throws IOException			if the task fails in serial mode
+	 * @throws InterruptedException	if the caller is interrupted while waiting for a free slot
+	 */
+	public void submit(final Task task) throws IOException, InterruptedException {
+		if (pool == null) {
+			if (task.classify() != null) {
+				task.execute();
+			}
+			return;
+		}
+		inFlight.acquire();
+		pool.execute(new Runnable() {
+			public void run() {
+				String _destDirName = null;
+				try {
+					_destDirName = task.classify();
+				}
+				catch (Exception _ex) {
+					fail(task, _ex);
+				}
+				if (_destDirName == null) {
+					inFlight.release();
+				}
+				else {
+					enqueue(_destDirName, task);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds a classified task to the lane of its destination directory. If no other task is
+	 * running for this directory, the task (and all tasks queued meanwhile) is executed by the current thread.
+	 */
+	private void enqueue(String destDirName, Task task) {
+		synchronized (lanes) {
+			ArrayDeque<Task> _lane = lanes.get(destDirName);
+			if (_lane != null) {  // another worker is busy with this directory; it will pick up the task
+				_lane.add(task);
+				return;
+			}
+			lanes.put(destDirName, new ArrayDeque<Task>());
+		}
+		while (task != null) {
+			try {
+				task.execute();
+			}
+			catch (Exception _ex) {
+				fail(task, _ex);
+			}
+			finally {
+				inFlight.release();
+			}
+			synchronized (lanes) {
+				task = lanes.get(destDirName).poll();
+				if (task == null) {
+					lanes.remove(destDirName);
+				}
+			}
+		}
+	}
+
+	private void fail(Task task, Exception ex) {
+		failures.add("conversion of " + task.getName() + " failed with " + ex.toString());
+	}
+
+	/**
+	 * Waits until all submitted tasks are completed; the worker threads are kept for further tasks.
+	 *
+	 * @return	the failures of the concurrent tasks since the last call, sorted by name (empty in serial mode)
+	 * @throws InterruptedException if the caller is interrupted while waiting
+	 */
+	public List<String> drain() throws InterruptedException {
+		if (pool != null) {
+			inFlight.acquire(maxInFlight);		// all slots free -> no task in flight
+			inFlight.release(maxInFlight);
+		}
+		List<String> _failures;
+		synchronized (failures) {
+			_failures = new ArrayList<String>(failures);
+			failures.clear();
+		}
+		Collections.sort(_failures);
+		return _failures;
+	}
+
+	/**
+	 * Waits until all submitted tasks are completed and stops the worker threads.
+	 *
+	 * @return	the failures of the concurrent tasks, sorted by name (empty in serial mode)
+	 * @throws InterruptedException if the caller is interrupted while waiting
+	 */
+	public List<String> await() throws InterruptedException {
+		List<String> _failures = drain();
+		if (pool != null) {
+			pool.shutdown();
+			while (pool.awaitTermination(1, TimeUnit.MINUTES) == false) {
+				// large moves onto network volumes may take a while
+			}
+		}
+		return _failures;
+	}
+}
@@ -0,0 +1,188 @@
+package renfiles;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The complete list of planned conversions (source, destination, tags) of a run, built without moving any file.<p>
+ * A plan can be checked for conflicts (two sources with the same destination, destinations that already exist),
+ * saved to a file, reviewed (and edited) and later executed without classifying the files again.
+ * The plan file contains one line per conversion: source, destination and tags, separated by tabs
+ * (with backslash, tab and newline escaped as in the {@link Journal}).<p>
+ * The operations are sorted by destination, i.e. grouped by volume and directory, which gives a better
+ * locality both for the conflict check and for the execution.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class MovePlan {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String HEADER = "# renfiles plan: source, destination, tags";
+
+	private final List<Operation> operations = new ArrayList<Operation>();
+
+	/**
+	 * A planned conversion.
+	 */
+	public static class Operation implements Comparable<Operation> {
+		private final File src;
+		private final File dest;
+		private final String tags;
+
+		private Operation(File src, File dest, String tags) {
+			this.src = src;
+			this.dest = dest;
+			this.tags = tags;
+		}
+
+		/**
+		 * @return	the file to convert
+		 */
+		public File getSource() {
+			return src;
+		}
+
+		/**
+		 * @return	the destination of the file
+		 */
+		public File getDestination() {
+			return dest;
+		}
+
+		/**
+		 * @return	comma-separated list of tags or null
+		 */
+		public String getTags() {
+			return tags;
+		}
+
+		public int compareTo(Operation other) {
+			int _cmp = dest.getParent().compareTo(other.dest.getParent());
+			return _cmp != 0 ? _cmp : dest.getName().compareTo(other.dest.getName());
+		}
+	}
+
+	/**
+	 * Adds a conversion; may be called concurrently.
+	 *
+	 * @param src	the file to convert
+	 * @param dest	the destination of the file
+	 * @param tags	comma-separated list of tags or null
+	 */
+	public synchronized void add(File src, File dest, String tags) {
+		operations.add(new Operation(src.getAbsoluteFile(), dest.getAbsoluteFile(), tags == null || tags.isEmpty() ? null : tags));
+	}
+
+	/**
+	 * @return	the number of planned conversions
+	 */
+	public synchronized int size() {
+		return operations.size();
+	}
+
+	/**
+	 * Sorts the conversions by destination directory and name.
+	 *
+	 * @return	the sorted conversions
+	 */
+	public synchronized List<Operation> sort() {
+		Collections.sort(operations);
+		return new ArrayList<Operation>(operations);
+	}
+
+	/**
+	 * Checks the plan for conflicts: conversions with the same destination and destinations that already exist.
+	 * Each destination directory is listed once instead of checking each destination file.
+	 *
+	 * @return	the conflicts, one line per conversion that would fail
+	 */
+	public synchronized List<String> getConflicts() {
+		List<String> _conflicts = new ArrayList<String>();
+		Collections.sort(operations);
+		String _dirName = null;
+		Set<String> _existing = Collections.emptySet();
+		Operation _previous = null;
+		for (Operation _op : operations) {
+			if (_op.dest.getParent().equals(_dirName) == false) {
+				_dirName = _op.dest.getParent();
+				_existing = list(_op.dest.getParentFile());
+			}
+			if (_previous != null && _previous.dest.equals(_op.dest)) {
+				_conflicts.add(_op.src.getName() + " and " + _previous.src.getName() + " are both moved to " + _op.dest.getPath());
+			}
+			else if (_existing.contains(_op.dest.getName())) {
+				_conflicts.add(_op.src.getName() + ": " + _op.dest.getPath() + " already exists");
+			}
+			_previous = _op;
+		}
+		return _conflicts;
+	}
+
+	/**
+	 * @return	the names of the entries of a directory (empty if the directory does not exist)
+	 */
+	private static Set<String> list(File dir) {
+		Set<String> _names = new HashSet<String>();
+		try (DirectoryStream<Path> _stream = Files.newDirectoryStream(dir.toPath())) {
+			for (Path _entry : _stream) {
+				_names.add(_entry.getFileName().toString());
+			}
+		}
+		catch (IOException _ex) {
+			// not yet created
+		}
+		return _names;
+	}
+
+	/**
+	 * Writes the plan, sorted by destination.
+	 *
+	 * @param path	the plan file
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void save(Path path) throws IOException {
+		Collections.sort(operations);
+		try (BufferedWriter _writer = Files.newBufferedWriter(path, UTF8)) {
+			_writer.write(HEADER);
+			_writer.write('\n');
+			StringBuilder _sb = new StringBuilder(256);
+			for (Operation _op : operations) {
+				_sb.setLength(0);
+				Journal.escape(_sb, _op.src.getPath()).append('\t');
+				Journal.escape(_sb, _op.dest.getPath()).append('\t');
+				if (_op.tags != null) {
+					Journal.escape(_sb, _op.tags);
+				}
+				_writer.append(_sb).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Reads a plan file. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param path	the plan file
+	 * @return		the plan
+	 * @throws IOException if the file can not be read or contains an invalid line
+	 */
+	public static MovePlan load(Path path) throws IOException {
+		MovePlan _plan = new MovePlan();
+		try (BufferedReader _reader = Files.newBufferedReader(path, UTF8)) {
+			String _line;
+			int _lineNr = 0;
+			while ((_line = _reader.readLine()) != null) {
+				_lineNr++;
+				if (_line.trim().isEmpty() || _line.startsWith("#")) {
+					continue;
+				}
+				String[] _col = _line.split("\t", -1);
+				if (_col.length != 3 || _col[0].isEmpty() || _col[1].isEmpty()) {
+					throw new IOException(path + ":" + _lineNr + ": expected source, destination and tags");
+				}
+				_plan.add(new File(Journal.unescape(_col[0])), new File(Journal.unescape(_col[1])), Journal.unescape(_col[2]));
+			}
+		}
+		return _plan;
+	}
+}
@@ -0,0 +1,176 @@
+package renfiles;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A compact table of file names, e.g. of a directory with millions of entries.<p>
+ * The names are stored back to back as UTF-8 bytes in a single byte array, addressed by an offset array,
+ * i.e. the table consists of two primitive arrays instead of a String (and a File) per name. A name is read
+ * through a {@link Cursor}, a reusable CharSequence that decodes the bytes into its own buffer, so that
+ * the names can be classified (see {@link RuleEngine#match}) without creating any objects; only the names
+ * that are converted are created as Strings.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class NameTable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private byte[] bytes;
+	private int[] offsets;		// offsets[i] .. offsets[i + 1] are the bytes of name i
+	private int count = 0;
+
+	/**
+	 * A reusable view of one name of the table; not thread-safe, i.e. each thread needs its own cursor.
+	 */
+	public static class Cursor implements CharSequence {
+		private final NameTable table;
+		private char[] chars = new char[256];
+		private int length = 0;
+
+		private Cursor(NameTable table) {
+			this.table = table;
+		}
+
+		/**
+		 * Decodes a name of the table into the cursor.
+		 *
+		 * @param index		the index of the name
+		 * @return			this cursor
+		 */
+		public Cursor load(int index) {
+			byte[] _bytes = table.bytes;
+			int _end = table.offsets[index + 1];
+			if (chars.length < _end - table.offsets[index]) {
+				chars = new char[_end - table.offsets[index]];	// at most one char per byte
+			}
+			length = 0;
+			for (int i = table.offsets[index]; i < _end; i++) {
+				int b = _bytes[i];
+				if (b >= 0) {  // ascii
+					chars[length++] = (char) b;
+				}
+				else if ((b & 0xE0) == 0xC0) {
+					chars[length++] = (char) (((b & 0x1F) << 6) | (_bytes[++i] & 0x3F));
+				}
+				else if ((b & 0xF0) == 0xE0) {
+					chars[length++] = (char) (((b & 0x0F) << 12) | ((_bytes[++i] & 0x3F) << 6) | (_bytes[++i] & 0x3F));
+				}
+				else {  // 4 bytes: a surrogate pair
+					int _cp = ((b & 0x07) << 18) | ((_bytes[++i] & 0x3F) << 12) | ((_bytes[++i] & 0x3F) << 6) | (_bytes[++i] & 0x3F);
+					chars[length++] = Character.highSurrogate(_cp);
+					chars[length++] = Character.lowSurrogate(_cp);
+				}
+			}
+			return this;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt(int index) {
+			if (index >= length) {
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			}
+			return chars[index];
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity	the expected number of names
+	 */
+	public NameTable(int capacity) {
+		capacity = Math.max(16, capacity);
+		bytes = new byte[capacity * 32];
+		offsets = new int[capacity + 1];
+	}
+
+	/**
+	 * Adds a name.
+	 *
+	 * @param name	the name
+	 * @return		the index of the name
+	 * @throws IllegalStateException if the table exceeds 2 GB
+	 */
+	public int add(CharSequence name) {
+		int _pos = offsets[count];
+		int _len = name.length();
+		if (bytes.length - _pos < _len * 3) {
+			long _size = Math.max((long) bytes.length * 2, (long) _pos + _len * 3);
+			if (_size > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("name table exceeds 2 GB");
+			}
+			bytes = Arrays.copyOf(bytes, (int) _size);
+		}
+		for (int i = 0; i < _len; i++) {
+			char c = name.charAt(i);
+			if (c < 0x80) {
+				bytes[_pos++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				bytes[_pos++] = (byte) (0xC0 | (c >> 6));
+				bytes[_pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < _len && Character.isLowSurrogate(name.charAt(i + 1))) {
+				int _cp = Character.toCodePoint(c, name.charAt(++i));
+				bytes[_pos++] = (byte) (0xF0 | (_cp >> 18));
+				bytes[_pos++] = (byte) (0x80 | ((_cp >> 12) & 0x3F));
+				bytes[_pos++] = (byte) (0x80 | ((_cp >> 6) & 0x3F));
+				bytes[_pos++] = (byte) (0x80 | (_cp & 0x3F));
+			}
+			else {
+				bytes[_pos++] = (byte) (0xE0 | (c >> 12));
+				bytes[_pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[_pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		if (count + 1 == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[++count] = _pos;
+		return count - 1;
+	}
+
+	/**
+	 * @return	the number of names
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return	the number of bytes used by the names
+	 */
+	public int getByteCount() {
+		return offsets[count];
+	}
+
+	/**
+	 * @return	a new cursor to read the names
+	 */
+	public Cursor cursor() {
+		return new Cursor(this);
+	}
+
+	/**
+	 * Creates a name as String, e.g. for a name that is converted.
+	 *
+	 * @param index		the index of the name
+	 * @return			the name
+	 */
+	public String getString(int index) {
+		return new String(bytes, offsets[index], offsets[index + 1] - offsets[index], UTF8);
+	}
+}
@@ -0,0 +1,30 @@
+package renfiles;
+import java.io.File;
+
+/**
+ * The claims of a single instance, i.e. all files are converted by this instance.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class NoClaims implements FileClaims {
+	/**
+	 * @return	always true
+	 */
+	public boolean claim(File f) {
+		return true;
+	}
+
+	/**
+	 * @return	always false, the claims are not lost
+	 */
+	public boolean isLost(File f) {
+		return false;
+	}
+
+	public void release(File f) {
+	}
+
+	public void close() {
+	}
+}
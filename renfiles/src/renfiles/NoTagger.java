@@ -0,0 +1,17 @@
+package renfiles;
+import java.io.File;
+import java.util.List;
+
+/**
+ * A tagger that does nothing; used on systems without finder tags (e.g. Linux tests).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class NoTagger implements Tagger {
+	/**
+	 * Ignores the tags.
+	 */
+	public void addTags(String tags, List<File> files) {
+	}
+}
@@ -0,0 +1,101 @@
+package renfiles;
+import java.io.*;
+import java.util.*;
+
+/**
+ * A rule of the pdf metadata table (see renfiles.pdfmeta), the fallback for the pdf files that no rule of the
+ * rule table recognizes: a field of the document information (see {@link PdfMetadata}) and a {@link RenameRule}
+ * that is applied to the value of the field, e.g.
+ * <pre>
+ * title | prefix:NZZ am Sonntag | mtime | ${date}nzzs.pdf | ${news}/nzzs/${yyyy} | dNews
+ * </pre>
+ * The date type <code>mtime</code> takes the date from the creation date of the document, the other date types
+ * (e.g. <code>yyyyMMdd@4</code>) from the value of the field; the templates refer to the file
+ * (e.g. <code>${name}</code> is the file name, not the value of the field).
+ * The rules are checked from top to bottom, the first matching rule wins.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class PdfMetaRule {
+	private final String field;
+	private final RuleEngine engine;
+
+	/**
+	 * Constructor; parses one line of the pdf metadata table.
+	 *
+	 * @param line		the rule definition
+	 * @param config	the configuration variables that can be used within the templates
+	 * @throws IllegalArgumentException if the rule definition is not valid
+	 */
+	public PdfMetaRule(String line, Map<String, String> config) {
+		int _sep = line.indexOf('|');
+		if (_sep <= 0) {
+			throw new IllegalArgumentException("expected 6 columns");
+		}
+		field = line.substring(0, _sep).trim();
+		if (PdfMetadata.FIELDS.contains(field) == false) {
+			throw new IllegalArgumentException("invalid field (" + PdfMetadata.FIELDS + "): " + field);
+		}
+		engine = new RuleEngine(Collections.singletonList(new RenameRule(line.substring(_sep + 1), 0, config)));
+	}
+
+	/**
+	 * Loads the pdf metadata table. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param reader	the table (closed afterwards)
+	 * @param name		the name of the table for the error messages
+	 * @param config	the configuration variables that can be used within the templates (e.g. doc)
+	 * @return			the rules
+	 * @throws IOException if the file can not be read or contains an invalid rule
+	 */
+	public static List<PdfMetaRule> load(Reader reader, String name, Map<String, String> config) throws IOException {
+		List<PdfMetaRule> _rules = new ArrayList<PdfMetaRule>();
+		BufferedReader _reader = new BufferedReader(reader);
+		try {
+			String _line;
+			int _lineNr = 0;
+			while ((_line = _reader.readLine()) != null) {
+				_lineNr++;
+				_line = _line.trim();
+				if (_line.isEmpty() || _line.startsWith("#")) {
+					continue;
+				}
+				try {
+					_rules.add(new PdfMetaRule(_line, config));
+				}
+				catch (IllegalArgumentException _ex) {
+					throw new IOException(name + ":" + _lineNr + ": " + _ex.getMessage());
+				}
+			}
+		}
+		finally {
+			_reader.close();
+		}
+		return _rules;
+	}
+
+	/**
+	 * @return	the field of the document information the rule is applied to
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * Determines the destination of a pdf file by its document information.
+	 *
+	 * @param meta		the document information of the file
+	 * @param fileName	the name of the file
+	 * @return			the destination or null if the rule does not apply
+	 */
+	public Classification classify(PdfMetadata meta, String fileName) {
+		String _value = meta.get(field);
+		if (_value == null) {
+			return null;
+		}
+		int[] _date = new int[1];
+		int _rule = engine.match(_value, meta.getCreationDate(), _date);
+		return _rule < 0 ? null : engine.apply(_rule, fileName, _value, _date[0]);
+	}
+}
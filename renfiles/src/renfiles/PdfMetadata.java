@@ -0,0 +1,720 @@
+package renfiles;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The document information of a pdf file (title, author, subject, producer, creator and creation date),
+ * read within a strict byte and time budget, i.e. without reading the (multi-MB) content of the file.<p>
+ * Only the regions on the way to the information are read: the tail of the file with <code>startxref</code>,
+ * the cross-reference section (a table or a compressed stream, following <code>/Prev</code>), the entries of
+ * the needed objects and the objects themselves, i.e. the Info dictionary of the trailer and, for the fields
+ * it does not contain, the (uncompressed) XMP metadata stream of the catalog. Each region is read with a
+ * positional read of a few KB; once the byte budget or the deadline is exceeded, the reading stops with the
+ * fields found so far. Encrypted files and objects within object streams are not supported.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class PdfMetadata {
+	/** the fields of the document information */
+	public static final List<String> FIELDS = Collections.unmodifiableList(
+			Arrays.asList("title", "author", "subject", "producer", "creator"));
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset UTF16 = Charset.forName("UTF-16BE");
+	private static final int TAIL = 1024;			// startxref is within the last 1 KB
+	private static final int WINDOW = 4096;			// an object dictionary or the header of an xref section
+	private static final int INFLATE_FACTOR = 16;	// an xref stream is inflated to at most 16 times the byte budget
+	private static final String[] XMP_NAMES = { "dc:title", "dc:creator", "dc:description", "pdf:Producer", "xmp:CreatorTool" };
+
+	private final Map<String, String> fields = new HashMap<String, String>();
+	private long creationDate = 0;
+	private boolean truncated = false;
+
+	// reading state
+	private final FileChannel channel;
+	private final long size;
+	private final int maxBytes;
+	private int budget;
+	private final long deadline;
+	private long startXref = -1;
+	private final Map<Long, byte[]> xrefStreams = new HashMap<Long, byte[]>();
+
+	private PdfMetadata(FileChannel channel, int maxBytes, long deadline) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.maxBytes = maxBytes;
+		this.budget = maxBytes;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Reads the document information of a pdf file.
+	 *
+	 * @param file		the pdf file
+	 * @param maxBytes	the maximal number of bytes to read
+	 * @param maxNanos	the maximal time to read
+	 * @return			the information found within the budget (possibly none)
+	 * @throws IOException if the file can not be read
+	 */
+	public static PdfMetadata read(Path file, int maxBytes, long maxNanos) throws IOException {
+		try (FileChannel _channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			PdfMetadata _meta = new PdfMetadata(_channel, maxBytes, System.nanoTime() + maxNanos);
+			_meta.parse();
+			return _meta;
+		}
+	}
+
+	/**
+	 * @param field		one of {@link #FIELDS}
+	 * @return			the value of the field or null
+	 */
+	public String get(String field) {
+		return fields.get(field);
+	}
+
+	/**
+	 * @return	the creation date of the document (milliseconds since 1970) or 0 if unknown
+	 */
+	public long getCreationDate() {
+		return creationDate;
+	}
+
+	/**
+	 * @return	true if the budget was exceeded before all information was read
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	@Override
+	public String toString() {
+		return fields + (creationDate > 0 ? ", created " + new Date(creationDate) : "");
+	}
+
+	private void parse() throws IOException {
+		String _tail = read(Math.max(0, size - TAIL), TAIL);
+		int _pos = _tail == null ? -1 : _tail.lastIndexOf("startxref");
+		if (_pos < 0) {
+			return;
+		}
+		startXref = number(_tail, skipSpace(_tail, _pos + 9));
+		String _trailer = trailer(startXref);
+		if (_trailer == null || key(_trailer, "/Encrypt") >= 0) {  // the strings are encrypted
+			return;
+		}
+		String _info = resolveDictionary(_trailer, "/Info");
+		if (_info != null) {
+			for (String _field : FIELDS) {
+				String _key = "/" + Character.toUpperCase(_field.charAt(0)) + _field.substring(1);
+				String _value = text(_info, _key);
+				if (_value != null) {
+					fields.put(_field, _value);
+				}
+			}
+			String _created = text(_info, "/CreationDate");
+			if (_created != null) {
+				creationDate = parsePdfDate(_created);
+			}
+		}
+		if (fields.containsKey("title") == false || fields.containsKey("producer") == false || creationDate == 0) {
+			parseXmp(_trailer);
+		}
+	}
+
+	/**
+	 * Reads the fields that the Info dictionary does not contain from the XMP metadata of the catalog.
+	 */
+	private void parseXmp(String trailer) throws IOException {
+		String _catalog = resolveDictionary(trailer, "/Root");
+		int[] _ref = _catalog == null ? null : reference(_catalog, "/Metadata");
+		long _offset = _ref == null ? -1 : offset(_ref[0]);
+		String _object = _offset < 0 ? null : read(_offset, WINDOW);
+		String _dict = _object == null ? null : dictionary(_object, 0);
+		if (_dict == null || key(_dict, "/Filter") >= 0) {  // a compressed stream is not read
+			return;
+		}
+		int _start = streamStart(_object, _dict);
+		if (_start < 0) {
+			return;
+		}
+		String _xmp = _object.substring(Math.min(_start, _object.length()));
+		long _length = number(_dict, valueStart(_dict, "/Length"));
+		if (_length < 0 || reference(_dict, "/Length") != null) {  // an indirect length: up to the end of the XMP packet
+			_length = 1 << 20;
+		}
+		while (_xmp.contains("</x:xmpmeta>") == false && _xmp.length() < _length) {  // the rest of the stream
+			String _more = read(_offset + _start + _xmp.length(), (int) Math.min(WINDOW * 4, _length - _xmp.length()));
+			if (_more == null) {
+				break;
+			}
+			_xmp += _more;
+		}
+		_xmp = new String(_xmp.getBytes(LATIN1), UTF8);
+		for (int i = 0; i < XMP_NAMES.length; i++) {
+			String _value = fields.containsKey(FIELDS.get(i)) ? null : xmpValue(_xmp, XMP_NAMES[i]);
+			if (_value != null) {
+				fields.put(FIELDS.get(i), _value);
+			}
+		}
+		String _created = creationDate == 0 ? xmpValue(_xmp, "xmp:CreateDate") : null;
+		if (_created != null && _created.length() >= 4) {  // 2014-01-05T08:30:00.000+01:00
+			_created = _created.replaceAll("\\.[0-9]+", "");
+			int _date = Math.min(_created.length(), 19);
+			creationDate = parsePdfDate(_created.substring(0, _date).replaceAll("[-:T]", "") + _created.substring(_date));
+		}
+	}
+
+	/**
+	 * Reads a region of the file within the budget.
+	 *
+	 * @return	the bytes as ISO-8859-1 string (i.e. one char per byte) or null if the budget is exceeded
+	 */
+	private String read(long pos, int length) throws IOException {
+		int _length = (int) Math.min(Math.min(length, budget), size - pos);
+		if (pos < 0 || _length <= 0 || System.nanoTime() > deadline) {
+			truncated |= pos >= 0 && pos < size;
+			return null;
+		}
+		ByteBuffer _buf = ByteBuffer.allocate(_length);
+		while (_buf.hasRemaining() && channel.read(_buf, pos + _buf.position()) > 0) {
+		}
+		budget -= _buf.position();
+		return new String(_buf.array(), 0, _buf.position(), LATIN1);
+	}
+
+	/**
+	 * @return	the trailer dictionary of the cross-reference section at an offset (of an xref stream: its dictionary)
+	 */
+	private String trailer(long xref) throws IOException {
+		String _section = read(xref, WINDOW);
+		if (_section == null) {
+			return null;
+		}
+		if (_section.startsWith("xref") == false) {  // an xref stream
+			return dictionary(_section, 0);
+		}
+		long _pos = xref + 4;
+		while (true) {  // skip the subsections: start count, followed by count entries of 20 bytes
+			String _header = read(_pos, 64);
+			int i = _header == null ? -1 : skipSpace(_header, 0);
+			if (i < 0 || _header.startsWith("trailer", i)) {
+				_section = i < 0 ? null : read(_pos + i, WINDOW);
+				return _section == null ? null : dictionary(_section, 0);
+			}
+			int j = skipSpace(_header, skipNumber(_header, i));
+			int _end = skipNumber(_header, j);
+			long _count = number(_header, j);
+			if (j == i || _end == j || _count < 0 || skipSpace(_header, _end) < 0) {
+				return null;
+			}
+			_pos += skipSpace(_header, _end) + _count * 20;
+		}
+	}
+
+	/**
+	 * Finds the offset of an object in the cross-reference sections, starting with the last one.
+	 *
+	 * @return	the offset of the object or -1 if it is not found (e.g. within an object stream)
+	 */
+	private long offset(int object) throws IOException {
+		long _xref = startXref;
+		for (int _sections = 0; _xref >= 0 && _sections < 32; _sections++) {
+			String _section = read(_xref, 16);
+			if (_section == null) {
+				return -1;
+			}
+			long _offset = _section.startsWith("xref") ? tableOffset(_xref + 4, object) : streamOffset(_xref, object);
+			if (_offset != -2) {
+				return _offset;
+			}
+			String _trailer = trailer(_xref);
+			_xref = _trailer == null ? -1 : number(_trailer, valueStart(_trailer, "/Prev"));
+		}
+		return -1;
+	}
+
+	/**
+	 * @return	the offset of an object in an xref table, -1 if it is free or invalid, -2 if it is not in the table
+	 */
+	private long tableOffset(long pos, int object) throws IOException {
+		while (true) {
+			String _header = read(pos, 64);
+			int i = _header == null ? -1 : skipSpace(_header, 0);
+			if (i < 0 || _header.startsWith("trailer", i)) {
+				return i < 0 ? -1 : -2;
+			}
+			int j = skipSpace(_header, skipNumber(_header, i));
+			int _end = skipNumber(_header, j);
+			long _start = number(_header, i);
+			long _count = number(_header, j);
+			if (j == i || _end == j || _start < 0 || _count < 0 || skipSpace(_header, _end) < 0) {
+				return -1;
+			}
+			pos += skipSpace(_header, _end);
+			if (object >= _start && object < _start + _count) {
+				String _entry = read(pos + (object - _start) * 20, 20);  // nnnnnnnnnn ggggg n
+				if (_entry == null || _entry.length() < 18 || _entry.charAt(17) != 'n') {
+					return -1;
+				}
+				return number(_entry, 0);
+			}
+			pos += _count * 20;
+		}
+	}
+
+	/**
+	 * @return	the offset of an object in an xref stream, -1 if it is free, compressed or invalid,
+	 * 			-2 if it is not in the stream
+	 */
+	private long streamOffset(long xref, int object) throws IOException {
+		String _object = read(xref, WINDOW);
+		String _dict = _object == null ? null : dictionary(_object, 0);
+		int _w = _dict == null ? -1 : valueStart(_dict, "/W");
+		if (_w < 0 || _dict.charAt(_w) != '[') {
+			return -1;
+		}
+		int[] _widths = new int[3];
+		int i = _w + 1;
+		for (int k = 0; k < 3; k++) {
+			i = skipSpace(_dict, i);
+			_widths[k] = (int) number(_dict, i);
+			i = skipNumber(_dict, i);
+		}
+		int _entrySize = _widths[0] + _widths[1] + _widths[2];
+		byte[] _data = xrefStreamData(xref, _object, _dict, _entrySize);
+		if (_data == null || _widths[0] < 0 || _widths[1] < 0 || _widths[2] < 0) {
+			return -1;
+		}
+		// the subsections: /Index [start count ...], default [0 Size]
+		List<Long> _index = new ArrayList<Long>();
+		int _idx = valueStart(_dict, "/Index");
+		if (_idx >= 0 && _dict.charAt(_idx) == '[') {
+			for (i = skipSpace(_dict, _idx + 1); i < _dict.length() && _dict.charAt(i) != ']'; i = skipSpace(_dict, skipNumber(_dict, i))) {
+				_index.add(number(_dict, i));
+			}
+		}
+		else {
+			_index.add(0L);
+			_index.add(number(_dict, valueStart(_dict, "/Size")));
+		}
+		long _entry = 0;
+		for (int k = 0; k + 1 < _index.size(); k += 2) {
+			long _start = _index.get(k);
+			long _count = _index.get(k + 1);
+			if (object >= _start && object < _start + _count) {
+				int _pos = (int) ((_entry + object - _start) * _entrySize);
+				if (_pos + _entrySize > _data.length) {
+					return -1;
+				}
+				long _type = _widths[0] == 0 ? 1 : field(_data, _pos, _widths[0]);
+				return _type == 1 ? field(_data, _pos + _widths[0], _widths[1]) : -1;
+			}
+			_entry += _count;
+		}
+		return -2;
+	}
+
+	/**
+	 * Reads and decodes the data of an xref stream (uncompressed or FlateDecode with PNG predictors).
+	 */
+	private byte[] xrefStreamData(long xref, String object, String dict, int entrySize) throws IOException {
+		if (xrefStreams.containsKey(xref)) {
+			return xrefStreams.get(xref);
+		}
+		xrefStreams.put(xref, null);
+		int _start = streamStart(object, dict);
+		long _length = number(dict, valueStart(dict, "/Length"));
+		if (_start < 0 || _length <= 0 || entrySize <= 0) {
+			return null;
+		}
+		String _raw = read(xref + _start, (int) Math.min(_length, Integer.MAX_VALUE));
+		if (_raw == null || _raw.length() < _length) {
+			return null;
+		}
+		byte[] _data = _raw.getBytes(LATIN1);
+		int _filter = valueStart(dict, "/Filter");
+		if (_filter >= 0) {
+			if (dict.startsWith("/FlateDecode", _filter) == false) {
+				return null;
+			}
+			// at most the entries of /Size (with the filter byte of each row), i.e. a small stream can not be
+			// inflated to many MB
+			long _limit = (entrySize + 1L) * Math.max(0, number(dict, valueStart(dict, "/Size")));
+			_data = inflate(_data, (int) Math.min(_limit, (long) maxBytes * INFLATE_FACTOR));
+			int _predictor = (int) number(dict, valueStart(dict, "/Predictor"));
+			int _columns = (int) number(dict, valueStart(dict, "/Columns"));
+			if (_data != null && _predictor >= 10) {
+				_data = unpredict(_data, _columns > 0 ? _columns : entrySize);
+			}
+		}
+		xrefStreams.put(xref, _data);
+		return _data;
+	}
+
+	/**
+	 * @return	the position of the data of the stream of an object, after the keyword stream and its end of line, or -1
+	 */
+	private static int streamStart(String object, String dict) {
+		int _start = object.indexOf("stream", object.indexOf(dict) + dict.length());
+		if (_start < 0 || _start + 7 >= object.length()) {
+			return -1;
+		}
+		return _start + (object.charAt(_start + 6) == '\r' ? 8 : 7);
+	}
+
+	/**
+	 * Inflates the data of a stream up to limit bytes and until the deadline.
+	 *
+	 * @return	the (possibly truncated) data or null if the data is not valid
+	 */
+	private byte[] inflate(byte[] data, int limit) {
+		Inflater _inflater = new Inflater();
+		try {
+			_inflater.setInput(data);
+			ByteArrayOutputStream _out = new ByteArrayOutputStream(Math.min(limit, data.length * 4));
+			byte[] _buf = new byte[4096];
+			while (_inflater.finished() == false) {
+				if (_out.size() >= limit || System.nanoTime() > deadline) {
+					truncated = true;
+					break;
+				}
+				int n = _inflater.inflate(_buf, 0, Math.min(_buf.length, limit - _out.size()));
+				if (n == 0 && (_inflater.needsInput() || _inflater.needsDictionary())) {
+					break;
+				}
+				_out.write(_buf, 0, n);
+			}
+			return _out.toByteArray();
+		}
+		catch (DataFormatException _ex) {
+			return null;
+		}
+		finally {
+			_inflater.end();
+		}
+	}
+
+	/**
+	 * Reverses the PNG predictors None, Sub and Up (one filter byte per row of columns bytes).
+	 */
+	private static byte[] unpredict(byte[] data, int columns) {
+		int _rows = data.length / (columns + 1);
+		byte[] _out = new byte[_rows * columns];
+		for (int r = 0; r < _rows; r++) {
+			int _type = data[r * (columns + 1)];
+			for (int c = 0; c < columns; c++) {
+				int b = data[r * (columns + 1) + 1 + c] & 0xFF;
+				int _left = c > 0 ? _out[r * columns + c - 1] & 0xFF : 0;
+				int _up = r > 0 ? _out[(r - 1) * columns + c] & 0xFF : 0;
+				if (_type == 1) b += _left;
+				else if (_type == 2) b += _up;
+				else if (_type != 0) return null;
+				_out[r * columns + c] = (byte) b;
+			}
+		}
+		return _out;
+	}
+
+	private static long field(byte[] data, int pos, int width) {
+		long _value = 0;
+		for (int i = 0; i < width; i++) {
+			_value = (_value << 8) | (data[pos + i] & 0xFF);
+		}
+		return _value;
+	}
+
+	/**
+	 * Reads the dictionary that a key of a dictionary refers to, e.g. /Info of the trailer.
+	 */
+	private String resolveDictionary(String dict, String key) throws IOException {
+		int _start = valueStart(dict, key);
+		if (_start >= 0 && dict.startsWith("<<", _start)) {  // a direct dictionary
+			return dictionary(dict, _start);
+		}
+		int[] _ref = reference(dict, key);
+		long _offset = _ref == null ? -1 : offset(_ref[0]);
+		String _object = _offset < 0 ? null : read(_offset, WINDOW);
+		if (_object == null || _object.startsWith(_ref[0] + " " + _ref[1] + " obj") == false) {
+			return null;
+		}
+		return dictionary(_object, 0);
+	}
+
+	/**
+	 * @return	the (decoded) text of a string value of a dictionary or null
+	 */
+	private String text(String dict, String key) throws IOException {
+		int i = valueStart(dict, key);
+		if (i < 0) {
+			return null;
+		}
+		if (Character.isDigit(dict.charAt(i))) {  // an indirect string
+			int[] _ref = reference(dict, key);
+			long _offset = _ref == null ? -1 : offset(_ref[0]);
+			String _object = _offset < 0 ? null : read(_offset, WINDOW);
+			int _obj = _object == null ? -1 : _object.indexOf("obj");
+			if (_obj < 0) {
+				return null;
+			}
+			dict = _object;
+			i = skipSpace(_object, _obj + 3);
+		}
+		ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+		if (dict.charAt(i) == '(') {
+			if (literal(dict, i, _bytes) < 0) {
+				return null;
+			}
+		}
+		else if (dict.charAt(i) == '<') {
+			int _end = dict.indexOf('>', i);
+			int _digits = 0;
+			int _byte = 0;
+			for (int k = i + 1; k < _end; k++) {  // other characters than hex digits are ignored
+				int _digit = Character.digit(dict.charAt(k), 16);
+				if (_digit >= 0) {
+					_byte = _byte * 16 + _digit;
+					if (++_digits % 2 == 0) {
+						_bytes.write(_byte);
+						_byte = 0;
+					}
+				}
+			}
+			if (_digits % 2 == 1) {  // an odd final digit is followed by 0
+				_bytes.write(_byte * 16);
+			}
+		}
+		byte[] _b = _bytes.toByteArray();
+		String _text;
+		if (_b.length >= 2 && (_b[0] & 0xFF) == 0xFE && (_b[1] & 0xFF) == 0xFF) {
+			_text = new String(_b, 2, _b.length - 2, UTF16);
+		}
+		else if (_b.length >= 3 && (_b[0] & 0xFF) == 0xEF && (_b[1] & 0xFF) == 0xBB && (_b[2] & 0xFF) == 0xBF) {
+			_text = new String(_b, 3, _b.length - 3, UTF8);
+		}
+		else {  // PDFDocEncoding, which is close to ISO-8859-1
+			_text = new String(_b, LATIN1);
+		}
+		_text = _text.trim();
+		return _text.isEmpty() ? null : _text;
+	}
+
+	/**
+	 * Decodes a literal string (with balanced parentheses and escapes) starting at pos.
+	 *
+	 * @return	the position after the string or -1 if it is not terminated
+	 */
+	private static int literal(String s, int pos, ByteArrayOutputStream out) {
+		int _depth = 0;
+		for (int i = pos; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				c = s.charAt(++i);
+				int k = "nrtbf".indexOf(c);
+				if (k >= 0) {
+					out.write("\n\r\t\b\f".charAt(k));
+				}
+				else if (c >= '0' && c <= '7') {
+					int _octal = 0;
+					for (int n = 0; n < 3 && i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '7'; n++, i++) {
+						_octal = _octal * 8 + s.charAt(i) - '0';
+					}
+					i--;
+					out.write(_octal);
+				}
+				else if (c == '\r') {  // line continuation
+					if (i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+						i++;
+					}
+				}
+				else if (c != '\n') {
+					out.write(c);
+				}
+				continue;
+			}
+			if (c == '(' && _depth++ == 0) {
+				continue;
+			}
+			if (c == ')' && --_depth == 0) {
+				return i + 1;
+			}
+			out.write(c);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return	the balanced dictionary &lt;&lt; ... &gt;&gt; starting at the first &lt;&lt; at or after pos or null
+	 */
+	private static String dictionary(String s, int pos) {
+		int _start = s.indexOf("<<", pos);
+		int _depth = 0;
+		for (int i = _start; i >= 0 && i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '(') {
+				i = literal(s, i, new ByteArrayOutputStream()) - 1;
+				if (i < 0) {
+					return null;
+				}
+			}
+			else if (s.startsWith("<<", i)) {
+				_depth++;
+				i++;
+			}
+			else if (s.startsWith(">>", i)) {
+				i++;
+				if (--_depth == 0) {
+					return s.substring(_start, i + 1);
+				}
+			}
+			else if (c == '<') {  // a hex string
+				i = s.indexOf('>', i);
+				if (i < 0) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return	the position of a key (a name not followed by other name characters) in a dictionary or -1
+	 */
+	private static int key(String dict, String key) {
+		for (int i = dict.indexOf(key); i >= 0; i = dict.indexOf(key, i + 1)) {
+			int _end = i + key.length();
+			if (_end >= dict.length() || " \t\r\n/<[(".indexOf(dict.charAt(_end)) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return	the position of the value of a key in a dictionary or -1
+	 */
+	private static int valueStart(String dict, String key) {
+		int i = key(dict, key);
+		return i < 0 ? -1 : skipSpace(dict, i + key.length());
+	}
+
+	/**
+	 * @return	the object and generation number of an indirect reference (n g R) of a key or null
+	 */
+	private static int[] reference(String dict, String key) {
+		int i = valueStart(dict, key);
+		if (i < 0) {
+			return null;
+		}
+		int j = skipSpace(dict, skipNumber(dict, i));
+		int k = skipSpace(dict, skipNumber(dict, j));
+		if (j == i || k == j || k >= dict.length() || dict.charAt(k) != 'R') {
+			return null;
+		}
+		return new int[] { (int) number(dict, i), (int) number(dict, j) };
+	}
+
+	private static int skipSpace(String s, int pos) {
+		while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+			pos++;
+		}
+		return pos < s.length() ? pos : -1;
+	}
+
+	private static int skipNumber(String s, int pos) {
+		while (pos >= 0 && pos < s.length() && Character.isDigit(s.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return	the unsigned number at pos or -1
+	 */
+	private static long number(String s, int pos) {
+		int _end = skipNumber(s, pos);
+		if (pos < 0 || _end == pos || _end - pos > 18) {
+			return -1;
+		}
+		return Long.parseLong(s.substring(pos, _end));
+	}
+
+	/**
+	 * Parses a pdf date D:yyyyMMddHHmmss followed by Z, +HH'mm' or -HH'mm' (all parts after the year optional).
+	 *
+	 * @param date	the date
+	 *
+	 * @return	the milliseconds since 1970 or 0 if the date is not valid
+	 */
+	static long parsePdfDate(String date) {
+		String s = date.startsWith("D:") ? date.substring(2) : date;
+		int[] _parts = { 0, 1, 1, 0, 0, 0 };
+		int _pos = 0;
+		for (int k = 0; k < 6 && skipNumber(s, _pos) >= _pos + (k == 0 ? 4 : 2); k++) {
+			_parts[k] = Integer.parseInt(s.substring(_pos, _pos + (k == 0 ? 4 : 2)));
+			_pos += k == 0 ? 4 : 2;
+		}
+		if (_pos == 0 || _parts[1] < 1 || _parts[1] > 12 || _parts[2] < 1 || _parts[2] > 31) {
+			return 0;
+		}
+		TimeZone _zone = TimeZone.getDefault();
+		if (_pos < s.length() && s.charAt(_pos) == 'Z') {
+			_zone = TimeZone.getTimeZone("GMT");
+		}
+		else if (_pos < s.length() && (s.charAt(_pos) == '+' || s.charAt(_pos) == '-')) {  // +HH'mm' or +HHmm
+			String _digits = s.substring(_pos + 1).replaceAll("[^0-9]", "");
+			if (_digits.length() >= 2) {
+				_zone = TimeZone.getTimeZone("GMT" + s.charAt(_pos) + _digits.substring(0, 2) + ":" +
+						(_digits.length() >= 4 ? _digits.substring(2, 4) : "00"));
+			}
+		}
+		Calendar _cal = new GregorianCalendar(_zone);
+		_cal.clear();
+		_cal.set(_parts[0], _parts[1] - 1, _parts[2], _parts[3], _parts[4], _parts[5]);
+		return _cal.getTimeInMillis();
+	}
+
+	/**
+	 * @return	the value of an XMP property (attribute or element, the first rdf:li of a list) or null
+	 */
+	private static String xmpValue(String xmp, String name) {
+		for (int i = xmp.indexOf(name); i >= 0; i = xmp.indexOf(name, i + 1)) {
+			int _end = i + name.length();
+			if (_end + 1 < xmp.length() && xmp.charAt(_end) == '=') {  // attribute
+				int _close = xmp.indexOf(xmp.charAt(_end + 1), _end + 2);
+				return _close < 0 ? null : xmlText(xmp.substring(_end + 2, _close));
+			}
+			if (i > 0 && xmp.charAt(i - 1) == '<' && _end < xmp.length() && " >".indexOf(xmp.charAt(_end)) >= 0) {
+				int _close = xmp.indexOf("</" + name, _end);
+				int _start = xmp.indexOf('>', _end) + 1;
+				if (_close < 0 || _start > _close) {
+					return null;
+				}
+				String _content = xmp.substring(_start, _close);
+				int _li = _content.indexOf("<rdf:li");
+				if (_li >= 0) {
+					int _liStart = _content.indexOf('>', _li) + 1;
+					int _liEnd = _content.indexOf("</rdf:li>", _liStart);
+					_content = _liEnd < 0 ? "" : _content.substring(_liStart, _liEnd);
+				}
+				return xmlText(_content);
+			}
+		}
+		return null;
+	}
+
+	private static String xmlText(String s) {
+		String _text = s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+				.replace("&amp;", "&").trim();
+		return _text.isEmpty() || _text.startsWith("<") ? null : _text;
+	}
+}
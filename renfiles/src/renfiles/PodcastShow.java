@@ -0,0 +1,88 @@
+package renfiles;
+import java.io.*;
+import java.util.*;
+
+/**
+ * A podcast show of the podcast table (see renfiles.podcasts): the folder of the show in the podcast source
+ * directory and a {@link RenameRule} for its files. Each line of the table consists of the folder, followed by
+ * the five columns of a rename rule, separated by <code>|</code>, e.g.
+ * <pre>
+ * 10vor10 | prefix:10vor10_ | yyyyMMdd@8 | ${date}sfdrs10vor10.mp4 | ${podcasts}/10vor10 | dNews
+ * </pre>
+ * The date type <code>mtime</code> takes the date from the modification time of the file.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class PodcastShow {
+	private final String folder;
+	private final RuleEngine engine;
+
+	/**
+	 * Constructor; parses one line of the podcast table.
+	 *
+	 * @param line		the show definition
+	 * @param config	the configuration variables that can be used within the templates
+	 * @throws IllegalArgumentException if the show definition is not valid
+	 */
+	public PodcastShow(String line, Map<String, String> config) {
+		int _sep = line.indexOf('|');
+		if (_sep <= 0) {
+			throw new IllegalArgumentException("expected 6 columns");
+		}
+		folder = line.substring(0, _sep).trim();
+		engine = new RuleEngine(Collections.singletonList(new RenameRule(line.substring(_sep + 1), 0, config)));
+	}
+
+	/**
+	 * Loads the podcast table. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param reader	the table (closed afterwards)
+	 * @param name		the name of the table for the error messages
+	 * @param config	the configuration variables that can be used within the templates (e.g. podcasts)
+	 * @return			the shows
+	 * @throws IOException if the file can not be read or contains an invalid show
+	 */
+	public static List<PodcastShow> load(Reader reader, String name, Map<String, String> config) throws IOException {
+		List<PodcastShow> _shows = new ArrayList<PodcastShow>();
+		BufferedReader _reader = new BufferedReader(reader);
+		try {
+			String _line;
+			int _lineNr = 0;
+			while ((_line = _reader.readLine()) != null) {
+				_lineNr++;
+				_line = _line.trim();
+				if (_line.isEmpty() || _line.startsWith("#")) {
+					continue;
+				}
+				try {
+					_shows.add(new PodcastShow(_line, config));
+				}
+				catch (IllegalArgumentException _ex) {
+					throw new IOException(name + ":" + _lineNr + ": " + _ex.getMessage());
+				}
+			}
+		}
+		finally {
+			_reader.close();
+		}
+		return _shows;
+	}
+
+	/**
+	 * @return	the folder of the show within the podcast source directory
+	 */
+	public String getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Determines the destination of a file of the show.
+	 *
+	 * @param f		the podcast file
+	 * @return		the destination or null if the file does not match the rule of the show
+	 */
+	public Classification classify(File f) {
+		return engine.classify(f.getName(), f.lastModified());
+	}
+}
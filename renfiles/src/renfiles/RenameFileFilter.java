@@ -1,5 +1,14 @@
 package renfiles;
 import java.io.File;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A FilenameFilter with a configurable selection criteria.
@@ -8,25 +17,157 @@ import java.io.File;
  * listings in the <code>list</code> method of class
  * <code>File</code>, and by the Abstract Window Toolkit's file
  * dialog component.
+ * The filter can also be used with <code>Files.newDirectoryStream()</code>.<p>
+ * The criteria are checked from cheap to expensive, so that an entry is rejected as early as possible:
+ * <ol>
+ * <li>the extensions (any of them, case-insensitive, none = all names)
+ * <li>the glob and regex patterns of the name (all of them)
+ * <li>the minimal age (e.g. to skip files that are still downloading) and the size range, which need the
+ * attributes of the entry and are therefore only checked by {@link #accept(Path, BasicFileAttributes)}
+ * </ol>
+ * A filter is defined by a specification (see {@link #parse(String)}), e.g.
+ * <code>.pdf .PDF.gz glob:[0-9]* minAge=60 maxSize=100M</code>.
  *
  * @author  Bruno Kaiser
  * @see     java.io.FilenameFilter
  * @see     java.io.File#list(java.io.FilenameFilter)
  * @since   JDK1.0
  */
-public class RenameFileFilter implements java.io.FilenameFilter {
-	private String fileNameExtension = "";
+public class RenameFileFilter implements java.io.FilenameFilter, DirectoryStream.Filter<Path> {
+	private String[] extensions = new String[0];
+	private final List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+	private long minAgeMillis = 0;
+	private long minSize = 0;
+	private long maxSize = Long.MAX_VALUE;
+	private final StringBuilder spec = new StringBuilder();
+
 	/**
 	 * Constructor.
-	 * 
-	 * @param ext			the command line parameters (@see #printUsage()) for a list of valid arguments.
+	 *
+	 * @param ext			the file name extensions, e.g. .pdf (any of them; none = all names)
+	 */
+	public RenameFileFilter(String... ext) {
+		for (String _ext : ext) {
+			addExtension(_ext);
+		}
+	}
+
+	/**
+	 * Creates a filter from a specification, i.e. a list of criteria separated by blanks:
+	 * <ul>
+	 * <li><code>.ext</code>: the extension of the name (any of the extensions)
+	 * <li><code>glob:pattern</code>, <code>regex:pattern</code>: a pattern of the name
+	 * (see {@link java.nio.file.FileSystem#getPathMatcher(String)})
+	 * <li><code>minAge=seconds</code>: the minimal time since the last modification
+	 * <li><code>minSize=n</code>, <code>maxSize=n</code>: the size range in bytes, n with an optional unit K, M or G
+	 * </ul>
+	 *
+	 * @param spec	the specification
+	 * @return		the filter
+	 * @throws IllegalArgumentException if the specification is not valid
+	 */
+	public static RenameFileFilter parse(String spec) {
+		RenameFileFilter _filter = new RenameFileFilter();
+		for (String _criterion : spec.trim().split("\\s+")) {
+			if (_criterion.isEmpty()) {
+				continue;
+			}
+			if (_criterion.startsWith(".")) {
+				_filter.addExtension(_criterion);
+			}
+			else if (_criterion.startsWith("glob:") || _criterion.startsWith("regex:")) {
+				_filter.pattern(_criterion);
+			}
+			else if (_criterion.startsWith("minAge=")) {
+				_filter.minAge(parseSize(_criterion) * 1000L);
+			}
+			else if (_criterion.startsWith("minSize=")) {
+				_filter.size(parseSize(_criterion), _filter.maxSize);
+			}
+			else if (_criterion.startsWith("maxSize=")) {
+				_filter.size(_filter.minSize, parseSize(_criterion));
+			}
+			else {
+				throw new IllegalArgumentException("invalid filter criterion: " + _criterion);
+			}
+		}
+		return _filter;
+	}
+
+	/**
+	 * Parses the value of a criterion <code>name=n</code> with an optional unit K, M or G.
+	 */
+	private static long parseSize(String criterion) {
+		String _value = criterion.substring(criterion.indexOf('=') + 1);
+		int _shift = 0;
+		if (_value.endsWith("K") || _value.endsWith("M") || _value.endsWith("G")) {
+			_shift = 10 * ("KMG".indexOf(_value.charAt(_value.length() - 1)) + 1);
+			_value = _value.substring(0, _value.length() - 1);
+		}
+		try {
+			long _size = Long.parseLong(_value);
+			if (_size < 0) {
+				throw new NumberFormatException();
+			}
+			return _size << _shift;
+		}
+		catch (NumberFormatException _ex) {
+			throw new IllegalArgumentException("invalid filter criterion: " + criterion);
+		}
+	}
+
+	private void addExtension(String ext) {
+		extensions = Arrays.copyOf(extensions, extensions.length + 1);
+		extensions[extensions.length - 1] = ext;
+		append(ext);
+	}
+
+	/**
+	 * Adds a pattern that the name must match.
+	 *
+	 * @param pattern	<code>glob:</code> or <code>regex:</code> followed by the pattern
+	 * @return			this filter
+	 * @throws IllegalArgumentException if the pattern is not valid
+	 */
+	public RenameFileFilter pattern(String pattern) {
+		matchers.add(FileSystems.getDefault().getPathMatcher(pattern));
+		append(pattern);
+		return this;
+	}
+
+	/**
+	 * Sets the minimal age of the entries, e.g. to skip files that are still downloading.
+	 *
+	 * @param millis	the minimal time since the last modification in ms
+	 * @return			this filter
+	 */
+	public RenameFileFilter minAge(long millis) {
+		minAgeMillis = millis;
+		append("minAge=" + millis / 1000);
+		return this;
+	}
+
+	/**
+	 * Sets the size range of the entries.
+	 *
+	 * @param min	the minimal size in bytes
+	 * @param max	the maximal size in bytes
+	 * @return		this filter
 	 */
-	public RenameFileFilter(String ext) {
-		fileNameExtension = ext;
+	public RenameFileFilter size(long min, long max) {
+		minSize = min;
+		maxSize = max;
+		append("size=" + min + "-" + (max == Long.MAX_VALUE ? "" : String.valueOf(max)));
+		return this;
+	}
+
+	private void append(String criterion) {
+		spec.append(spec.length() > 0 ? " " : "").append(criterion);
 	}
 
     /**
      * Tests if a specified file should be included in a file list.
+     * Only the criteria of the name are checked.
      *
      * @param   dir    the directory in which the file was found.
      * @param   name   the name of the file.
@@ -34,15 +175,78 @@ public class RenameFileFilter implements java.io.FilenameFilter {
      * included in the file list; <code>false</code> otherwise.
      */
 	public boolean accept(File dir, String name) {
-	//	System.out.print("accept(" + dir.toString() + ", " + name + ") <-" + fileNameExtension);
-		if (name.toLowerCase().endsWith(fileNameExtension)) { 
-	//		System.out.println(" = true");
+		return matches(name) && (matchers.isEmpty() || matches(Paths.get(name)));
+	}
+
+    /**
+     * Tests if a specified directory entry should be included in a directory stream.
+     * Only the criteria of the name are checked, i.e. the attributes of the entry are not read.
+     *
+     * @param   entry  the directory entry.
+     * @return  <code>true</code> if and only if the entry should be
+     * included in the directory stream; <code>false</code> otherwise.
+     */
+	public boolean accept(Path entry) {
+		// the extensions are compared with the end of the whole path: its string is kept by the Path and used
+		// again when the file is opened, whereas the string of the name would be created for each entry
+		if (matches(entry.toString()) == false) {
+			return false;
+		}
+		if (matchers.isEmpty()) {
 			return true;
 		}
-		else {
-	//		System.out.println(" = false");
+		Path _name = entry.getFileName();
+		return _name != null && matches(_name);
+	}
+
+	/**
+	 * Tests if a directory entry matches all criteria.
+	 *
+	 * @param   entry  the directory entry.
+	 * @param   attrs  the attributes of the entry.
+	 * @return  <code>true</code> if the entry matches all criteria
+	 */
+	public boolean accept(Path entry, BasicFileAttributes attrs) {
+		if (accept(entry) == false || attrs.size() < minSize || attrs.size() > maxSize) {
 			return false;
 		}
+		return minAgeMillis == 0 || System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() >= minAgeMillis;
 	}
 
+	/**
+	 * Compares the extensions case-insensitively in place, i.e. without creating a lower case copy of the name.
+	 *
+	 * @param   name   the name of the file.
+	 * @return  <code>true</code> if the name ends with one of the extensions
+	 */
+	private boolean matches(String name) {
+		for (String _ext : extensions) {
+			int _len = _ext.length();
+			if (name.regionMatches(true, name.length() - _len, _ext, 0, _len)) {
+				return true;
+			}
+		}
+		return extensions.length == 0;
+	}
+
+	/**
+	 * @param   name   the name of the file.
+	 * @return  <code>true</code> if the name matches all patterns
+	 */
+	private boolean matches(Path name) {
+		for (PathMatcher _matcher : matchers) {
+			if (_matcher.matches(name) == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return	the specification of the filter
+	 */
+	@Override
+	public String toString() {
+		return spec.toString();
+	}
 }
@@ -1,7 +1,12 @@
 package renfiles;
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utility to automate some regular file conversion tasks.<p>
@@ -40,19 +45,105 @@ public class RenameFiles {
 	private static String newsDirName = ".";
 	private static String podcastSrcDirName = ".";
 	private static String podcastDestDirName = ".";
+	private static String ruleFileName = "renfiles.rules";
 	private File workDir = null;
+	private static int threadCount = 1;
+	private static int maxInFlight = 256;
+	private static String tagBackend = "tool";
+	private static String tagCommand = "/usr/local/bin/tag";
+	private static int tagBatchSize = 200;
+	private static int moveBufferSize = 1024 * 1024;
+	private static boolean moveVerifyChecksum = false;
+	private static int moveResumeThresholdMB = 256;
+	private static int moveChunkSizeMB = 64;
+	private static int moveRateLimitKB = 0;
+	private static boolean watchMode = false;
+	private static int watchSettleMillis = 5000;
+	private static String journalFileName = "renfiles.journal";
+	private static int journalSyncInterval = 32;
+	private static int dirCacheSize = 1024;
+	private static String metricsJsonFile = "";
+	private static String metricsPromFile = "";
+	private static String duplicateIndexFileName = "renfiles.hashindex";
+	private static String duplicateAction = "skip";
+	private static String archiveIndexFileName = "renfiles.archiveindex";
+	private static String podcastRuleFileName = "renfiles.podcasts";
+	private static int podcastThreadCount = 4;
+	private static String backupRuleFileName = "renfiles.backups";
+	private static int backupThreadCount = 4;
+	private static String backupCompression = "none";
+	private static int backupCompressLevel = 6;
+	private static int backupCompressThreads = 0;
+	private static int backupCompressBlockKB = 1024;
+	private static boolean backupVerify = true;
+	private static boolean batchClassify = false;
+	private static int startupBudgetMillis = 1000;
+	private static String pdfFilter = ".pdf";
+	private static String softwareFilter = ".dmg";
+	private static String podcastFilter = ".mp4";
+	private static String pdfMetaRuleFileName = "renfiles.pdfmeta";
+	private static int pdfMetaMaxBytes = 65536;
+	private static int pdfMetaMaxMillis = 50;
+	private static String clusterMode = "none";
+	private static int shardCount = 1;
+	private static int shardIndex = 0;
+	private static int leaseExpirySeconds = 300;
+	private static int relayoutThreadCount = 4;
+	private static int relayoutBatchSize = 256;
+	private static int servicePort = 8377;
+	private static int serviceThreadCount = 4;
+	private RuleEngine ruleEngine = null;
+	private List<PodcastShow> podcastShows = null;
+	private List<BackupSource> backupSources = null;
+	private List<PdfMetaRule> pdfMetaRules = Collections.emptyList();
+	private volatile boolean collectReport = false;
+	private MovePipeline pipeline = null;
+	private TagQueue tagQueue = null;
+	private FileClaims claims = null;
+	private FileMover fileMover = null;
+	private Journal journal = null;
+	private DirectoryCache dirCache = null;
+	private final Metrics metrics = new Metrics();
+	private DuplicateDetector duplicates = null;
+	private ArchiveIndex archiveIndex = null;
+	private MovePlan plan = null;
+	private final List<String> reportLines = new ArrayList<String>();
+	private final ConfigSnapshot config;
+	private final AtomicLong firstFileMillis = new AtomicLong();
+	private RenameFileFilter pdfFiles = null;
+	private RenameFileFilter softwareFiles = null;
+	private RenameFileFilter podcastFiles = null;
 
 	/**
-	 * Constructor.
-	 * The idea is to start this programm out of Eclipse and to control it via properties settings. 
-	 * Therefore, command line parameters are not supported.
+	 * Constructor with the default configuration renfiles.properties in the current directory,
+	 * e.g. to start this programm out of Eclipse.
 	 * 
 	 * @throws IOException
 	 */
 	public RenameFiles() throws IOException {
 		// load default configuration in the project root directory
-		Properties _props = new Properties();
-		_props.load(new FileInputStream("renfiles.properties"));
+		this("renfiles.properties");
+	}
+
+	/**
+	 * Constructor with an explicit configuration file (e.g. for benchmarks).
+	 * 
+	 * @param propertiesFileName	the configuration properties
+	 * @throws IOException
+	 */
+	public RenameFiles(String propertiesFileName) throws IOException {
+		this(ConfigSnapshot.fromFiles(propertiesFileName));
+	}
+
+	/**
+	 * Constructor with a configuration that was read from the files or from a snapshot (see {@link ConfigSnapshot}).
+	 * 
+	 * @param config	the configuration
+	 * @throws IOException
+	 */
+	public RenameFiles(ConfigSnapshot config) throws IOException {
+		this.config = config;
+		Properties _props = config.getProperties();
 		docDirName = saveReadProperty(_props, "docDirName", docDirName);
 		newsDirName = saveReadProperty(_props, "newsDirName", newsDirName);
 		srcDirName = saveReadProperty(_props, "srcDirName", srcDirName);
@@ -60,6 +151,52 @@ public class RenameFiles {
 		debugMode = saveReadBooleanProperty(_props, "debugMode", debugMode);
 		podcastSrcDirName = saveReadProperty(_props, "podcastSrcDirName", podcastSrcDirName);
 		podcastDestDirName = saveReadProperty(_props, "podcastDestDirName", podcastDestDirName);
+		ruleFileName = saveReadProperty(_props, "ruleFileName", ruleFileName);
+		threadCount = saveReadIntProperty(_props, "threadCount", threadCount);
+		maxInFlight = saveReadIntProperty(_props, "maxInFlight", maxInFlight);
+		tagBackend = saveReadProperty(_props, "tagBackend", tagBackend);
+		tagCommand = saveReadProperty(_props, "tagCommand", tagCommand);
+		tagBatchSize = saveReadIntProperty(_props, "tagBatchSize", tagBatchSize);
+		moveBufferSize = saveReadIntProperty(_props, "moveBufferSize", moveBufferSize);
+		moveVerifyChecksum = saveReadBooleanProperty(_props, "moveVerifyChecksum", moveVerifyChecksum);
+		moveResumeThresholdMB = saveReadIntProperty(_props, "moveResumeThresholdMB", moveResumeThresholdMB);
+		moveChunkSizeMB = saveReadIntProperty(_props, "moveChunkSizeMB", moveChunkSizeMB);
+		moveRateLimitKB = saveReadIntProperty(_props, "moveRateLimitKB", moveRateLimitKB);
+		watchMode = saveReadBooleanProperty(_props, "watchMode", watchMode);
+		watchSettleMillis = saveReadIntProperty(_props, "watchSettleMillis", watchSettleMillis);
+		journalFileName = saveReadProperty(_props, "journalFileName", journalFileName);
+		journalSyncInterval = saveReadIntProperty(_props, "journalSyncInterval", journalSyncInterval);
+		dirCacheSize = saveReadIntProperty(_props, "dirCacheSize", dirCacheSize);
+		metricsJsonFile = saveReadProperty(_props, "metricsJsonFile", metricsJsonFile);
+		metricsPromFile = saveReadProperty(_props, "metricsPromFile", metricsPromFile);
+		duplicateIndexFileName = saveReadProperty(_props, "duplicateIndexFileName", duplicateIndexFileName);
+		duplicateAction = saveReadProperty(_props, "duplicateAction", duplicateAction);
+		archiveIndexFileName = saveReadProperty(_props, "archiveIndexFileName", archiveIndexFileName);
+		podcastRuleFileName = saveReadProperty(_props, "podcastRuleFileName", podcastRuleFileName);
+		podcastThreadCount = saveReadIntProperty(_props, "podcastThreadCount", podcastThreadCount);
+		backupRuleFileName = saveReadProperty(_props, "backupRuleFileName", backupRuleFileName);
+		backupThreadCount = saveReadIntProperty(_props, "backupThreadCount", backupThreadCount);
+		backupCompression = saveReadProperty(_props, "backupCompression", backupCompression);
+		backupCompressLevel = saveReadIntProperty(_props, "backupCompressLevel", backupCompressLevel);
+		backupCompressThreads = saveReadIntProperty(_props, "backupCompressThreads", backupCompressThreads);
+		backupCompressBlockKB = saveReadIntProperty(_props, "backupCompressBlockKB", backupCompressBlockKB);
+		backupVerify = saveReadBooleanProperty(_props, "backupVerify", backupVerify);
+		batchClassify = saveReadBooleanProperty(_props, "batchClassify", batchClassify);
+		startupBudgetMillis = saveReadIntProperty(_props, "startupBudgetMillis", startupBudgetMillis);
+		pdfFilter = saveReadProperty(_props, "pdfFilter", pdfFilter);
+		softwareFilter = saveReadProperty(_props, "softwareFilter", softwareFilter);
+		podcastFilter = saveReadProperty(_props, "podcastFilter", podcastFilter);
+		pdfMetaRuleFileName = saveReadProperty(_props, "pdfMetaRuleFileName", pdfMetaRuleFileName);
+		pdfMetaMaxBytes = saveReadIntProperty(_props, "pdfMetaMaxBytes", pdfMetaMaxBytes);
+		pdfMetaMaxMillis = saveReadIntProperty(_props, "pdfMetaMaxMillis", pdfMetaMaxMillis);
+		clusterMode = saveReadProperty(_props, "clusterMode", clusterMode);
+		shardCount = saveReadIntProperty(_props, "shardCount", shardCount);
+		shardIndex = saveReadIntProperty(_props, "shardIndex", shardIndex);
+		leaseExpirySeconds = saveReadIntProperty(_props, "leaseExpirySeconds", leaseExpirySeconds);
+		relayoutThreadCount = saveReadIntProperty(_props, "relayoutThreadCount", relayoutThreadCount);
+		relayoutBatchSize = saveReadIntProperty(_props, "relayoutBatchSize", relayoutBatchSize);
+		servicePort = saveReadIntProperty(_props, "servicePort", servicePort);
+		serviceThreadCount = saveReadIntProperty(_props, "serviceThreadCount", serviceThreadCount);
 
 		if (debugMode) {
 			System.out.println("srcDirName=" + srcDirName);
@@ -69,8 +206,145 @@ public class RenameFiles {
 			System.out.println("testMode=" + debugMode);
 			System.out.println("podcastSrcDirName=" + podcastSrcDirName);
 			System.out.println("podcastDestDirName=" + podcastDestDirName);
+			System.out.println("ruleFileName=" + ruleFileName);
+			System.out.println("threadCount=" + threadCount);
+			System.out.println("maxInFlight=" + maxInFlight);
+			System.out.println("tagBackend=" + tagBackend);
+			System.out.println("tagCommand=" + tagCommand);
+			System.out.println("tagBatchSize=" + tagBatchSize);
+			System.out.println("moveBufferSize=" + moveBufferSize);
+			System.out.println("moveVerifyChecksum=" + moveVerifyChecksum);
+			System.out.println("moveResumeThresholdMB=" + moveResumeThresholdMB);
+			System.out.println("moveChunkSizeMB=" + moveChunkSizeMB);
+			System.out.println("moveRateLimitKB=" + moveRateLimitKB);
+			System.out.println("watchMode=" + watchMode);
+			System.out.println("watchSettleMillis=" + watchSettleMillis);
+			System.out.println("journalFileName=" + journalFileName);
+			System.out.println("journalSyncInterval=" + journalSyncInterval);
+			System.out.println("dirCacheSize=" + dirCacheSize);
+			System.out.println("metricsJsonFile=" + metricsJsonFile);
+			System.out.println("metricsPromFile=" + metricsPromFile);
+			System.out.println("duplicateIndexFileName=" + duplicateIndexFileName);
+			System.out.println("duplicateAction=" + duplicateAction);
+			System.out.println("archiveIndexFileName=" + archiveIndexFileName);
+			System.out.println("podcastRuleFileName=" + podcastRuleFileName);
+			System.out.println("podcastThreadCount=" + podcastThreadCount);
+			System.out.println("backupRuleFileName=" + backupRuleFileName);
+			System.out.println("backupThreadCount=" + backupThreadCount);
+			System.out.println("backupCompression=" + backupCompression);
+			System.out.println("backupCompressLevel=" + backupCompressLevel);
+			System.out.println("backupCompressThreads=" + backupCompressThreads);
+			System.out.println("backupCompressBlockKB=" + backupCompressBlockKB);
+			System.out.println("backupVerify=" + backupVerify);
+			System.out.println("batchClassify=" + batchClassify);
+			System.out.println("startupBudgetMillis=" + startupBudgetMillis);
+			System.out.println("pdfFilter=" + pdfFilter);
+			System.out.println("softwareFilter=" + softwareFilter);
+			System.out.println("podcastFilter=" + podcastFilter);
+			System.out.println("pdfMetaRuleFileName=" + pdfMetaRuleFileName);
+			System.out.println("pdfMetaMaxBytes=" + pdfMetaMaxBytes);
+			System.out.println("pdfMetaMaxMillis=" + pdfMetaMaxMillis);
+			System.out.println("clusterMode=" + clusterMode);
+			System.out.println("shardCount=" + shardCount);
+			System.out.println("shardIndex=" + shardIndex);
+			System.out.println("leaseExpirySeconds=" + leaseExpirySeconds);
+			System.out.println("relayoutThreadCount=" + relayoutThreadCount);
+			System.out.println("relayoutBatchSize=" + relayoutBatchSize);
+			System.out.println("servicePort=" + servicePort);
+			System.out.println("serviceThreadCount=" + serviceThreadCount);
 		}
 		workDir = new File(srcDirName).getCanonicalFile();
+		try {
+			pdfFiles = RenameFileFilter.parse(pdfFilter);
+			softwareFiles = RenameFileFilter.parse(softwareFilter);
+			podcastFiles = RenameFileFilter.parse(podcastFilter);
+		}
+		catch (IllegalArgumentException _ex) {
+			throw new IOException(_ex.getMessage());
+		}
+
+		// compile the classification rules once; the templates may refer to the directories
+		Map<String, String> _config = new HashMap<String, String>();
+		_config.put("doc", docDirName);
+		_config.put("news", newsDirName);
+		ruleEngine = RuleEngine.load(config.open(ruleFileName), ruleFileName, _config);
+		if (debugMode) {
+			System.out.println(ruleEngine.size() + " rules loaded from " + ruleFileName);
+		}
+		_config.put("podcasts", podcastDestDirName);
+		podcastShows = PodcastShow.load(config.open(podcastRuleFileName), podcastRuleFileName, _config);
+		if (debugMode) {
+			System.out.println(podcastShows.size() + " podcast shows loaded from " + podcastRuleFileName);
+		}
+		backupSources = BackupSource.load(config.open(backupRuleFileName), backupRuleFileName, _config);
+		if (debugMode) {
+			System.out.println(backupSources.size() + " backup sources loaded from " + backupRuleFileName);
+		}
+		if (backupCompression.equals("none") == false && backupCompression.equals("gzip") == false) {
+			throw new IOException("unknown backup compression: " + backupCompression);
+		}
+		if (pdfMetaRuleFileName.trim().length() > 0) {
+			pdfMetaRules = PdfMetaRule.load(config.open(pdfMetaRuleFileName), pdfMetaRuleFileName, _config);
+			if (debugMode) {
+				System.out.println(pdfMetaRules.size() + " pdf metadata rules loaded from " + pdfMetaRuleFileName);
+			}
+		}
+		if (testMode == false && journalFileName.trim().length() > 0) {  // nothing is executed in testMode
+			journal = new Journal(new File(journalFileName).toPath(), journalSyncInterval);
+		}
+		try {
+			tagQueue = new TagQueue(metrics.timed(TagQueue.createTagger(tagBackend, tagCommand)), tagBatchSize, journal);
+			claims = createClaims(clusterMode);
+		}
+		catch (IllegalArgumentException _ex) {
+			throw new IOException(_ex.getMessage());
+		}
+		fileMover = new FileMover(moveBufferSize, moveVerifyChecksum, moveResumeThresholdMB * 1024L * 1024L,
+				moveChunkSizeMB * 1024L * 1024L, moveRateLimitKB * 1024L);
+		fileMover.setProgress(new FileMover.Progress() {
+			public void copied(Path src, long copied, long size, long nanos) {
+				long _millis = Math.max(1, nanos / 1000000);
+				System.out.println("copying " + src.getFileName() + ": " + (copied / 1024 / 1024) + " of " +
+						(size / 1024 / 1024) + " MB (" + (copied * 100 / Math.max(1, size)) + "%), " +
+						(copied * 1000 / 1024 / 1024 / _millis) + " MB/s");
+			}
+		});
+		dirCache = new DirectoryCache(dirCacheSize);
+		if (duplicateIndexFileName.trim().length() > 0) {
+			if (duplicateAction.equals("skip") == false && duplicateAction.equals("delete") == false) {
+				throw new IOException("unknown duplicate action: " + duplicateAction);
+			}
+		}
+	}
+
+	/**
+	 * Returns the duplicate detector (see {@link DuplicateDetector}); it is created by the first command that
+	 * converts a file, as it loads the index or walks the archive.
+	 * @return	the duplicate detector or null if no duplicateIndexFileName is configured
+	 * @throws IOException if the index can not be read
+	 */
+	private synchronized DuplicateDetector getDuplicates() throws IOException {
+		if (duplicates == null && duplicateIndexFileName.trim().length() > 0) {
+			duplicates = new DuplicateDetector(new File(duplicateIndexFileName).toPath(),
+					Arrays.asList(new File(newsDirName).toPath(), new File(docDirName).toPath()));
+			if (debugMode) {
+				System.out.println(duplicates.size() + " archived files indexed in " + duplicateIndexFileName);
+			}
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Returns the archive index (see {@link ArchiveIndex}); it is loaded by the first command that uses it.
+	 * @return	the archive index or null if no archiveIndexFileName is configured
+	 * @throws IOException if the index can not be read
+	 */
+	private synchronized ArchiveIndex getArchiveIndex() throws IOException {
+		if (archiveIndex == null && archiveIndexFileName.trim().length() > 0) {
+			archiveIndex = new ArchiveIndex(new File(archiveIndexFileName).toPath(),
+					Arrays.asList(new File(newsDirName).toPath(), new File(docDirName).toPath()));
+		}
+		return archiveIndex;
 	}
 
 	/** 
@@ -117,43 +391,108 @@ public class RenameFiles {
 		return defaultValue;
 	}
 
+	/**
+	 * Reads an integer value from configuration properties safely, i.e.
+	 * if the value is not set or not a number, the default value is returned instead.
+	 * 
+	 * @param config		the configuration properties
+	 * @param key			the key of the configuration attribute
+	 * @param defaultValue  the default value of the configuration attribute
+	 * @return              a valid integer configuration value, either from the properties or the default
+	 */
+	private int saveReadIntProperty(Properties config, String key, int defaultValue) {
+		String _value = config.getProperty(key);
+		if (_value != null) {
+			try {
+				return Integer.parseInt(_value.trim());
+			}
+			catch (NumberFormatException _ex) {
+				System.out.println("invalid value <" + _value + "> for " + key + ", using " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Static entry point of the program (main function). It instantiates a RenameFiles object,
 	 * parses the command line parameters, filters all pdf files in the source directory and executes 
 	 * the conversion function on each of the pdf files.
+	 * With threadCount &gt; 1, the conversions are executed concurrently (see {@link MovePipeline}).
+	 * With watchMode, the program keeps on running and converts new files as they arrive.
+	 * Conversions that were not finished by a previous (aborted) run are completed first (see {@link Journal}).
+	 * With a command, the archive index is queried instead (see {@link #query(String[])}),
+	 * a plan of the conversions is created or executed (see {@link #plan(String)}, {@link #execute(String)}),
+	 * the archive is moved to the destinations of the current rules (see {@link #relayout()}),
+	 * a compressed backup is checked (see {@link #verify(String)}), the classification service is run
+	 * (see {@link #serve()})
+	 * or the configuration is checked or written to a snapshot (see {@link ConfigSnapshot}).
 	 * @param args	the command line parameters (@see #printUsage()) for a list of valid arguments.
 	 */
 	public static void main(String[] args) {
 		try {
-			RenameFiles _renfiles = new RenameFiles();
-			File[] _fileList = _renfiles.selectFiles(_renfiles.getCurrentDirectory(), ".pdf"); // select all pdf files
-			for (int i = 0; i < _fileList.length; i++) {
-				if (_fileList[i].isFile()) {  // handle all files
-					_renfiles.convertPdfFile(_fileList[i]);
-				}
-				// else it is a directory
-			}
-			_renfiles.saveBentoBackups();
-			_renfiles.saveShakehandsBackups();
-			_renfiles.saveSoftwareFiles();
-			
-			// handle podcast files
-			// check the existance of the source and destination directory
-			File _podcastSrcDir = new File(podcastSrcDirName);
-			File _podcastDestDir = new File(podcastDestDirName);
-			if (_podcastSrcDir.exists() && _podcastDestDir.exists()) {
-				// apply the conversion for each podcast
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "10vor10", "10vor10_", "10vor10");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "DOK", "dok_", "Dok");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "ECO", "eco_", "Eco");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "Einstein", "einstein_", "Einstein");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "Giacobbo---M--ller", "giacobbomueller_", "GiacobboMueller");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "Kassensturz", "kassensturz_", "Kassensturz");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "Reporter", "reporter_", "Reporter");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "Tagesschau", "ts20_", "Tagesschau");
-				_renfiles.convertPodcast(_podcastSrcDir, _podcastDestDir, "TEDTalks--video-", "tedtalks", "tedtalks");
-			}
-			
+			String _propertiesFileName = "renfiles.properties";
+			String _snapshotFileName = null;
+			int _arg = 0;
+			for (; _arg < args.length && args[_arg].startsWith("-"); _arg += 2) {
+				if (_arg + 1 < args.length && args[_arg].equals("-c")) {
+					_propertiesFileName = args[_arg + 1];
+				}
+				else if (_arg + 1 < args.length && args[_arg].equals("-s")) {
+					_snapshotFileName = args[_arg + 1];
+				}
+				else {
+					printUsage();
+					return;
+				}
+			}
+			args = Arrays.copyOfRange(args, _arg, args.length);
+			ConfigSnapshot _config;
+			if (_snapshotFileName != null && new File(_snapshotFileName).exists()) {
+				_config = ConfigSnapshot.read(new File(_snapshotFileName).toPath());
+			}
+			else {
+				_config = ConfigSnapshot.fromFiles(_propertiesFileName);
+			}
+			RenameFiles _renfiles = new RenameFiles(_config);
+			if (_snapshotFileName != null && _config.isSnapshot() == false) {  // the configuration is valid
+				_config.write(new File(_snapshotFileName).toPath());
+			}
+			if (args.length == 2 && args[0].equals("snapshot")) {
+				_config.write(new File(args[1]).toPath());
+				System.out.println("configuration written to " + args[1]);
+				return;
+			}
+			if (args.length == 1 && args[0].equals("check")) {
+				_renfiles.check();
+				return;
+			}
+			if (args.length == 2 && args[0].equals("plan")) {
+				_renfiles.plan(args[1]);
+				return;
+			}
+			if (args.length == 2 && args[0].equals("execute")) {
+				_renfiles.execute(args[1]);
+				System.out.println("****** completed successfully **********");
+				return;
+			}
+			if (args.length == 1 && args[0].equals("serve")) {
+				_renfiles.serve();
+				return;
+			}
+			if (args.length == 2 && args[0].equals("verify")) {
+				_renfiles.verify(args[1]);
+				return;
+			}
+			if (args.length == 1 && args[0].equals("relayout")) {
+				_renfiles.relayout();
+				System.out.println("****** completed successfully **********");
+				return;
+			}
+			if (args.length > 0) {
+				_renfiles.query(args);
+				return;
+			}
+			_renfiles.run();
 			System.out.println("****** completed successfully **********");
 
 		}
@@ -166,530 +505,1368 @@ public class RenameFiles {
 
 	}
 
-	private void convertPodcast(File _podcastSrcDir, File _podcastDestDir, String podcastName, String prefix, String destName) throws IOException {
-		File _destF = null;
-		String _dateStr = null;
-		String _tags = "dNews"; // comma-separated list of tags
-		File _srcDir = new File(_podcastSrcDir, podcastName);
-
-		File[] _fileList = selectFiles(_srcDir, ".mp4"); // select all mp4 movie files
-		for (int i = 0; i < _fileList.length; i++) {
-			if (_fileList[i].isFile()) {  // handle all files
-				if (prefix.startsWith("tedtalks")) {
-					SimpleDateFormat _dateFormat = new SimpleDateFormat("yyyyMMdd");
-					_dateStr = _dateFormat.format(_fileList[i].lastModified()); 
-					_destF = new File(_podcastDestDir, destName + "/" + _dateStr + destName + _fileList[i].getName().substring(0, _fileList[i].getName().length()-10) + ".mp4");
-					_tags = "tTech";
-				} else {
-					_dateStr = _fileList[i].getName().substring(prefix.length(), prefix.length()+8);
-					_destF = new File(_podcastDestDir, destName.toLowerCase() + "/" + _dateStr + "sfdrs" + destName + ".mp4");
-				}				
-				if (testMode) {  // just print out what would be done
-					System.out.print("mv " + _fileList[i].getName() + " " + _destF.getCanonicalPath());
-					if (_tags != null && _tags.length() > 0) {
-						System.out.println(", adding tags: " + _tags);
-						if (debugMode) {
-							System.out.println("/usr/local/bin/tag -a " + _tags + " " + _destF.getCanonicalPath());
+	/**
+	 * Prints the valid command line parameters.
+	 */
+	private static void printUsage() {
+		System.out.println("usage: RenameFiles [-c <properties>] [-s <snapshot>] [command]");
+		System.out.println("       -c <properties>                  the configuration (default renfiles.properties)");
+		System.out.println("       -s <snapshot>                    start from a configuration snapshot, written first if it does not exist");
+		System.out.println("commands:");
+		System.out.println("       RenameFiles                      convert all files (see renfiles.properties)");
+		System.out.println("       RenameFiles untagged             list the archived files without finder tags");
+		System.out.println("       RenameFiles missing <dir> <year> list the days of a year without a file in dir (relative to newsDirName)");
+		System.out.println("       RenameFiles plan <file>          write the pdf and podcast conversions to a plan file, nothing is moved");
+		System.out.println("       RenameFiles execute <file>       execute the conversions of a plan file");
+		System.out.println("       RenameFiles relayout             move the archived pdf files to the destinations of the current rules");
+		System.out.println("       RenameFiles verify <file>        check a compressed backup (see backupCompression)");
+		System.out.println("       RenameFiles serve                answer classify and file requests on localhost:servicePort");
+		System.out.println("       RenameFiles snapshot <file>      write the validated configuration to a snapshot");
+		System.out.println("       RenameFiles check                check the configuration and the directories");
+	}
+
+	/**
+	 * Answers a query with the archive index (see {@link ArchiveIndex}); the index is reconciled first.
+	 * @param args	the query: <code>untagged</code> or <code>missing &lt;dir&gt; &lt;year&gt;</code>
+	 * @throws IOException
+	 */
+	public void query(String[] args) throws IOException {
+		ArchiveIndex _index = getArchiveIndex();
+		if (_index == null) {
+			System.out.println("no archiveIndexFileName configured");
+			return;
+		}
+		long _start = System.currentTimeMillis();
+		int _listed = _index.reconcile();
+		_index.save();
+		if (debugMode) {
+			System.out.println(_index.size() + " files indexed, " + _listed + " directories listed in " +
+					(System.currentTimeMillis() - _start) + " ms");
+		}
+		if (args[0].equals("untagged") && args.length == 1) {
+			List<File> _untagged = _index.getUntagged();
+			for (File _f : _untagged) {
+				System.out.println(_f.getPath());
+			}
+			System.out.println(_untagged.size() + " files without tags");
+		}
+		else if (args[0].equals("missing") && args.length == 3) {
+			File _dir = new File(args[1]).isAbsolute() ? new File(args[1]) : new File(newsDirName, args[1]);
+			List<Integer> _missing = _index.getMissingDays(_dir.toPath(), Integer.parseInt(args[2]));
+			for (int _date : _missing) {
+				System.out.println(DateParser.toString(_date));
+			}
+			System.out.println(_missing.size() + " days missing in " + _dir.getPath());
+		}
+		else {
+			printUsage();
+		}
+	}
+
+	/**
+	 * Converts all pdf, backup, software and podcast files once and then (in watchMode) keeps on
+	 * converting new files as they arrive.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException {
+		pipeline = new MovePipeline(threadCount, maxInFlight);
+		recoverJournal();
+		Map<Path, PodcastShow> _podcastDirs = new HashMap<Path, PodcastShow>();
+		DirectoryWatcher _watcher = watchMode ? createWatcher(_podcastDirs) : null;
+		convertSourceFiles(true);
+		saveBackups();
+		
+		// handle podcast files
+		convertPodcasts();
+		finishBatch(pipeline.drain());
+		checkStartup();
+		
+		if (_watcher != null) {  // keep on converting new files as they arrive
+			watch(_watcher, _podcastDirs);
+		}
+		pipeline.await();
+		claims.close();
+		if (journal != null) {
+			journal.close();
+		}
+		if (debugMode || fileMover.getCopyCount() > 0) {
+			System.out.println(fileMover.getSummary());
+			System.out.println(dirCache.getSummary());
+		}
+		writeMetrics();
+	}
+
+	/**
+	 * Creates a plan of all pdf and podcast conversions without moving any file (see {@link MovePlan}),
+	 * prints its conflicts and writes it to a file, where it can be reviewed before it is executed.
+	 * @param planFileName	the plan file
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void plan(String planFileName) throws IOException, InterruptedException {
+		plan = new MovePlan();
+		pipeline = new MovePipeline(threadCount, maxInFlight);
+		convertSourceFiles(false);
+		convertPodcasts();
+		for (String _failure : pipeline.await()) {
+			System.out.println(_failure);
+		}
+		printReport();
+		if (journal != null) {
+			journal.close();
+		}
+		List<String> _conflicts = plan.getConflicts();
+		for (String _conflict : _conflicts) {
+			System.out.println("conflict: " + _conflict);
+		}
+		plan.save(new File(planFileName).toPath());
+		System.out.println(plan.size() + " conversions with " + _conflicts.size() + " conflicts written to " + planFileName);
+	}
+
+	/**
+	 * Executes the conversions of a plan file (see {@link #plan(String)}); the files are not classified again.
+	 * Conversions to an existing destination fail and keep their source.
+	 * @param planFileName	the plan file
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void execute(String planFileName) throws IOException, InterruptedException {
+		MovePlan _plan = MovePlan.load(new File(planFileName).toPath());
+		for (String _conflict : _plan.getConflicts()) {
+			System.out.println("conflict: " + _conflict);
+		}
+		pipeline = new MovePipeline(threadCount, maxInFlight);
+		recoverJournal();
+		for (MovePlan.Operation _op : _plan.sort()) {
+			if (_op.getSource().isFile()) {
+				pipeline.submit(new PlanTask(_op));
+			}
+			else {
+				System.out.println(_op.getSource().getPath() + " not found, skipped");
+			}
+		}
+		finishBatch(pipeline.drain());
+		checkStartup();
+		pipeline.await();
+		if (journal != null) {
+			journal.close();
+		}
+		if (debugMode || fileMover.getCopyCount() > 0) {
+			System.out.println(fileMover.getSummary());
+			System.out.println(dirCache.getSummary());
+		}
+		writeMetrics();
+	}
+
+	/**
+	 * Moves the archived pdf files (in newsDirName and docDirName) to the destinations of the current rules,
+	 * e.g. after the destPath of a rule was changed (see {@link ArchiveRelayout}): the archive is walked by
+	 * relayoutThreadCount threads, the moves are applied in batches of at most relayoutBatchSize files per
+	 * destination directory, with a journal checkpoint and a progress line after each batch (at most one per second).
+	 * In testMode, the moves are only printed.
+	 * @throws IOException
+	 */
+	public void relayout() throws IOException {
+		recoverJournal();
+		ArchiveRelayout _relayout = new ArchiveRelayout(ruleEngine, pdfFiles, relayoutThreadCount);
+		long _start = System.nanoTime();
+		MovePlan _plan = _relayout.plan(Arrays.asList(new File(newsDirName).toPath(), new File(docDirName).toPath()));
+		long _nanos = System.nanoTime() - _start;
+		metrics.record("relayout_plan", _nanos);
+		System.out.println(_relayout.getFileCount() + " files in " + _relayout.getDirCount() + " directories checked in " +
+				(_nanos / 1000000) + " ms (" + rate(_relayout.getFileCount(), _nanos) + " files/s), " +
+				_plan.size() + " files to move");
+		for (String _conflict : _plan.getConflicts()) {
+			System.out.println("conflict: " + _conflict);
+		}
+		List<MovePlan.Operation> _operations = _plan.sort();
+		if (testMode) {
+			for (MovePlan.Operation _op : _operations) {
+				System.out.println("mv " + _op.getSource().getPath() + " " + _op.getDestination().getPath());
+			}
+			_relayout.shutdown();
+			return;
+		}
+		final DuplicateDetector _duplicates = getDuplicates();
+		_start = System.nanoTime();
+		ArchiveRelayout.Result _result = _relayout.apply(_operations, relayoutBatchSize, journal,
+				new ArchiveRelayout.Progress() {
+			private long lastReport = 0;
+
+			public void moved(File src, File dest) {
+				if (_duplicates != null) {
+					_duplicates.added(src, dest);
+				}
+				if (debugMode) {
+					System.out.println("mv " + src.getPath() + " " + dest.getPath());
+				}
+			}
+
+			public void checkpoint(int done, int total, long nanos) {
+				if (nanos - lastReport >= 1000000000L && done < total) {
+					lastReport = nanos;
+					System.out.println("relayout: " + done + " of " + total + " files (" + (done * 100L / total) + "%), " +
+							rate(done, nanos) + " files/s");
+				}
+			}
+		});
+		_nanos = System.nanoTime() - _start;
+		_relayout.shutdown();
+		metrics.record("relayout_apply", _nanos);
+		metrics.setGauge("relayout_moved", _result.getMoved());
+		metrics.setGauge("relayout_existing", _result.getExisting());
+		metrics.setGauge("relayout_other_volume", _result.getOtherVolume());
+		metrics.setGauge("relayout_failed", _result.getFailures().size());
+		finishBatch(_result.getFailures());
+		System.out.println(_result.getMoved() + " files moved in " + (_nanos / 1000000) + " ms (" +
+				rate(_result.getMoved(), _nanos) + " files/s), " + _result.getExisting() + " skipped (destination exists), " +
+				_result.getOtherVolume() + " skipped (other volume), " + _result.getFailures().size() + " failed");
+		if (journal != null) {
+			journal.close();
+		}
+		writeMetrics();
+	}
+
+	/**
+	 * @return	the number of items per second
+	 */
+	private static long rate(long count, long nanos) {
+		return count * 1000000000L / Math.max(1, nanos);
+	}
+
+	/**
+	 * Runs the classification service (see {@link ClassificationService}) on servicePort of the loopback address
+	 * until the program is stopped; the rules stay loaded in memory. Conversions that were not finished by a
+	 * previous run are completed first.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void serve() throws IOException, InterruptedException {
+		recoverJournal();
+		final ClassificationService _service = new ClassificationService(servicePort, serviceThreadCount,
+				new ClassificationService.Backend() {
+			public Classification classify(String name) {
+				return classifyName(name);
+			}
+
+			public List<String> file(List<File> files) {
+				return fileNow(files);
+			}
+		}, metrics);
+		final CountDownLatch _stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread("renfiles-service-stop") {
+			public void run() {
+				_service.stop();
+				synchronized (RenameFiles.this) {  // no conversion is in progress
+					claims.close();
+					if (journal != null) {
+						try {
+							journal.close();
+						}
+						catch (IOException _ex) {
+							System.out.println("******** failed to close the journal with " + _ex.toString() + "*********");
 						}
 					}
-					else { 
-						System.out.println(", no tags added");
+					writeMetrics();
+				}
+				_stopped.countDown();
+			}
+		});
+		_service.start();
+		System.out.println("classification service listening on " + _service.getAddress());
+		_stopped.await();
+	}
+
+	/**
+	 * Determines the destination of a file name without accessing the file (for the classification service):
+	 * a pdf file name by the rule table, a podcast file given as folder/name by the rule of its show.
+	 * @param name	the file name
+	 * @return		the destination or null if no rule applies
+	 */
+	private Classification classifyName(String name) {
+		int _slash = name.lastIndexOf('/');
+		if (_slash < 0) {
+			return ruleEngine.classify(name);
+		}
+		String _folder = name.substring(0, _slash);
+		for (PodcastShow _show : podcastShows) {
+			if (_show.getFolder().equals(_folder)) {
+				return _show.classify(new File(new File(podcastSrcDirName, _folder), name.substring(_slash + 1)));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Converts files now (for the classification service): a file within the folder of a podcast show by the rule
+	 * of the show, a file within srcDirName as pdf file; other files are not converted. The finder tags are added
+	 * before the method returns.
+	 * @param files	the files to convert
+	 * @return		one line per file: the destination or - and the reason why the file was not moved
+	 */
+	private synchronized List<String> fileNow(List<File> files) {
+		List<String> _lines = new ArrayList<String>();
+		List<String> _failures = new ArrayList<String>();
+		for (File _f : files) {
+			if (_f.isFile() == false) {
+				_lines.add("- not found");
+				continue;
+			}
+			PodcastShow _show = null;
+			try {
+				File _dir = _f.getAbsoluteFile().getParentFile().getCanonicalFile();
+				for (PodcastShow _candidate : podcastShows) {
+					if (new File(podcastSrcDirName, _candidate.getFolder()).getCanonicalFile().equals(_dir)) {
+						_show = _candidate;
 					}
 				}
-				else {  // execute the conversion
-					new File(_podcastDestDir, destName.toLowerCase()).mkdirs();
-					if (_fileList[i].renameTo(_destF) == true) {
-						if (_tags != null && _tags.length() > 0) {
-							Runtime.getRuntime().exec("/usr/local/bin/tag -a " + _tags + " " + _destF.getCanonicalPath());
+				if (_show == null && _dir.equals(workDir) == false) {
+					_lines.add("- not in srcDirName or the folder of a podcast show");
+					continue;
+				}
+				if (claim(_f) == false) {
+					_lines.add("- claimed by another instance");
+					continue;
+				}
+			}
+			catch (IOException _ex) {
+				_lines.add("- failed with " + _ex.toString());
+				continue;
+			}
+			try {
+				long _start = System.nanoTime();
+				Classification _result = (_show == null) ? classifyPdfFile(_f) : classifyPodcast(_f, _show);
+				metrics.record("classify", System.nanoTime() - _start);
+				if (_result == null) {
+					metrics.increment("unrecognized_files", null, null);
+					_lines.add("- not recognized");
+					continue;
+				}
+				File _destF = moveFile(_f, _result);
+				_lines.add(_destF == null ? "- not moved (duplicate or failure, see the log)" : _destF.getPath());
+			}
+			catch (IOException _ex) {
+				_failures.add("conversion of " + _f.getName() + " failed with " + _ex.toString());
+				_lines.add("- failed with " + _ex.toString());
+			}
+			finally {
+				claims.release(_f);
+			}
+		}
+		finishBatch(_failures);
+		return _lines;
+	}
+
+	/**
+	 * Checks the configuration: prints the number of rules, podcast shows, backup sources and pdf metadata rules
+	 * and the configured directories that do not exist.
+	 */
+	public void check() {
+		System.out.println(ruleEngine.size() + " rules, " + podcastShows.size() + " podcast shows, " +
+				backupSources.size() + " backup sources, " + pdfMetaRules.size() + " pdf metadata rules");
+		String[] _dirNames = { srcDirName, docDirName, newsDirName, podcastSrcDirName, podcastDestDirName };
+		for (String _dirName : _dirNames) {
+			if (new File(_dirName).isDirectory() == false) {
+				System.out.println("directory " + _dirName + " does not exist");
+			}
+		}
+	}
+
+	/**
+	 * Measures the cold start, i.e. the time from the start of the JVM to the first converted file, and reports it
+	 * if it exceeds startupBudgetMillis. The start time of the JVM is only requested after the first file,
+	 * so that the management classes are not loaded before.
+	 */
+	private void checkStartup() {
+		long _first = firstFileMillis.get();
+		if (_first == 0) {
+			return;
+		}
+		long _startup = _first - ManagementFactory.getRuntimeMXBean().getStartTime();
+		metrics.setGauge("startup_millis", _startup);
+		boolean _exceeded = startupBudgetMillis > 0 && _startup > startupBudgetMillis;
+		if (debugMode || _exceeded) {
+			System.out.println("first file converted " + _startup + " ms after the start" +
+					(_exceeded ? ", exceeds the budget of " + startupBudgetMillis + " ms" : ""));
+		}
+	}
+
+	/**
+	 * Writes the metrics of the run so far (see {@link Metrics}) to the configured JSON and Prometheus files.
+	 */
+	private void writeMetrics() {
+		metrics.set("renamed_files", fileMover.getRenameCount());
+		metrics.set("copied_files", fileMover.getCopyCount());
+		metrics.set("copied_bytes", fileMover.getBytesCopied());
+		metrics.setGauge("tagged_files", tagQueue.getTaggedCount());
+		metrics.setGauge("tag_calls", tagQueue.getCallCount());
+		metrics.setGauge("dir_cache_hits", dirCache.getHitCount());
+		metrics.setGauge("dir_cache_misses", dirCache.getMissCount());
+		try {
+			if (metricsJsonFile.trim().length() > 0) {
+				metrics.writeJson(new File(metricsJsonFile).toPath());
+			}
+			if (metricsPromFile.trim().length() > 0) {
+				metrics.writePrometheus(new File(metricsPromFile).toPath());
+			}
+		}
+		catch (IOException _ex) {
+			System.out.println("******** failed to write the metrics with " + _ex.toString() + "*********");
+		}
+	}
+
+	/**
+	 * Completes the conversions that were not finished by the previous run: files that were planned but not
+	 * moved are moved (or marked as moved if only the destination exists), moved files are queued for tagging.
+	 * Conversions where both or none of the files exist are abandoned and must be checked manually.
+	 */
+	private void recoverJournal() {
+		if (journal == null) {
+			return;
+		}
+		List<Journal.Entry> _entries = journal.getUnfinished();
+		if (_entries.isEmpty()) {
+			return;
+		}
+		System.out.println("****** resuming " + _entries.size() + " unfinished conversions **********");
+		for (Journal.Entry _entry : _entries) {
+			File _src = _entry.getSource();
+			File _destF = _entry.getDestination();
+			try {
+				if (_entry.getState() == Journal.PLANNED) {
+					if (_src.exists() && _destF.exists() == false) {
+						getDestinationDirectory(_destF.getParent());
+						try {
+							fileMover.move(_src, _destF);
 						}
+						catch (FileMover.SourceKeptException _ex) {  // the conversion is complete nevertheless
+							System.out.println("resuming conversion of " + _src.getName() + ": " + _ex.getMessage());
+						}
+						report("mv " + _src.getName() + " " + _destF.getPath() + " (resumed)");
 					}
-					else {
-						System.out.println("conversion of " + _fileList[i].getName() + " failed.");
+					else if (_src.exists() || _destF.exists() == false) {
+						System.out.println("conversion of " + _src.getName() + " to " + _destF.getPath() + 
+								" can not be resumed, please check");
+						journal.failed(_destF);
+						continue;
 					}
+					journal.moved(_destF);
+				}
+				if (_entry.getTags() != null) {
+					tagQueue.add(_destF, _entry.getTags());
+				}
+			}
+			catch (IOException _ex) {
+				System.out.println("resuming conversion of " + _src.getName() + " failed with " + _ex.toString());
+			}
+		}
+		finishBatch(Collections.<String>emptyList());
+	}
+
+	/**
+	 * Prints the report and the failures of a batch of conversions and adds the finder tags to all moved files.
+	 * @param failures	the failures of the conversions
+	 */
+	private void finishBatch(List<String> failures) {
+		printReport();
+		for (String _failure : failures) {
+			System.out.println(_failure);
+		}
+		
+		// add the finder tags to all moved files, one backend call per tag set
+		for (String _failure : tagQueue.flush()) {
+			System.out.println(_failure);
+		}
+		if (journal != null) {
+			try {
+				journal.checkpoint();
+			}
+			catch (IOException _ex) {
+				System.out.println("******** failed to write the journal with " + _ex.toString() + "*********");
+			}
+		}
+		// the duplicate index describes the archive only (nothing is added in a dry run); it is saved in a dry run
+		// as well, so that the next run does not walk the archive again
+		if (duplicates != null) {
+			try {
+				duplicates.save();
+			}
+			catch (IOException _ex) {
+				System.out.println("******** failed to write the duplicate index with " + _ex.toString() + "*********");
+			}
+		}
+		if (archiveIndex != null && isDryRun() == false) {
+			try {
+				archiveIndex.save();
+			}
+			catch (IOException _ex) {
+				System.out.println("******** failed to write the archive index with " + _ex.toString() + "*********");
+			}
+		}
+		writeMetrics();
+		if (debugMode) {
+			System.out.println(tagQueue.getTaggedCount() + " files tagged with " + 
+					tagQueue.getCallCount() + " calls of " + tagBackend);
+		}
+	}
+
+	/**
+	 * Registers the source directory and the podcast directories with a {@link DirectoryWatcher}. This is done
+	 * before the first batch, so that the files that arrive while the batch is running are not missed; a file
+	 * that is converted by the batch is removed and therefore no longer reported by the watcher.
+	 * @param podcastDirs	receives the watched podcast directories and their shows
+	 * @return				the watcher
+	 * @throws IOException
+	 */
+	private DirectoryWatcher createWatcher(Map<Path, PodcastShow> podcastDirs) throws IOException {
+		DirectoryWatcher _watcher = new DirectoryWatcher(watchSettleMillis);
+		_watcher.register(workDir.toPath());
+		File _podcastSrcDir = new File(podcastSrcDirName);
+		File _podcastDestDir = new File(podcastDestDirName);
+		if (_podcastSrcDir.exists() && _podcastDestDir.exists()) {
+			for (PodcastShow _show : podcastShows) {
+				File _dir = new File(_podcastSrcDir, _show.getFolder());
+				if (_dir.isDirectory()) {
+					_watcher.register(_dir.toPath());
+					podcastDirs.put(_dir.toPath(), _show);
 				}
 			}
-			// else it is a directory 
 		}
+		return _watcher;
 	}
 
 	/**
-	 * Converts a pdf file in the source directory to a file with a different
-	 * name in the destination directory and adds some finder tags.
-	 * @param f		the pdf file to convert
+	 * Watches the source directory and the podcast directories (see {@link DirectoryWatcher}) and
+	 * converts each pdf, dmg and podcast file as soon as it is complete. Runs until the program is stopped.
+	 * Only the name criteria of the filters apply, as the watcher waits until a file is complete anyway.
+	 * @param watcher		the watcher (see {@link #createWatcher(Map)})
+	 * @param podcastDirs	the watched podcast directories and their shows
 	 * @throws IOException
+	 * @throws InterruptedException
 	 */
-	private void convertPdfFile(File f) throws IOException {
-		String _destFN = "";
-		String _tags = "dNews"; // comma-separated list of tags
-		String _destDirName = null; // base destination directory
-		String _dateStr = null;
-
-		// handle each file type
-		// TODO: externalize this into the configuration and make it generic
-		// example:   search criteria, srcDateType, destfile extension, destpath extension
-		// NZZS, NZZ, 20min: prefix,  yyyyMMdd, postfix,  subdir
-		// ZSZ: postfix, yyyyMMdd, postfix, subdir
-		// Tagi, Soze:  prefix, yyyy-MM-dd, postfix, subdir
-		// ic, mmb, awuz etc.: prefixDate, yyyyMMdd, subDir | subDiryyyy | subDiryyyyMM
-
-		// overall:
-		// search criteria:  prefixString, postfixString, prefixDate:prefixString
-		// srcDateType:     yyyyMMdd, yyyy-MM-dd
-		// destFile extension:  postfixStr, srcString
-		// destPath extension:  subDir, SubDiryyyy, subDiryyyyMM
-
-		if (f.getName().startsWith("NZZS_")) { // NZZ am Sonntag epaper
-			_destFN = f.getName().substring(5, 13) + "nzzs.pdf";
-			_destDirName = newsDirName + File.separator + "nzzs" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().startsWith("NZZ_")) {  // NZZ epaper
-			_destFN = f.getName().substring(4,12) + "nzz.pdf";	
-			_destDirName = newsDirName + File.separator + "nzz" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().endsWith("_zsr.pdf")) {  // Zürichsee Zeitung epaper
-			_destFN = f.getName().substring(0, 8) + "zsz.pdf";	
-			_destDirName = newsDirName + File.separator + "zsz" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().startsWith("ZH_")) {  // 20 Minuten epaper
-			_destFN = f.getName().substring(3,11) + "_20min.pdf";	
-			_destDirName = newsDirName + File.separator + "20min" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().startsWith("taz-ges-")) {  // Tages-Anzeiger epaper
-			_destFN = f.getName().substring(8,12) + 
-					f.getName().substring(13, 15) +
-					f.getName().substring(16, 18) + "tagesanzeiger.pdf";	
-			_destDirName = newsDirName + File.separator + "tagesanzeiger" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().startsWith("sonze-")) {  // Sonntagszeitung epaper
-			_destFN = f.getName().substring(6,10) + 
-					f.getName().substring(11, 13) +
-					f.getName().substring(14, 16) + "sonntagszeitung.pdf";	
-			_destDirName = newsDirName + File.separator + "sonntagszeitung" + File.separator + _destFN.substring(0, 4);
-		}
-		else if (f.getName().startsWith("EQUITY_")) {  // NZZ Equity
-			_destFN = f.getName().substring(7,15) + "nzzEquity.pdf";	
-			_destDirName = newsDirName + File.separator + "nzzEquity";
-		}
-		else if (f.getName().startsWith("FOLIO_")) {  // NZZ Folio
-			_destFN = f.getName().substring(6,14) + "nzzFolio.pdf";	
-			_destDirName = newsDirName + File.separator + "nzzFolio";
-		}
-		else if (f.getName().startsWith("GESE_")) {  // NZZ Gesellschaft
-			_destFN = f.getName().substring(5,13) + "nzzGesellschaft.pdf";	
-			_destDirName = newsDirName + File.separator + "nzzGesellschaft";
-		}
-		else if (f.getName().startsWith("communications")) {	// ACM Communications
-			_destFN = f.getName().substring(14,20) + "00acmCommunications.pdf";
-			_destDirName = newsDirName + File.separator + 
-					File.separator + "acmCommunications"  + File.separator + _destFN.substring(0, 4);
-			_tags = "oAcm,dMagazine,tTech";
-		}
-		else if (f.getName().startsWith("compw-")) {
-			_destFN = f.getName().substring(6, 10) + 
-					f.getName().substring(11, 13) +
-					f.getName().substring(14, 16) + "computerworld.pdf";
-			_destDirName = newsDirName + File.separator + "computerworld" + File.separator + _destFN.substring(0, 4);
-			_tags = "dNews,tTech";
-		}
-		else if (f.getName().startsWith("input_gl")) {
-			String _userName = "";
-			String _meetDate = "";
-			String[] _token = f.getName().split("_");
-			for (int i = 0; i < _token.length; i++) {
-				if (_token[i].equalsIgnoreCase("toms")) _userName = "Toms";
-				else if (_token[i].equalsIgnoreCase("kornel")) _userName = "Kornel";
-				else if (_token[i].equalsIgnoreCase("ksh")) _userName = "Kornel";
-				else if (_token[i].equalsIgnoreCase("christof")) _userName = "Christof";
-				else if (_token[i].equalsIgnoreCase("cdo")) _userName = "Christof";
-				else if (_token[i].equalsIgnoreCase("christian")) _userName = "Christian";
-				else if (_token[i].equalsIgnoreCase("crw")) _userName = "Christian";
-				else if (_token[i].equalsIgnoreCase("bruno")) _userName = "Bruno";
-				else if (_token[i].equalsIgnoreCase("bka")) _userName = "Bruno";
-				else if (_token[i].length() == 12 && _token[i].startsWith("2")) _meetDate = _token[i].substring(0,8);
-				else {
+	private void watch(DirectoryWatcher watcher, final Map<Path, PodcastShow> podcastDirs) throws IOException, InterruptedException {
+		final Path _srcDir = workDir.toPath();
+		System.out.println("****** watching " + (podcastDirs.size() + 1) + " directories **********");
+		watcher.run(new DirectoryWatcher.Listener() {
+			public void filesReady(List<Path> files) throws IOException, InterruptedException {
+				for (Path _file : files) {
 					if (debugMode) {
-						System.out.println("token not recognized: " + _token[i]);
+						System.out.println("ready: " + _file);
+					}
+					PodcastShow _show = podcastDirs.get(_file.getParent());
+					if (_file.getParent().equals(_srcDir)) {
+						if (pdfFiles.accept(_file)) {
+							pipeline.submit(new ConvertTask(_file.toFile()));
+						}
+						else if (softwareFiles.accept(_file)) {
+							saveSoftwareFile(_file.toFile());
+						}
+					}
+					else if (_show != null && podcastFiles.accept(_file)) {
+						pipeline.submit(new ConvertTask(_file.toFile(), _show));
 					}
 				}
+				finishBatch(pipeline.drain());
 			}
-			_destFN = _meetDate + "glinput" + _userName + ".pdf";
-			_destDirName = docDirName + File.separator + 
-					"business" + File.separator + 
-					"adnovum" + File.separator +
-					"meet" + File.separator + 
-					"gl" + File.separator + 
-					_destFN.substring(0, 4) + File.separator +
-					_meetDate + "glmeet";
-			_tags = "oAdnovum,dMinutes,lZuerich";
-		}
-		else if (f.getName().startsWith("kw")) {
-			String _meetDate = f.getName().substring(13, 21);
-			_destFN = _meetDate + "mmgl.pdf";
-			_destDirName = docDirName + File.separator + 
-					"business" + File.separator + 
-					"adnovum" + File.separator +
-					"meet" + File.separator + 
-					"gl" + File.separator + 
-					_destFN.substring(0, 4) + File.separator +
-					_meetDate + "glmeet";
-			_tags = "oAdnovum,dMinutes,lZuerich";
-		}
-		else if ((_dateStr = getLeadingDateFromString(f.getName())) != null) { // file name starts with date
-			_destFN = f.getName();
-			if (f.getName().substring(8).startsWith("ic") && _dateStr.length()>=6) {		// Inside Channels
-				_destDirName = newsDirName + File.separator + 
-						"insideChannels" + File.separator + 
-						_dateStr.substring(0, 4) + File.separator + 
-						_dateStr.substring(4,6);
-				_tags = "dNews,tTech";
-			}
-			else if (f.getName().substring(8).startsWith("rg") && _dateStr.length()>=6) {		// Rechnung / Bill
-				_destDirName = docDirName + File.separator + 
-						"finance" + File.separator +
-						"rechnungen" + File.separator +
-						f.getName().substring(0, 4);
-				_tags = "tFinance,dBill";
-			}
-			else if (f.getName().substring(8).startsWith("zkb") && _dateStr.length()>=6) {		// ZKB
-				_destDirName = docDirName + File.separator + 
-						"finance" +  File.separator +
-						"bank" +  File.separator +
-						"zkbPriv";
-				_tags = "tFinance,dBill,oZkb";
-			}
-			else if (f.getName().substring(8).startsWith("pf") && _dateStr.length()>=6) {		// PostFinance
-				_destDirName = docDirName + File.separator + 
-						"finance" +  File.separator +
-						"bank" +  File.separator +
-						"pfBruno";				
-				_tags = "tFinance,dBill,oPost";
-			}
-			else if (f.getName().substring(8).startsWith("lohn") && _dateStr.length()>=6) {		// Lohn / Salary
-				_destDirName = docDirName + File.separator + 
-						"finance" +  File.separator + "lohn";
-				_tags = "tFinance,dStatement";
-			}
-			else if (f.getName().substring(8).startsWith("slkk") && _dateStr.length()>=6) {		// SLKK
-				_destDirName = docDirName + File.separator + 
-						"finance" + File.separator +
-						"versicherungen";
-				_tags = "tFinance,tInsurance,oSlkk";
-			}
-			else if (f.getName().substring(8).startsWith("diary") && _dateStr.length()>=6) {	// diary
-				_destDirName = docDirName + File.separator + 
-						"diary" + File.separator +
-						"201x" + File.separator +
-						f.getName().substring(0, 4) + File.separator +
-						f.getName().substring(4, 6);
-				_tags = "oBruno,dDiary";
-			}
-			else if (f.getName().substring(8).startsWith("abstract_") && _dateStr.length()>=4) {	// abstracts
-				_destDirName = docDirName + File.separator + 
-						"abstract" + File.separator +
-						_dateStr.substring(0,4);	
-				_tags = "dAbstract";
-			}
-			else if (f.getName().substring(8).startsWith("kof") && _dateStr.length()>=6) {	// KOF reports
-				_destDirName = newsDirName + File.separator + "kofBulletin";	
-				_tags = "dReport,tEco";
-			}
-			else if (f.getName().substring(8).startsWith("book") && _dateStr.length()>=6) {	// ebook
-				_destDirName = docDirName + File.separator + 
-						"temp" + File.separator +
-						"topics";	
-				_tags = "dBook";
-			}
-			else if (f.getName().substring(8).startsWith("sise") && _dateStr.length()>=6) {		// SI-SE
-				_destDirName = docDirName + File.separator + "siseItgse";
-				_tags = "oSise";
-			}
-			else if (f.getName().substring(8).startsWith("awuz") && _dateStr.length()>=6) {		// AWUZ
-				_destDirName = docDirName + File.separator + "awuz";	
-				_tags = "oAwuzUzha";
-			}
-			else if (f.getName().substring(8).startsWith("informatikSpektrum") && _dateStr.length()>=6) {		// Informatik Spektruml
-				_destDirName = newsDirName + File.separator + 
-						"informatikSpektrum" + File.separator +
-						f.getName().substring(0, 4);	
-				_tags = "tTech,dArticle";
-			}
-			else if (f.getName().toLowerCase().endsWith("pres.pdf")) {						// presentation
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dPres";
-			}
-			else if (f.getName().substring(8).startsWith("itc") && _dateStr.length()>=6) {		// IT consulting contract
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dContract,dItc";
-			}
-			else if (f.getName().substring(8).startsWith("swd") && _dateStr.length()>=6) {		// SW development contract
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dContract,dSwd";
-			}
-			else if (f.getName().substring(8).startsWith("sla") && _dateStr.length()>=6) {		// maintenance contract
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dContract,dSla";
-			}
-			else if (f.getName().substring(8).startsWith("nda") && _dateStr.length()>=6) {		// non disclosure agreement
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dContract,dNda";
-			}
-			else if (f.getName().substring(8).startsWith("offer") && _dateStr.length()>=6) {		// proposal
-				_destDirName = docDirName + File.separator + "temp";
-				_tags = "dContract,dOffer";
-			}
-
-			else {  // there is a leading date, but no special meaning
-				if (debugMode) {
-					System.out.println(f.getName() + " has leading date, but no meaning -> moving to temp without tags");
+		});
+	}
+
+	/**
+	 * Converts all pdf files and (with software) saves all software files of the source directory in one pass
+	 * over the directory (see {@link DirectoryScanner.Router}).
+	 * @param software	true if the software files are saved as well
+	 * @throws InterruptedException
+	 */
+	private void convertSourceFiles(boolean software) throws InterruptedException {
+		final NameTable _names = batchClassify ? new NameTable(1024) : null;
+		DirectoryScanner.Router _router = new DirectoryScanner.Router();
+		_router.add(pdfFiles, new DirectoryScanner.Visitor() {  // select all pdf files
+			public void visit(Path path, BasicFileAttributes attrs) throws IOException, InterruptedException {
+				if (attrs.isRegularFile() == false) {  // it is a directory
+					return;
+				}
+				if (_names != null) {  // collect the name, classified after the scan
+					_names.add(path.getFileName().toString());
+				}
+				else {
+					pipeline.submit(new ConvertTask(path.toFile()));
 				}
-				_destDirName = docDirName + File.separator + "temp";  // move file as is, do not add tags
-				_tags = null;
 			}
+		});
+		if (software) {
+			_router.add(softwareFiles, new DirectoryScanner.Visitor() {  // select all software files
+				public void visit(Path path, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()) {  // handle all files
+						saveSoftwareFile(path.toFile());
+					}
+					// else it is a directoy
+				}
+			});
+		}
+		if (selectFiles(getCurrentDirectory(), _router) >= 0 && _names != null) {
+			convertPdfFilesBatch(_names);
+		}
+	}
 
+	/**
+	 * Converts the pdf files of the source directory in batch mode, e.g. for a directory with millions of files:
+	 * the names are collected in a {@link NameTable} and classified in place into a rule index and a date per
+	 * name; Strings, Files and destinations are only created for the files that are converted.
+	 * @param names	the names of the pdf files
+	 * @throws InterruptedException
+	 */
+	private void convertPdfFilesBatch(NameTable names) throws InterruptedException {
+		File _dir = getCurrentDirectory();
+		long _start = System.nanoTime();
+		int[] _rules = new int[names.size()];
+		int[] _dates = new int[names.size()];
+		int[] _date = new int[1];
+		long[] _candidates = ruleEngine.newCandidates();
+		NameTable.Cursor _cursor = names.cursor();
+		for (int i = 0; i < _rules.length; i++) {
+			_rules[i] = ruleEngine.match(_cursor.load(i), 0, _date, _candidates);
+			_dates[i] = _date[0];
 		}
-		else {		// _dateStr = null, i.e. no leading date found; such a file is not moved, needs to be renamed first
-			if (debugMode) {
-				System.out.println("not recognized: " + f.getName());
+		metrics.record("classify_batch", System.nanoTime() - _start);
+		if (debugMode) {
+			System.out.println(names.size() + " names (" + names.getByteCount() + " bytes) classified in " +
+					(System.nanoTime() - _start) / 1000000 + " ms");
+		}
+		for (int i = 0; i < _rules.length; i++) {
+			if (_rules[i] < 0 && pdfMetaRules.isEmpty()) {  // no rule applies; such a file is not moved, needs to be renamed first
+				metrics.increment("unrecognized_files", null, null);
+				if (debugMode) {
+					System.out.println("not recognized: " + _cursor.load(i));
+				}
+				continue;
+			}
+			String _name = names.getString(i);
+			Classification _result = null;  // no rule applies: classified by its metadata in the pipeline
+			if (_rules[i] >= 0) {
+				_result = ruleEngine.apply(_rules[i], _name, _name, _dates[i]);
+				if (debugMode) {
+					System.out.println(_name + " matches rule <" + _result.getRule().getName() + ">");
+				}
+			}
+			try {
+				pipeline.submit(new ConvertTask(new File(_dir, _name), _result));
+			}
+			catch (IOException _ex) {
+				System.out.println("conversion of " + _name + " failed with " + _ex.toString());
 			}
-			_destFN = "";
 		}
+	}
 
-		if (_destFN.isEmpty() == false) { // convert only known files
-			// create all parent directories if they do not already exist
-			if (debugMode) { // just print out what would be done
-				System.out.println("mkdir " + new File(_destDirName).getCanonicalPath());
-			}
-			if (testMode == false) {
-				new File(_destDirName).mkdirs(); 			
+	/**
+	 * @return	true if no file is changed, i.e. in testMode or while a plan is created
+	 */
+	private boolean isDryRun() {
+		return testMode || plan != null;
+	}
+
+	/**
+	 * The conversion of a pdf or podcast file, executed by the {@link MovePipeline}.
+	 */
+	private class ConvertTask extends MovePipeline.Task {
+		private final File file;
+		private final PodcastShow show;
+		private Classification result = null;
+
+		/**
+		 * Constructor for a pdf file.
+		 * @param f		the pdf file to convert
+		 */
+		private ConvertTask(File f) {
+			this(f, (PodcastShow) null);
+		}
+
+		/**
+		 * Constructor for a pdf file that was already classified (see {@link #convertPdfFilesBatch(NameTable)}).
+		 * @param f			the pdf file to convert
+		 * @param result	the destination of the file or null if it is classified by the task
+		 */
+		private ConvertTask(File f, Classification result) {
+			this(f, (PodcastShow) null);
+			this.result = result;
+		}
+
+		/**
+		 * Constructor for a podcast file.
+		 * @param f		the podcast file to convert
+		 * @param show	the podcast show of the file
+		 */
+		private ConvertTask(File f, PodcastShow show) {
+			this.file = f;
+			this.show = show;
+		}
+
+		protected String classify() {
+			if (claim(file) == false) {
+				return null;
 			}
-			File _destF = new File(_destDirName + "/" + _destFN);
-			if (testMode) {  // just print out what would be done
-				System.out.print("mv " + f.getName() + " " + _destF.getCanonicalPath());
-				if (_tags != null && _tags.length() > 0) {
-					System.out.println(", adding tags: " + _tags);
-					if (debugMode) {
-						System.out.println("/usr/local/bin/tag -a " + _tags + " " + _destF.getCanonicalPath());
+			try {
+				if (result == null) {  // not yet classified in a batch
+					long _start = System.nanoTime();
+					result = (show == null) ? classifyPdfFile(file) : classifyPodcast(file, show);
+					metrics.record("classify", System.nanoTime() - _start);
+					if (result == null) {
+						metrics.increment("unrecognized_files", null, null);
 					}
 				}
-				else { 
-					System.out.println(", no tags added");
+			}
+			finally {
+				if (result == null) {  // nothing to execute
+					claims.release(file);
 				}
 			}
-			else {  // execute the conversion
-				if (f.renameTo(_destF) == true) {
-					if (_tags != null && _tags.length() > 0) {
-						Runtime.getRuntime().exec("/usr/local/bin/tag -a " + _tags + " " + _destF.getCanonicalPath());
+			return result == null ? null : result.getDestDirName();
+		}
+
+		protected void execute() throws IOException {
+			try {
+				moveFile(file, result);
+			}
+			finally {
+				claims.release(file);
+			}
+		}
+
+		protected String getName() {
+			return file.getName();
+		}
+	}
+
+	/**
+	 * A conversion of a plan file, executed by the {@link MovePipeline}.
+	 */
+	private class PlanTask extends MovePipeline.Task {
+		private final MovePlan.Operation op;
+
+		private PlanTask(MovePlan.Operation op) {
+			this.op = op;
+		}
+
+		protected String classify() {
+			return claim(op.getSource()) ? op.getDestination().getParent() : null;
+		}
+
+		protected void execute() throws IOException {
+			File _destF = op.getDestination();
+			try {
+				moveFile(op.getSource(), new Classification(null, _destF.getParent(), _destF.getName(), op.getTags()));
+			}
+			finally {
+				claims.release(op.getSource());
+			}
+		}
+
+		protected String getName() {
+			return op.getSource().getName();
+		}
+	}
+
+	/**
+	 * Prints a line of the conversion report. In concurrent mode (or while the podcast shows are converted in
+	 * parallel), the lines are collected
+	 * and printed sorted by {@link #printReport()}, so that the output is deterministic.
+	 * @param line	the line to print
+	 */
+	private void report(String line) {
+		if (collectReport || (pipeline != null && pipeline.isConcurrent())) {
+			synchronized (reportLines) {
+				reportLines.add(line);
+			}
+		}
+		else {
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * Prints the collected report lines sorted.
+	 */
+	private void printReport() {
+		synchronized (reportLines) {
+			Collections.sort(reportLines);
+			for (String _line : reportLines) {
+				System.out.println(_line);
+			}
+			reportLines.clear();
+		}
+	}
+
+	/**
+	 * Converts the files of all podcast shows (see {@link PodcastShow}), if the source and destination directory exist.
+	 * The shows are scanned and converted in parallel by podcastThreadCount threads.
+	 * @throws InterruptedException
+	 */
+	private void convertPodcasts() throws InterruptedException {
+		// check the existance of the source and destination directory
+		File _podcastSrcDir = new File(podcastSrcDirName);
+		File _podcastDestDir = new File(podcastDestDirName);
+		if (_podcastSrcDir.exists() == false || _podcastDestDir.exists() == false || podcastShows.isEmpty()) {
+			return;
+		}
+		// apply the conversion for each podcast show
+		int _threads = Math.max(1, Math.min(podcastThreadCount, podcastShows.size()));
+		ExecutorService _pool = Executors.newFixedThreadPool(_threads);
+		collectReport = _threads > 1;
+		try {
+			List<Future<Integer>> _results = new ArrayList<Future<Integer>>();
+			for (final PodcastShow _show : podcastShows) {
+				final File _srcDir = new File(_podcastSrcDir, _show.getFolder());
+				_results.add(_pool.submit(new Callable<Integer>() {
+					public Integer call() throws InterruptedException {
+						return convertPodcast(_srcDir, _show);
 					}
+				}));
+			}
+			for (Future<Integer> _result : _results) {
+				try {
+					_result.get();
 				}
-				else {
-					System.out.println("conversion of " + f.getName() + " failed.");
+				catch (ExecutionException _ex) {
+					System.out.println("******** failed in convertPodcasts() with " + _ex.getCause().toString() + "*********");
+				}
+			}
+		}
+		finally {
+			_pool.shutdownNow();
+			collectReport = false;
+		}
+	}
+
+	private int convertPodcast(File srcDir, final PodcastShow show) throws InterruptedException {
+		return selectFiles(srcDir, podcastFiles, new DirectoryScanner.Visitor() {  // select all mp4 movie files
+			public void visit(Path path, BasicFileAttributes attrs) throws IOException, InterruptedException {
+				if (attrs.isRegularFile()) {  // handle all files
+					pipeline.submit(new ConvertTask(path.toFile(), show));
 				}
+				// else it is a directory 
+			}
+		});
+	}
+
+	/**
+	 * Determines the destination of a podcast file according to the rule of its show.
+	 * @param f		the podcast file
+	 * @param show	the podcast show
+	 * @return		the destination of the podcast file or null if the file is not recognized
+	 */
+	private Classification classifyPodcast(File f, PodcastShow show) {
+		Classification _result = show.classify(f);
+		if (debugMode && _result == null) {
+			System.out.println("not recognized: " + show.getFolder() + File.separator + f.getName());
+		}
+		return _result;
+	}
+
+	/**
+	 * Determines the destination of a pdf file according to the rule table (see {@link RuleEngine}).
+	 * @param f		the pdf file
+	 * @return		the destination of the pdf file or null if the file is not recognized
+	 */
+	private Classification classifyPdfFile(File f) {
+		Classification _result = ruleEngine.classify(f.getName());
+		if (_result == null && pdfMetaRules.isEmpty() == false) {
+			_result = classifyPdfMetadata(f);
+		}
+		if (debugMode) {
+			if (_result == null) {		// no rule applies; such a file is not moved, needs to be renamed first
+				System.out.println("not recognized: " + f.getName());
+			}
+			else {
+				System.out.println(f.getName() + " matches rule <" + _result.getRule().getName() + ">");
 			}
 		}
+		return _result;
 	}
 
 	/**
-	 * Checks whether a String (typically a file name) starts with a
-	 * Date in the form of yyyyMMdd and returns this date as a String.
-	 * The parsing is very simply based on wether year, month and day are integers.
-	 * Days = 00 and / or Months = 00 are allowed and will be ignored.
-	 * Based on the length of the returned String, the format of the date can be easily 
-	 * determines. The method guarantees to return only the following formats:
-	 * ≤ul>
-	 * <li>""    no leading date
-	 * <li>yyyy  only a year
-	 * <li>yyyyMM  year and month
-	 * <li>yyyyMMdd  year, month and day
-	 * </ul> 
-	 * @param s			the String to parse
-	 * @return 			the parsed Date or null if there is no leading date
+	 * Determines the destination of a pdf file that no rule of the rule table recognizes by its document
+	 * information (see {@link PdfMetadata}) and the pdf metadata rules (see {@link PdfMetaRule}). At most
+	 * pdfMetaMaxBytes of the file are read within pdfMetaMaxMillis.
+	 * @param f		the pdf file
+	 * @return		the destination of the pdf file or null if the file is not recognized
 	 */
-	private String getLeadingDateFromString(String s)  {
-		String _dateStr = null;
-		int i = 0;
-		// TODO: handle before christ (ad) dates
+	private Classification classifyPdfMetadata(File f) {
+		long _start = System.nanoTime();
 		try {
-			if (s != null && s.length()>= 4) {  // check for yyyy 
-				i = new Integer(s.substring(0,4));
-				if (i > 0 && i < 3000) {
-					_dateStr = s.substring(0,4);
-					if (s.length() >= 6) {			// check for MM in yyyyMM
-						i = new Integer(s.substring(4,6));
-						if (i > 0 && i < 13) {   // month is correct: 01 .. 12
-							_dateStr = s.substring(0,6);
-							if (s.length() >= 8) {  // check for dd in yyyyMMdd
-								i = new Integer(s.substring(6,8));
-								if (i > 0 && i < 32) {   // day is correct: 01 .. 31 (special cases are ignored)
-									_dateStr = s.substring(0, 8);
-								}
-							}
-						}
+			PdfMetadata _meta = PdfMetadata.read(f.toPath(), pdfMetaMaxBytes, pdfMetaMaxMillis * 1000000L);
+			if (_meta.isTruncated()) {
+				metrics.increment("pdfmeta_truncated", null, null);
+			}
+			if (debugMode) {
+				System.out.println(f.getName() + " has metadata " + _meta);
+			}
+			for (PdfMetaRule _rule : pdfMetaRules) {
+				Classification _result = _rule.classify(_meta, f.getName());
+				if (_result != null) {
+					metrics.increment("pdfmeta_files", "field", _rule.getField());
+					return _result;
+				}
+			}
+			return null;
+		}
+		catch (IOException | RuntimeException _ex) {  // a file the parser can not handle is left unrecognized
+			System.out.println("reading the metadata of " + f.getName() + " failed with " + _ex.toString());
+			return null;
+		}
+		finally {
+			metrics.record("classify_pdfmeta", System.nanoTime() - _start);
+		}
+	}
+
+	/**
+	 * Moves a file to its destination and queues the file for adding the finder tags.
+	 * Files with the same content as an archived file (see {@link DuplicateDetector}) are skipped or deleted instead.
+	 * @param f			the file to move
+	 * @param result	the destination of the file
+	 * @return			the destination (in testMode or while a plan is created: that would be moved to)
+	 * 					or null if the file was not moved
+	 * @throws IOException
+	 */
+	private File moveFile(File f, Classification result) throws IOException {
+		String _destDirName = result.getDestDirName();
+		String _tags = result.getTags();
+		firstFileMillis.compareAndSet(0, System.currentTimeMillis());
+		DuplicateDetector _duplicates = getDuplicates();
+
+		String _ruleName = result.getRule() == null ? "plan" : result.getRule().getName();
+		if (_duplicates != null) {
+			File _original;
+			try {
+				_original = _duplicates.findDuplicate(f);
+			}
+			catch (IOException _ex) {  // e.g. an unreadable archived file or a file taken by another instance
+				metrics.increment("failures", "rule", _ruleName);
+				_duplicates.skipped(f);
+				report("conversion of " + f.getName() + " failed with " + _ex.toString());
+				return null;
+			}
+			if (_original != null) {
+				_duplicates.skipped(f);
+				if (isDryRun() == false && duplicateAction.equals("delete")) {
+					if (claims.isLost(f)) {  // e.g. the lease was broken while this instance stalled
+						metrics.increment("claimed_elsewhere", null, null);
+						report("conversion of " + f.getName() + " skipped, claimed by another instance");
+						return null;
+					}
+					try {
+						Files.delete(f.toPath());
+					}
+					catch (IOException _ex) {
+						metrics.increment("failures", "rule", _ruleName);
+						report("deleting the duplicate " + f.getName() + " failed with " + _ex.toString());
+						return null;
 					}
 				}
+				metrics.increment("duplicates", null, null);
+				report("dup " + f.getName() + " = " + _original.getPath() + 
+						(duplicateAction.equals("delete") ? ", deleted" : ", skipped"));
+				return null;
 			}
 		}
-		catch (NumberFormatException _ex) {
-			if (debugMode) {
-				System.out.println(s + " leads to parse error in getLeadingDateFromString()");
+		File _destF;
+		try {
+			_destF = new File(getDestinationDirectory(_destDirName), result.getDestFileName());
+		}
+		catch (IOException _ex) {  // e.g. an unwritable destination; only this file fails, the others are converted
+			metrics.increment("failures", "rule", _ruleName);
+			if (_duplicates != null) {
+				_duplicates.skipped(f);
 			}
+			report("conversion of " + f.getName() + " failed with " + _ex.toString());
+			return null;
 		}
-		if (debugMode) {
-			System.out.println("leading date in <" + s + "> -> <" + _dateStr + ">");
+		if (isDryRun() && _duplicates != null) {  // nothing is moved, the hashes of the incoming file are not kept
+			_duplicates.skipped(f);
+		}
+		if (plan != null) {  // just record what would be done
+			plan.add(f, _destF, _tags);
+		}
+		else if (testMode) {  // just print out what would be done
+			String _line = "mv " + f.getName() + " " + _destF.getPath();
+			if (_tags != null && _tags.length() > 0) {
+				_line += ", adding tags: " + _tags;
+				if (debugMode) {
+					_line += "\n" + tagCommand + " -a " + _tags + " " + _destF.getPath();
+				}
+			}
+			else { 
+				_line += ", no tags added";
+			}
+			report(_line);
 		}
+		else {  // execute the conversion
+			if (_tags != null && _tags.length() == 0) {
+				_tags = null;
+			}
+			if (claims.isLost(f)) {  // e.g. the lease was broken while this instance stalled
+				metrics.increment("claimed_elsewhere", null, null);
+				report("conversion of " + f.getName() + " skipped, claimed by another instance");
+				if (_duplicates != null) {
+					_duplicates.skipped(f);
+				}
+				return null;
+			}
+			if (journal != null) {
+				journal.planned(f, _destF, _tags);
+			}
+			long _start = System.nanoTime();
+			try {
+				fileMover.move(f, _destF);
+			}
+			catch (FileMover.SourceKeptException _ex) {  // archived, but the source is still in the inbox
+				metrics.increment("sources_kept", null, null);
+				report("conversion of " + f.getName() + ": " + _ex.getMessage());
+			}
+			catch (IOException _ex) {
+				metrics.increment("failures", "rule", _ruleName);
+				if (_duplicates != null) {
+					_duplicates.skipped(f);
+				}
+				if (journal != null) {
+					journal.failed(_destF);
+				}
+				dirCache.invalidate(_destDirName);
+				report("conversion of " + f.getName() + " failed with " + _ex.toString());
+				return null;
+			}
+			metrics.record("move", System.nanoTime() - _start);
+			metrics.increment("conversions", "rule", _ruleName);
+			if (journal != null) {
+				journal.moved(_destF);
+			}
+			if (_duplicates != null) {
+				_duplicates.added(f, _destF);
+			}
+			ArchiveIndex _index = getArchiveIndex();
+			if (_index != null) {
+				_index.add(_destF, _tags);
+			}
+			if (_tags != null) {
+				tagQueue.add(_destF, _tags);
+			}
+		}
+		return _destF;
+	}
 
-		return _dateStr;
+	/**
+	 * Returns a destination directory and creates it (with all parent directories) if it does not already exist.
+	 * Each directory is created and resolved only once per run (see {@link DirectoryCache}).
+	 * @param destDirName	the name of the destination directory
+	 * @return				the canonical destination directory
+	 * @throws IOException if the directory can not be created
+	 */
+	private File getDestinationDirectory(String destDirName) throws IOException {
+		File _dir = dirCache.get(destDirName);
+		if (_dir == null) {
+			_dir = new File(destDirName).getCanonicalFile();
+			if (debugMode) { // just print out what would be done
+				System.out.println("mkdir " + _dir.getPath());
+			}
+			if (isDryRun() == false) {
+				_dir.mkdirs();
+				if (_dir.isDirectory() == false) {
+					throw new IOException("can not create directory " + _dir.getPath());
+				}
+			}
+			dirCache.put(destDirName, _dir);
+		}
+		return _dir;
+	}
+
+	/**
+	 * Streams all files within directory dir that are accepted by a filter to a visitor.
+	 * @param   dir         the current directory to look for the files
+	 * @param   filter      the selection criteria
+	 * @param   visitor     receives the selected files (and directories)
+	 * @return	the number of selected entries, or -1 if the directory could not be read
+	 * @throws InterruptedException if the visitor is interrupted
+	 */
+	private int selectFiles(File dir, final RenameFileFilter filter, final DirectoryScanner.Visitor visitor) throws InterruptedException {
+		return selectFiles(dir, new DirectoryScanner.Router().add(filter, visitor));
 	}
 
 	/**
-	 * Filters all pdf files within directory dir
+	 * Streams all files within directory dir to the routes of a router, in one pass over the directory.
 	 * @param   dir         the current directory to look for the files
-	 * @param   extension   the file name extension is the selection criteria
-	 * @return	an array of pdf files
+	 * @param   router      the selection criteria and the visitors of the selected files (and directories)
+	 * @return	the number of entries with an accepted name, or -1 if the directory could not be read
+	 * @throws InterruptedException if a visitor is interrupted
 	 */
-	private File[] selectFiles(File dir, String extension) {
+	private int selectFiles(File dir, final DirectoryScanner.Router router) throws InterruptedException {
+		final long[] _visitNanos = new long[1];
+		long _start = System.nanoTime();
 		try {
 			if (debugMode == true) {
-				System.out.println("selectFiles("+ dir.toString() + ", " + extension + ")");
+				System.out.println("selectFiles("+ dir.toString() + ", " + router + ")");
 			}
-			FilenameFilter _filter = new RenameFileFilter(extension);
-			return (dir.listFiles(_filter));
+			return DirectoryScanner.scan(dir.toPath(), router, new DirectoryScanner.Visitor() {
+				public void visit(Path path, BasicFileAttributes attrs) throws IOException, InterruptedException {
+					long _visitStart = System.nanoTime();
+					try {
+						router.visit(path, attrs);
+					}
+					finally {
+						_visitNanos[0] += System.nanoTime() - _visitStart;
+					}
+				}
+			});
 		}
-		catch (Exception _ex) {
+		catch (IOException _ex) {
 			System.out.println("******** failed in selectFiles() with " + _ex.toString() + "*********");
-			return null;
+			return -1;
+		}
+		finally {  // the time to read the directory, without the handling of the entries
+			metrics.record("scan", System.nanoTime() - _start - _visitNanos[0]);
 		}
 	}
 
 	/**
-	 * save Bento backups
-	 * 
+	 * Saves the backups of all backup sources (see {@link BackupSource}): the sources are searched in parallel
+	 * by backupThreadCount threads (see {@link BackupCollector}), then the newest backups of each source are moved
+	 * (or compressed, see {@link #saveBackup(File, File, BlockCompressor)}).
+	 * With cleanup, the directories of the saved backups and the older backups are removed afterwards
+	 * (except the directories of backups that could not be saved).
 	 */
-	private void saveBentoBackups()
-	{
+	private void saveBackups() {
+		if (backupSources.isEmpty()) {
+			return;
+		}
+		BackupCollector _collector = new BackupCollector(backupThreadCount);
+		BlockCompressor _compressor = backupCompression.equals("gzip") ?
+				new BlockCompressor(backupCompressThreads, backupCompressBlockKB * 1024, backupCompressLevel) : null;
 		try {
-			FilenameFilter _filter = new RenameFileFilter(".bentodb");
-			File[] _backupFiles = new File("/Users/bruno/Documents").listFiles(_filter);
-			for (int i = 0; i < _backupFiles.length; i++) {
-				if (_backupFiles[i].isDirectory()) {  // handle all directories
-					// 	/Users/bruno/Documents/Bento Backup - 2013-12-14.bentodb  -> yyyyMMdd.bentodb
-					String _destFN = _backupFiles[i].getName().substring(15,19) + 
-							_backupFiles[i].getName().substring(20, 22) +
-							_backupFiles[i].getName().substring(23, 25) + ".bentodb";	
-					String _destDirName = docDirName + File.separator + 
-							"temp" + File.separator +
-							"toPegasus" + File.separator +
-							"backup";
-					if (debugMode) { // just print out what would be done
-						System.out.println("mkdir " + new File(_destDirName).getCanonicalPath());
-					}
-					if (testMode == false) {
-						new File(_destDirName).mkdirs(); 			
-					}
-					File _destF = new File(_destDirName + File.separator + _destFN);
-					if (testMode) {  // just print out what would be done
-						System.out.println("mv " + _backupFiles[i].getName() + " " + _destF.getCanonicalPath());
-					}
-					else {  // execute the conversion
-						if (_backupFiles[i].renameTo(_destF) == false) {
-							System.out.println("conversion of " + _backupFiles[i].getName() + " failed.");
-						}
-					}
+			long _start = System.nanoTime();
+			List<BackupCollector.Result> _results = _collector.collect(backupSources);
+			metrics.record("backup_scan", System.nanoTime() - _start);
+			for (BackupCollector.Result _result : _results) {
+				if (_result.getFailure() != null) {
+					System.out.println("******** failed in saveBackups() with " + _result.getFailure().toString() + "*********");
+					continue;
+				}
+				saveBackups(_result, _compressor);
+			}
+		}
+		finally {
+			_collector.shutdown();
+			if (_compressor != null) {
+				_compressor.shutdown();
+			}
+		}
+	}
 
+	/**
+	 * Saves the backups of one source.
+	 * @param result		the backups of the source, newest first
+	 * @param compressor	compresses the backups or null (moved as they are)
+	 */
+	private void saveBackups(BackupCollector.Result result, BlockCompressor compressor) {
+		Set<Path> _remove = new LinkedHashSet<Path>();
+		Set<Path> _keep = new HashSet<Path>();
+		for (BackupCollector.Backup _backup : result.getBackups()) {
+			Path _container = _backup.getContainer();
+			if (_backup.isObsolete()) {
+				if (debugMode) {
+					System.out.println("older backup " + _backup.getPath() + ", not saved.");
+				}
+				_remove.add(_container != null ? _container : _backup.getPath());
+				continue;
+			}
+			File _backupFile = _backup.getPath().toFile();
+			String _destDirName = _backup.getResult().getDestDirName();
+			try {
+				File _destF = new File(getDestinationDirectory(_destDirName), _backup.getResult().getDestFileName());
+				saveBackup(_backupFile, _destF, compressor);
+				if (_container != null) {
+					_remove.add(_container);
+				}
+			}
+			catch (IOException _ex) {
+				dirCache.invalidate(_destDirName);
+				System.out.println("conversion of " + _backupFile.getName() + " failed with " + _ex.toString());
+				if (_container != null) {
+					_keep.add(_container);
 				}
-				// else it is a file
 			}
 		}
-		catch (Exception _ex) {
-			System.out.println("******** failed in saveBentoBackups() with " + _ex.toString() + "*********");
+		if (result.getSource().isCleanup() == false) {
+			return;
+		}
+		_remove.removeAll(_keep);
+		for (Path _path : _remove) {
+			if (testMode) {  // just print out what would be done
+				System.out.println("rm -r " + _path);
+				continue;
+			}
+			try {
+				FileMover.deleteTree(_path);
+			}
+			catch (IOException _ex) {
+				System.out.println("removing " + _path + " failed with " + _ex.toString());
+			}
 		}
+	}
 
+	/**
+	 * Moves a backup to its destination or compresses it into a gzip file next to its destination
+	 * (<code>.tar.gz</code> for a directory, <code>.gz</code> for a file, see {@link BlockCompressor}),
+	 * which is checked (with backupVerify) before the backup is removed.
+	 * @param backup		the backup file or directory
+	 * @param destF			the destination of the backup
+	 * @param compressor	compresses the backup or null
+	 * @throws IOException if the backup could not be saved; it is kept in this case
+	 */
+	private void saveBackup(File backup, File destF, BlockCompressor compressor) throws IOException {
+		if (compressor == null) {
+			if (testMode) {  // just print out what would be done
+				System.out.println("mv " + backup.getName() + " " + destF.getPath());
+			}
+			else {  // execute the conversion
+				fileMover.move(backup, destF);
+			}
+			return;
+		}
+		File _archive = new File(destF.getPath() + (backup.isDirectory() ? ".tar.gz" : ".gz"));
+		if (testMode) {  // just print out what would be done
+			System.out.println("gzip " + backup.getName() + " " + _archive.getPath());
+			return;
+		}
+		long _start = System.nanoTime();
+		long _size = compressor.compress(backup.toPath(), destF.getName(), _archive.toPath());
+		long _nanos = System.nanoTime() - _start;
+		metrics.record("backup_compress", _nanos);
+		if (backupVerify) {
+			_start = System.nanoTime();
+			try {
+				if (compressor.verify(_archive.toPath()) != _size) {
+					throw new IOException("size mismatch");
+				}
+			}
+			catch (IOException _ex) {
+				Files.deleteIfExists(_archive.toPath());
+				throw new IOException("verification of " + _archive.getPath() + " failed with " + _ex.toString());
+			}
+			metrics.record("backup_verify", System.nanoTime() - _start);
+		}
+		FileMover.deleteTree(backup.toPath());
+		if (debugMode) {
+			System.out.println("gzip " + backup.getName() + " " + _archive.getPath() + ": " + (_size / 1024) + " KB to " +
+					(_archive.length() / 1024) + " KB in " + (_nanos / 1000000) + " ms (" +
+					(rate(_size, _nanos) / 1024 / 1024) + " MB/s)");
+		}
 	}
 
 	/**
-	 * save Shakehands backups
-	 * 
+	 * Checks a compressed backup (see {@link BlockCompressor#verify(Path)}) and prints the result.
+	 * @param fileName	the compressed backup
 	 */
-	private void saveShakehandsBackups() {
+	public void verify(String fileName) {
+		BlockCompressor _compressor = new BlockCompressor(backupCompressThreads, backupCompressBlockKB * 1024, backupCompressLevel);
+		long _start = System.nanoTime();
 		try {
-			File _proSaldoBackupDir = new File("/Users/bruno/Documents/dfs/sysadm/ProSaldoBackup");
-			FilenameFilter _filter = new RenameFileFilter(".sdb");
-			File[] _backupDirs = _proSaldoBackupDir.listFiles();
-			for (int j = 0; j < _backupDirs.length; j++) {
-				if (_backupDirs[j].isDirectory() == true) {
-					File[] _backupFiles = _backupDirs[j].listFiles(_filter);
-					String _dirName = _backupDirs[j].getName();
-					for (int i = 0; i < _backupFiles.length; i++) {
-						if (_backupFiles[i].isFile()) {  // handle all files
-							// 		yyyy-mm-dd hh-mm-ss / Business.sdb -> yyyyMMdd.sdb	
-							String _destFN = _dirName.substring(0,4) + 
-									_dirName.substring(5,7) + _dirName.substring(8,10) + ".sdb";
-							String _destDirName = docDirName + File.separator + 
-									"temp" + File.separator +
-									"toPegasus" + File.separator +
-									"backup";
-							if (debugMode == true) { // just print out what would be done
-								System.out.println("mkdir " + new File(_destDirName).getCanonicalPath());
-							}
-							if (testMode == false) {
-								new File(_destDirName).mkdirs(); 			
-							}
-							File _destF = new File(_destDirName + File.separator + _destFN);
-							if (testMode) {  // just print out what would be done
-								System.out.println("mv " + _backupFiles[i].getName() + " " + _destF.getCanonicalPath());
-							}
-							else {  // execute the conversion
-								if (_backupFiles[i].renameTo(_destF) == false) {
-									System.out.println("conversion of " + _backupFiles[i].getName() + " failed.");
-								}
-							}
-							// TODO: remove the backup directory
+			long _size = _compressor.verify(new File(fileName).toPath());
+			long _nanos = System.nanoTime() - _start;
+			System.out.println(fileName + ": " + (_size / 1024) + " KB verified in " + (_nanos / 1000000) + " ms (" +
+					(rate(_size, _nanos) / 1024 / 1024) + " MB/s)");
+		}
+		catch (IOException _ex) {
+			System.out.println("******** " + fileName + " is corrupt: " + _ex.toString() + "*********");
+		}
+		finally {
+			_compressor.shutdown();
+		}
+	}
 
-						}
-						// else it is a directory
-					}
-				} 
+	/**
+	 * save a Software file
+	 * @param f		the dmg file to save
+	 * @throws IOException
+	 */
+	private void saveSoftwareFile(File f) throws IOException {
+		String _destDirName = docDirName + File.separator + 
+				"temp" + File.separator +
+				"toPegasus" + File.separator +
+				"software";
+		File _destF;
+		try {
+			_destF = new File(getDestinationDirectory(_destDirName), f.getName());
+		}
+		catch (IOException _ex) {
+			System.out.println("conversion of " + f.getName() + " failed with " + _ex.toString());
+			return;
+		}
+		if (testMode) {  // just print out what would be done
+			System.out.println("mv " + f.getName() + " " + _destF.getPath());
+		}
+		else if (claim(f)) {  // execute the conversion
+			try {
+				if (claims.isLost(f)) {  // e.g. the lease was broken while this instance stalled
+					metrics.increment("claimed_elsewhere", null, null);
+					System.out.println("conversion of " + f.getName() + " skipped, claimed by another instance");
+					return;
+				}
+				fileMover.move(f, _destF);
+			}
+			catch (FileMover.SourceKeptException _ex) {
+				System.out.println("conversion of " + f.getName() + ": " + _ex.getMessage());
+			}
+			catch (IOException _ex) {
+				dirCache.invalidate(_destDirName);
+				System.out.println("conversion of " + f.getName() + " failed with " + _ex.toString());
+			}
+			finally {
+				claims.release(f);
 			}
 		}
-		catch (Exception _ex) {
-			System.out.println("******** failed in saveShakehandsBackups() with " + _ex.toString() + "*********");
+	}
+
+	/**
+	 * Creates the claims of this instance for a cluster mode (see {@link FileClaims}).
+	 * @param mode	none (a single instance), shard or lease
+	 * @return		the claims
+	 * @throws IllegalArgumentException if the mode or the shard is not valid
+	 */
+	private static FileClaims createClaims(String mode) {
+		if (mode.equals("none")) {
+			return new NoClaims();
+		}
+		else if (mode.equals("shard")) {
+			return new ShardClaims(shardCount, shardIndex);
 		}
+		else if (mode.equals("lease")) {
+			return new LeaseClaims(leaseExpirySeconds * 1000L, ManagementFactory.getRuntimeMXBean().getName());
+		}
+		throw new IllegalArgumentException("unknown cluster mode: " + mode);
 	}
-	
+
 	/**
-	 * save Software files
-	 * 
+	 * Claims a file before it is converted (see {@link FileClaims}); in a dry run nothing is claimed.
+	 * A claim that fails (e.g. a read-only lease directory or a stale handle of a shared mount) is reported
+	 * as a failure of this file, the other files are still converted.
+	 * @param f		the file to convert
+	 * @return		true if this instance converts the file, false if it belongs to another instance or the
+	 * 				claim failed
 	 */
-	private void saveSoftwareFiles() {
+	private boolean claim(File f) {
 		try {
-			File[] _swFiles = selectFiles(getCurrentDirectory(), ".dmg");
-				for (int i = 0; i < _swFiles.length; i++) {
-				if (_swFiles[i].isFile()) {  // handle all files
-					String _destDirName = docDirName + File.separator + 
-							"temp" + File.separator +
-							"toPegasus" + File.separator +
-							"software";
-					if (debugMode == true) { // just print out what would be done
-						System.out.println("mkdir " + new File(_destDirName).getCanonicalPath());
-					}
-					if (testMode == false) {
-						new File(_destDirName).mkdirs(); 			
-					}
-					File _destF = new File(_destDirName + File.separator + _swFiles[i].getName());
-					if (testMode) {  // just print out what would be done
-						System.out.println("mv " + _swFiles[i].getName() + " " + _destF.getCanonicalPath());
-					}
-					else {  // execute the conversion
-						if (_swFiles[i].renameTo(_destF) == false) {
-							System.out.println("conversion of " + _swFiles[i].getName() + " failed.");
-						}
-					}
-				}
-				// else it is a directoy
+			if (isDryRun() || claims.claim(f)) {
+				return true;
 			}
 		}
-		catch (Exception _ex) {
-			System.out.println("******** failed in saveSoftwareFiles() with " + _ex.toString() + "*********");
+		catch (IOException _ex) {
+			metrics.increment("failures", "rule", "claim");
+			report("claiming " + f.getName() + " failed with " + _ex.toString());
+			return false;
+		}
+		metrics.increment("claimed_elsewhere", null, null);
+		if (debugMode) {
+			System.out.println(f.getName() + " is converted by another instance");
 		}
+		return false;
 	}
 
 }
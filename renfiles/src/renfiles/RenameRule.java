@@ -0,0 +1,463 @@
+package renfiles;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single rule of the classification rule table (see renfiles.rules).
+ * Each rule consists of five columns, separated by <code>|</code>:
+ * <ul>
+ * <li>search criteria: <code>prefix:str</code>, <code>postfix:str</code>, <code>ipostfix:str</code> (case-insensitive)
+ *     or the same with a <code>date+</code> in front (e.g. <code>date+prefix:ic</code>), which means that the file name
+ *     must start with a leading date and that the prefix is checked after the 8 characters of the date.
+ *     <code>date</code> alone matches any file name with a leading date.
+ * <li>srcDateType: <code>yyyyMMdd@offset</code>, <code>yyyy-MM-dd@offset</code>, <code>yyyyMM@offset</code>,
+ *     <code>lead</code> or <code>lead&gt;=n</code> (the leading date with at least n digits),
+ *     <code>glinput</code> (the date and user tokens of the GL input files),
+ *     <code>mtime</code> (the modification date of the file, e.g. for podcasts)
+ * <li>destFile: the destination file name template
+ * <li>destPath: the destination directory template
+ * <li>tags: a comma-separated list of finder tags or <code>-</code> for no tags
+ * </ul>
+ * All dates are parsed and validated by {@link DateParser}; if the date is not valid, the rule does not apply.
+ * The templates may contain the variables <code>${date}</code> (yyyyMMdd, yyyyMM or yyyy),
+ * <code>${yyyy}</code>, <code>${MM}</code>, <code>${dd}</code>, <code>${name}</code> (the original file name),
+ * <code>${name-n}</code> (the original file name without its last n characters),
+ * <code>${user}</code> (only with glinput) and all configuration variables (e.g. <code>${news}</code>, <code>${doc}</code>).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class RenameRule {
+	static final int PREFIX = 0;
+	static final int POSTFIX = 1;
+	static final int IPOSTFIX = 2;
+	static final int ANY = 3;
+	/** offset of the prefix keys after a leading date (yyyyMMdd) */
+	static final int DATE_KEY_OFFSET = 8;
+
+	private static final int DATE_NONE = 0;
+	private static final int DATE_FIXED = 1;		// yyyyMMdd
+	private static final int DATE_DASHED = 2;		// yyyy-MM-dd
+	private static final int DATE_MONTH = 3;		// yyyyMM
+	private static final int DATE_LEADING = 4;
+	private static final int DATE_GLINPUT = 5;
+	private static final int DATE_MTIME = 6;
+
+	private final String name;
+	private final int index;
+	private final boolean leadingDate;
+	private final int matchType;
+	private final String key;
+	private final int dateType;
+	private final int dateParam;		// offset or minimal length of the date
+	private final Template destFile;
+	private final Template destDir;
+	private final String tags;
+
+	/**
+	 * Constructor; parses one line of the rule table.
+	 *
+	 * @param line		the rule definition
+	 * @param index		the position of the rule in the rule table (the rule with the lowest index wins)
+	 * @param config	the configuration variables that can be used within the templates
+	 * @throws IllegalArgumentException if the rule definition is not valid
+	 */
+	public RenameRule(String line, int index, Map<String, String> config) {
+		String[] _col = line.split("\\|");
+		if (_col.length != 5) {
+			throw new IllegalArgumentException("expected 5 columns, found " + _col.length);
+		}
+		this.index = index;
+		this.name = _col[0].trim();
+
+		// search criteria
+		String _match = name;
+		leadingDate = _match.startsWith("date");
+		if (_match.equals("date")) {
+			matchType = ANY;
+			key = "";
+		}
+		else {
+			if (leadingDate) {
+				if (_match.startsWith("date+") == false) {
+					throw new IllegalArgumentException("invalid search criteria: " + _match);
+				}
+				_match = _match.substring(5);
+			}
+			int _colon = _match.indexOf(':');
+			if (_colon <= 0 || _colon == _match.length() - 1) {
+				throw new IllegalArgumentException("invalid search criteria: " + _match);
+			}
+			String _type = _match.substring(0, _colon);
+			key = _match.substring(_colon + 1);
+			if (_type.equals("prefix")) matchType = PREFIX;
+			else if (_type.equals("postfix")) matchType = POSTFIX;
+			else if (_type.equals("ipostfix")) matchType = IPOSTFIX;
+			else throw new IllegalArgumentException("invalid search criteria: " + _match);
+		}
+
+		// srcDateType
+		String _date = _col[1].trim();
+		int _at = _date.indexOf('@');
+		if (_date.equals("-")) {
+			dateType = DATE_NONE;
+			dateParam = 0;
+		}
+		else if (_date.equals("glinput")) {
+			dateType = DATE_GLINPUT;
+			dateParam = 0;
+		}
+		else if (_date.equals("mtime")) {
+			dateType = DATE_MTIME;
+			dateParam = 0;
+		}
+		else if (_date.startsWith("lead")) {
+			dateType = DATE_LEADING;
+			dateParam = _date.startsWith("lead>=") ? Integer.parseInt(_date.substring(6)) : 4;
+		}
+		else if (_at > 0) {
+			String _format = _date.substring(0, _at);
+			dateParam = Integer.parseInt(_date.substring(_at + 1));
+			if (_format.equals("yyyyMMdd")) dateType = DATE_FIXED;
+			else if (_format.equals("yyyy-MM-dd")) dateType = DATE_DASHED;
+			else if (_format.equals("yyyyMM")) dateType = DATE_MONTH;
+			else throw new IllegalArgumentException("invalid date type: " + _date);
+		}
+		else {
+			throw new IllegalArgumentException("invalid date type: " + _date);
+		}
+		if (dateType == DATE_LEADING && leadingDate == false) {
+			throw new IllegalArgumentException("date type lead requires a date search criteria");
+		}
+
+		destFile = new Template(_col[2].trim(), config);
+		destDir = new Template(_col[3].trim(), config);
+		String _tags = _col[4].trim();
+		tags = (_tags.isEmpty() || _tags.equals("-")) ? null : _tags;
+	}
+
+	/**
+	 * Returns the name of the rule (its search criteria).
+	 * @return	the name of the rule
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return	the position of the rule in the rule table
+	 */
+	int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return	true if the rule only applies to names with a leading date
+	 */
+	boolean isLeadingDate() {
+		return leadingDate;
+	}
+
+	/**
+	 * @return	the match type (PREFIX, POSTFIX, IPOSTFIX or ANY)
+	 */
+	int getMatchType() {
+		return matchType;
+	}
+
+	/**
+	 * @return	the prefix or postfix string
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Applies the rule to a file whose search criteria already matched.
+	 *
+	 * @param fileName		the name of the file
+	 * @param leadingDate	the leading date of the file name (see {@link DateParser}) or DateParser.NONE
+	 * @param lastModified	the modification time of the file (used by the date type mtime) or 0 if unknown
+	 * @return				the destination of the file or null if the rule does not apply
+	 */
+	Classification apply(String fileName, int leadingDate, long lastModified) {
+		int _date = parseDate(fileName, leadingDate, lastModified);
+		if (_date == DateParser.NONE && dateType != DATE_NONE) {  // no valid date, the file needs to be renamed manually
+			return null;
+		}
+		return apply(fileName, fileName, _date);
+	}
+
+	/**
+	 * Creates the destination of a file for the date already found by {@link #match}, e.g. in a field of the
+	 * document information instead of the file name (see {@link PdfMetaRule}).
+	 *
+	 * @param fileName	the name of the file
+	 * @param matched	the name (or value) the rule matched; contains the user of the date type glinput
+	 * @param date		the date returned by match
+	 * @return			the destination of the file
+	 */
+	Classification apply(String fileName, String matched, int date) {
+		String _user = dateType == DATE_GLINPUT ? parseUser(matched) : "";
+		return new Classification(this,
+				destDir.expand(date, fileName, _user).replace('/', File.separatorChar),
+				destFile.expand(date, fileName, _user),
+				tags, date);
+	}
+
+	/**
+	 * Recomputes the destination of an archived file whose name was created by this rule, i.e. matches the
+	 * destFile template; the date (and user) are taken from the name. Rules whose destFile contains the
+	 * original name (<code>${name}</code>) can not recognize their files this way
+	 * (see {@link RuleEngine#relocate(String, long)}).
+	 *
+	 * @param fileName	the name of the archived file
+	 * @return			the destination of the file (with the same name) or null if the name does not match
+	 */
+	Classification relocate(String fileName) {
+		if (destFile.pattern == null) {
+			return null;
+		}
+		Matcher _m = destFile.pattern.matcher(fileName);
+		if (_m.matches() == false) {
+			return null;
+		}
+		int _date = destFile.parseDate(_m);
+		if (_date == DateParser.NONE && dateType != DATE_NONE) {
+			return null;
+		}
+		String _user = destFile.parseUser(_m);
+		return new Classification(this,
+				destDir.expand(_date, fileName, _user).replace('/', File.separatorChar),
+				fileName, tags, _date);
+	}
+
+	/**
+	 * Checks whether the rule applies to a file whose search criteria already matched, without creating the
+	 * destination, e.g. for names that are not available as String (see {@link NameTable}).
+	 *
+	 * @param fileName		the name of the file
+	 * @param leadingDate	the leading date of the file name (see {@link DateParser}) or DateParser.NONE
+	 * @param lastModified	the modification time of the file (used by the date type mtime) or 0 if unknown
+	 * @return				the date of the file (DateParser.NONE for the date type -) or -1 if the rule does not apply
+	 */
+	int match(CharSequence fileName, int leadingDate, long lastModified) {
+		int _date = parseDate(fileName, leadingDate, lastModified);
+		return (_date == DateParser.NONE && dateType != DATE_NONE) ? -1 : _date;
+	}
+
+	/**
+	 * Parses the date of a file name according to the date type of the rule.
+	 *
+	 * @return	the packed date or DateParser.NONE if there is no valid date
+	 */
+	private int parseDate(CharSequence fileName, int leadingDate, long lastModified) {
+		int _date = DateParser.NONE;
+		switch (dateType) {
+		case DATE_FIXED:
+			_date = DateParser.parseCompact(fileName, dateParam);
+			break;
+		case DATE_MONTH:
+			_date = DateParser.parseMonth(fileName, dateParam);
+			break;
+		case DATE_DASHED:
+			_date = DateParser.parseDashed(fileName, dateParam);
+			break;
+		case DATE_LEADING:
+			if (DateParser.precision(leadingDate) * 2 + 2 >= dateParam) {  // precision YEAR = 4 digits, MONTH = 6, DAY = 8
+				_date = leadingDate;
+			}
+			break;
+		case DATE_MTIME:
+			if (lastModified > 0) {
+				_date = DateParser.fromMillis(lastModified);
+			}
+			break;
+		case DATE_GLINPUT:
+			String[] _token = fileName.toString().split("_");
+			for (int i = 0; i < _token.length; i++) {
+				if (_token[i].length() == 12 && _token[i].startsWith("2")) _date = DateParser.parseCompact(_token[i], 0);
+			}
+			break;
+		}
+		return _date;
+	}
+
+	/**
+	 * Determines the user of a GL input file.
+	 *
+	 * @return	the user or "" if the file name does not contain a known user token
+	 */
+	private static String parseUser(String fileName) {
+		String _user = "";
+		String[] _token = fileName.split("_");
+		for (int i = 0; i < _token.length; i++) {
+			if (_token[i].equalsIgnoreCase("toms")) _user = "Toms";
+			else if (_token[i].equalsIgnoreCase("kornel")) _user = "Kornel";
+			else if (_token[i].equalsIgnoreCase("ksh")) _user = "Kornel";
+			else if (_token[i].equalsIgnoreCase("christof")) _user = "Christof";
+			else if (_token[i].equalsIgnoreCase("cdo")) _user = "Christof";
+			else if (_token[i].equalsIgnoreCase("christian")) _user = "Christian";
+			else if (_token[i].equalsIgnoreCase("crw")) _user = "Christian";
+			else if (_token[i].equalsIgnoreCase("bruno")) _user = "Bruno";
+			else if (_token[i].equalsIgnoreCase("bka")) _user = "Bruno";
+		}
+		return _user;
+	}
+
+	/**
+	 * A destination template, compiled into literal and variable segments.
+	 */
+	private static class Template {
+		private static final int V_LITERAL = 0;
+		private static final int V_DATE = 1;
+		private static final int V_YYYY = 2;
+		private static final int V_MM = 3;
+		private static final int V_DD = 4;
+		private static final int V_NAME = 5;
+		private static final int V_USER = 6;
+
+		private final String[] literals;
+		private final int[] vars;
+		private final int[] params;		// ${name-n}: the number of characters to remove
+		private final Pattern pattern;	// matches the expanded names, null if the template contains ${name}
+
+		private Template(String s, Map<String, String> config) {
+			List<String> _literals = new ArrayList<String>();
+			List<Integer> _vars = new ArrayList<Integer>();
+			List<Integer> _params = new ArrayList<Integer>();
+			StringBuilder _lit = new StringBuilder();
+			int i = 0;
+			while (i < s.length()) {
+				int _start = s.indexOf("${", i);
+				int _end = _start < 0 ? -1 : s.indexOf('}', _start);
+				if (_start < 0 || _end < 0) {
+					_lit.append(s, i, s.length());
+					break;
+				}
+				_lit.append(s, i, _start);
+				String _var = s.substring(_start + 2, _end);
+				int _v = V_LITERAL;
+				int _param = 0;
+				if (_var.startsWith("name-")) {
+					try {
+						_param = Integer.parseInt(_var.substring(5));
+					}
+					catch (NumberFormatException _ex) {
+						throw new IllegalArgumentException("invalid variable ${" + _var + "}");
+					}
+					_var = "name";
+				}
+				if (_var.equals("date")) _v = V_DATE;
+				else if (_var.equals("yyyy")) _v = V_YYYY;
+				else if (_var.equals("MM")) _v = V_MM;
+				else if (_var.equals("dd")) _v = V_DD;
+				else if (_var.equals("name")) _v = V_NAME;
+				else if (_var.equals("user")) _v = V_USER;
+				else if (config.containsKey(_var)) _lit.append(config.get(_var));
+				else throw new IllegalArgumentException("unknown variable ${" + _var + "}");
+				if (_v != V_LITERAL) {
+					_literals.add(_lit.toString());
+					_vars.add(_v);
+					_params.add(_param);
+					_lit.setLength(0);
+				}
+				i = _end + 1;
+			}
+			_literals.add(_lit.toString());
+			literals = _literals.toArray(new String[_literals.size()]);
+			vars = new int[_vars.size()];
+			params = new int[_vars.size()];
+			for (int j = 0; j < vars.length; j++) {
+				vars[j] = _vars.get(j);
+				params[j] = _params.get(j);
+			}
+			pattern = compile(literals, vars);
+		}
+
+		/**
+		 * Creates the pattern of the expanded names, with a group per variable.
+		 */
+		private static Pattern compile(String[] literals, int[] vars) {
+			StringBuilder _sb = new StringBuilder();
+			for (int i = 0; i < vars.length; i++) {
+				if (literals[i].length() > 0) {
+					_sb.append(Pattern.quote(literals[i]));
+				}
+				switch (vars[i]) {
+				case V_DATE: _sb.append("(\\d{4}(?:\\d{2}){0,2})"); break;
+				case V_YYYY: _sb.append("(\\d{4})"); break;
+				case V_MM: case V_DD: _sb.append("(\\d{2})?"); break;
+				case V_USER: _sb.append("(.*)"); break;
+				default: return null;
+				}
+			}
+			if (literals[vars.length].length() > 0) {
+				_sb.append(Pattern.quote(literals[vars.length]));
+			}
+			return Pattern.compile(_sb.toString());
+		}
+
+		/**
+		 * Parses the date of a name that matches the pattern: ${date} or else ${yyyy}${MM}${dd}.
+		 *
+		 * @return	the packed date or DateParser.NONE
+		 */
+		private int parseDate(Matcher m) {
+			String _date = null;
+			StringBuilder _parts = new StringBuilder(8);
+			for (int i = 0; i < vars.length; i++) {
+				String _group = m.group(i + 1);
+				if (vars[i] == V_DATE && _date == null) {
+					_date = _group;
+				}
+				else if (vars[i] == V_YYYY || vars[i] == V_MM || vars[i] == V_DD) {
+					int _offset = vars[i] == V_YYYY ? 0 : vars[i] == V_MM ? 4 : 6;
+					if (_group != null && _parts.length() == _offset) {
+						_parts.append(_group);
+					}
+				}
+			}
+			if (_date == null) {
+				_date = _parts.toString();
+			}
+			if (_date.isEmpty()) {
+				return DateParser.NONE;
+			}
+			int _parsed = DateParser.parseLeading(_date);
+			return DateParser.precision(_parsed) * 2 + 2 == _date.length() ? _parsed : DateParser.NONE;
+		}
+
+		/**
+		 * @return	the ${user} of a name that matches the pattern or ""
+		 */
+		private String parseUser(Matcher m) {
+			for (int i = 0; i < vars.length; i++) {
+				if (vars[i] == V_USER) {
+					return m.group(i + 1);
+				}
+			}
+			return "";
+		}
+
+		private String expand(int date, String name, String user) {
+			StringBuilder _sb = new StringBuilder(64);
+			for (int i = 0; i < vars.length; i++) {
+				_sb.append(literals[i]);
+				switch (vars[i]) {
+				case V_DATE: DateParser.append(_sb, date); break;
+				case V_YYYY: if (DateParser.precision(date) >= DateParser.YEAR) DateParser.appendDigits(_sb, DateParser.year(date), 4); break;
+				case V_MM: if (DateParser.precision(date) >= DateParser.MONTH) DateParser.appendDigits(_sb, DateParser.month(date), 2); break;
+				case V_DD: if (DateParser.precision(date) >= DateParser.DAY) DateParser.appendDigits(_sb, DateParser.day(date), 2); break;
+				case V_NAME: _sb.append(name, 0, Math.max(0, name.length() - params[i])); break;
+				case V_USER: _sb.append(user); break;
+				}
+			}
+			return _sb.append(literals[literals.length - 1]).toString();
+		}
+	}
+}
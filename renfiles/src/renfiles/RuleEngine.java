@@ -0,0 +1,279 @@
+package renfiles;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Classifies file names according to the rule table (see renfiles.rules and {@link RenameRule}).
+ * The rules are compiled once into prefix and postfix tries, so that each file name is
+ * checked against all rules in a single pass instead of a chain of startsWith / endsWith checks.<p>
+ * As in the original if / else chain, the rule with the lowest index wins.
+ * Rules that require a leading date are only checked if none of the other rules applies;
+ * the leading date is parsed only in this case.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class RuleEngine {
+	private final RenameRule[] rules;
+	private final RuleTrie[] tries = new RuleTrie[6];	// [date ? 3 : 0 + matchType]
+	private final long[] anyDateRules;
+	private boolean hasDateRules = false;
+
+	/**
+	 * Constructor; compiles the rules.
+	 *
+	 * @param rules		the rules, ordered by priority
+	 */
+	public RuleEngine(List<RenameRule> rules) {
+		this.rules = rules.toArray(new RenameRule[rules.size()]);
+		anyDateRules = new long[(this.rules.length + 63) >>> 6];
+		for (int i = 0; i < this.rules.length; i++) {
+			RenameRule _rule = this.rules[i];
+			hasDateRules |= _rule.isLeadingDate();
+			if (_rule.getMatchType() == RenameRule.ANY) {
+				anyDateRules[i >>> 6] |= 1L << i;
+				continue;
+			}
+			int _t = (_rule.isLeadingDate() ? 3 : 0) + _rule.getMatchType();
+			if (tries[_t] == null) {
+				tries[_t] = new RuleTrie(_rule.getMatchType() != RenameRule.PREFIX,
+						_rule.getMatchType() == RenameRule.IPOSTFIX);
+			}
+			tries[_t].add(_rule.getKey(), i);
+		}
+	}
+
+	/**
+	 * Loads the rule table from a file. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param ruleFile	the rule table
+	 * @param config	the configuration variables that can be used within the templates (e.g. news, doc)
+	 * @return			the compiled rules
+	 * @throws IOException if the file can not be read or contains an invalid rule
+	 */
+	public static RuleEngine load(File ruleFile, Map<String, String> config) throws IOException {
+		return load(new InputStreamReader(new FileInputStream(ruleFile), "UTF-8"), ruleFile.toString(), config);
+	}
+
+	/**
+	 * Loads the rule table. Empty lines and lines starting with # are ignored.
+	 *
+	 * @param reader	the table (closed afterwards)
+	 * @param name		the name of the table for the error messages
+	 * @param config	the configuration variables that can be used within the templates (e.g. news, doc)
+	 * @return			the compiled rules
+	 * @throws IOException if the file can not be read or contains an invalid rule
+	 */
+	public static RuleEngine load(Reader reader, String name, Map<String, String> config) throws IOException {
+		List<RenameRule> _rules = new ArrayList<RenameRule>();
+		BufferedReader _reader = new BufferedReader(reader);
+		try {
+			String _line;
+			int _lineNr = 0;
+			while ((_line = _reader.readLine()) != null) {
+				_lineNr++;
+				_line = _line.trim();
+				if (_line.isEmpty() || _line.startsWith("#")) {
+					continue;
+				}
+				try {
+					_rules.add(new RenameRule(_line, _rules.size(), config));
+				}
+				catch (IllegalArgumentException _ex) {
+					throw new IOException(name + ":" + _lineNr + ": " + _ex.getMessage());
+				}
+			}
+		}
+		finally {
+			_reader.close();
+		}
+		return new RuleEngine(_rules);
+	}
+
+	/**
+	 * @return	the number of rules
+	 */
+	public int size() {
+		return rules.length;
+	}
+
+	/**
+	 * Classifies a file name.
+	 *
+	 * @param fileName	the name of the file (without directory)
+	 * @return			the destination of the file or null if no rule applies
+	 */
+	public Classification classify(String fileName) {
+		return classify(fileName, 0);
+	}
+
+	/**
+	 * Classifies a file name; rules with the date type mtime use the modification time.
+	 *
+	 * @param fileName		the name of the file (without directory)
+	 * @param lastModified	the modification time of the file or 0 if unknown
+	 * @return				the destination of the file or null if no rule applies
+	 */
+	public Classification classify(String fileName, long lastModified) {
+		long[] _candidates = new long[anyDateRules.length];
+		for (int t = 0; t < 3; t++) {
+			if (tries[t] != null) {
+				tries[t].match(fileName, 0, _candidates);
+			}
+		}
+		Classification _result = applyFirst(_candidates, fileName, DateParser.NONE, lastModified);
+		if (_result != null || hasDateRules == false) {
+			return _result;
+		}
+		int _date = DateParser.parseLeading(fileName);
+		if (_date == DateParser.NONE) {
+			return null;
+		}
+		System.arraycopy(anyDateRules, 0, _candidates, 0, _candidates.length);
+		for (int t = 3; t < 6; t++) {
+			if (tries[t] != null) {
+				tries[t].match(fileName, t == 3 ? RenameRule.DATE_KEY_OFFSET : 0, _candidates);
+			}
+		}
+		return applyFirst(_candidates, fileName, _date, lastModified);
+	}
+
+	/**
+	 * Recomputes the destination of an archived file with the current rules, e.g. after the destPath of a rule
+	 * was changed: the first rule (in the order of the rule table) that created the name, i.e. a rule whose
+	 * destFile template matches the name (see {@link RenameRule#relocate(String)}) or a rule that keeps the
+	 * original name and applies to it. The rule <code>date</code> alone is ignored, as an archived file that
+	 * no other rule recognizes was probably filed manually.
+	 *
+	 * @param fileName		the name of the archived file (without directory)
+	 * @param lastModified	the modification time of the file or 0 if unknown
+	 * @return				the destination of the file (with the same name) or null if no rule created the name
+	 */
+	public Classification relocate(String fileName, long lastModified) {
+		Classification _kept = classify(fileName, lastModified);
+		if (_kept != null && (_kept.getRule().getMatchType() == RenameRule.ANY ||
+				_kept.getDestFileName().equals(fileName) == false)) {
+			_kept = null;
+		}
+		int _end = _kept == null ? rules.length : _kept.getRule().getIndex();
+		for (int i = 0; i < _end; i++) {
+			Classification _result = rules[i].relocate(fileName);
+			if (_result != null) {
+				return _result;
+			}
+		}
+		return _kept;
+	}
+
+	/**
+	 * Determines the rule that applies to a file name without creating the destination, e.g. to classify
+	 * the names of a {@link NameTable} in place. The destination is created later by {@link #apply}.
+	 *
+	 * @param fileName		the name of the file (without directory)
+	 * @param lastModified	the modification time of the file or 0 if unknown
+	 * @param date			receives the date of the file (date[0]) if a rule applies
+	 * @return				the index of the rule that applies or -1
+	 */
+	public int match(CharSequence fileName, long lastModified, int[] date) {
+		return match(fileName, lastModified, date, newCandidates());
+	}
+
+	/**
+	 * Determines the rule that applies to a file name like {@link #match(CharSequence, long, int[])}, but with
+	 * a scratch array for the candidate rules that is reused for all names of a batch.
+	 *
+	 * @param fileName		the name of the file (without directory)
+	 * @param lastModified	the modification time of the file or 0 if unknown
+	 * @param date			receives the date of the file (date[0]) if a rule applies
+	 * @param candidates	the scratch array (see {@link #newCandidates()}), overwritten
+	 * @return				the index of the rule that applies or -1
+	 */
+	public int match(CharSequence fileName, long lastModified, int[] date, long[] candidates) {
+		Arrays.fill(candidates, 0);
+		for (int t = 0; t < 3; t++) {
+			if (tries[t] != null) {
+				tries[t].match(fileName, 0, candidates);
+			}
+		}
+		int _rule = matchFirst(candidates, fileName, DateParser.NONE, lastModified, date);
+		if (_rule >= 0 || hasDateRules == false) {
+			return _rule;
+		}
+		int _date = DateParser.parseLeading(fileName);
+		if (_date == DateParser.NONE) {
+			return -1;
+		}
+		System.arraycopy(anyDateRules, 0, candidates, 0, candidates.length);
+		for (int t = 3; t < 6; t++) {
+			if (tries[t] != null) {
+				tries[t].match(fileName, t == 3 ? RenameRule.DATE_KEY_OFFSET : 0, candidates);
+			}
+		}
+		return matchFirst(candidates, fileName, _date, lastModified, date);
+	}
+
+	/**
+	 * @return	a scratch array for the candidate rules of {@link #match(CharSequence, long, int[], long[])}
+	 */
+	public long[] newCandidates() {
+		return new long[anyDateRules.length];
+	}
+
+	/**
+	 * Creates the destination of a file name for the rule found by {@link #match}.
+	 *
+	 * @param rule			the index of the rule
+	 * @param fileName		the name of the file (without directory)
+	 * @param matched		the name (or value) given to match
+	 * @param date			the date found by match; it is not parsed again
+	 * @return				the destination of the file
+	 */
+	public Classification apply(int rule, String fileName, String matched, int date) {
+		return rules[rule].apply(fileName, matched, date);
+	}
+
+	/**
+	 * @param rule	the index of a rule
+	 * @return		the rule
+	 */
+	public RenameRule getRule(int rule) {
+		return rules[rule];
+	}
+
+	/**
+	 * Checks the candidate rules in the order of the rule table, until one of them applies.
+	 */
+	private int matchFirst(long[] candidates, CharSequence fileName, int leadingDate, long lastModified, int[] date) {
+		for (int w = 0; w < candidates.length; w++) {
+			long _bits = candidates[w];
+			while (_bits != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(_bits);
+				_bits &= _bits - 1;
+				int _date = rules[i].match(fileName, leadingDate, lastModified);
+				if (_date >= 0) {
+					date[0] = _date;
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Applies the candidate rules in the order of the rule table, until one of them applies.
+	 */
+	private Classification applyFirst(long[] candidates, String fileName, int leadingDate, long lastModified) {
+		for (int w = 0; w < candidates.length; w++) {
+			long _bits = candidates[w];
+			while (_bits != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(_bits);
+				_bits &= _bits - 1;
+				Classification _result = rules[i].apply(fileName, leadingDate, lastModified);
+				if (_result != null) {
+					return _result;
+				}
+			}
+		}
+		return null;
+	}
+}
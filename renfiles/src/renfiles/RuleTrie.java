@@ -0,0 +1,98 @@
+package renfiles;
+
+/**
+ * A character trie over the match keys of the classification rules.
+ * All keys of one match type are compiled into a single trie, so that
+ * a file name is checked against all of them in one walk over its characters,
+ * without creating any substrings.<p>
+ * A trie either walks a name from a start offset to the end (prefix keys) or
+ * from the end backwards (postfix keys).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+class RuleTrie {
+	private final boolean reverse;
+	private final boolean ignoreCase;
+	private final Node root = new Node();
+
+	/**
+	 * A node of the trie; the children are kept in two parallel arrays,
+	 * as the fan-out of the rule keys is very small.
+	 */
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private int[] rules = new int[0];	// indexes of the rules whose key ends here
+
+		private Node getChild(char c) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node addChild(char c) {
+			Node _child = getChild(c);
+			if (_child == null) {
+				_child = new Node();
+				keys = java.util.Arrays.copyOf(keys, keys.length + 1);
+				children = java.util.Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = c;
+				children[children.length - 1] = _child;
+			}
+			return _child;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param reverse		true if the keys are postfixes, i.e. names are walked from the end
+	 * @param ignoreCase	true if the keys are compared case-insensitively
+	 */
+	RuleTrie(boolean reverse, boolean ignoreCase) {
+		this.reverse = reverse;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Adds the key of a rule to the trie.
+	 *
+	 * @param key		the prefix or postfix string of the rule
+	 * @param rule		the index of the rule in the rule table
+	 */
+	void add(String key, int rule) {
+		Node _node = root;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(reverse ? key.length() - 1 - i : i);
+			_node = _node.addChild(ignoreCase ? Character.toLowerCase(c) : c);
+		}
+		_node.rules = java.util.Arrays.copyOf(_node.rules, _node.rules.length + 1);
+		_node.rules[_node.rules.length - 1] = rule;
+	}
+
+	/**
+	 * Walks a name through the trie and marks all rules whose key matches.
+	 *
+	 * @param s				the name to check
+	 * @param from			the offset in s where prefix keys start (ignored for postfix keys)
+	 * @param candidates	bit set of rule indexes; the matching rules are added to it
+	 */
+	void match(CharSequence s, int from, long[] candidates) {
+		Node _node = root;
+		int _len = s.length();
+		for (int i = from; i < _len; i++) {
+			char c = s.charAt(reverse ? _len - 1 - (i - from) : i);
+			_node = _node.getChild(ignoreCase ? Character.toLowerCase(c) : c);
+			if (_node == null) {
+				return;
+			}
+			for (int j = 0; j < _node.rules.length; j++) {
+				candidates[_node.rules[j] >>> 6] |= 1L << _node.rules[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package renfiles;
+import java.io.File;
+
+/**
+ * Static partitioning of the files among a fixed number of instances: each instance converts the files whose
+ * name hash falls into its shard. No file is written and no coordination is needed, but the shard of an instance
+ * that is not running is not converted. The hash of a name is <code>String.hashCode()</code>, which is the same
+ * on all machines.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class ShardClaims implements FileClaims {
+	private final int shardCount;
+	private final int shardIndex;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param shardCount	the number of instances
+	 * @param shardIndex	the shard of this instance (0 .. shardCount - 1)
+	 * @throws IllegalArgumentException if the shard is not valid
+	 */
+	public ShardClaims(int shardCount, int shardIndex) {
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException("invalid shard " + shardIndex + " of " + shardCount);
+		}
+		this.shardCount = shardCount;
+		this.shardIndex = shardIndex;
+	}
+
+	/**
+	 * @return	true if the name of the file belongs to the shard of this instance
+	 */
+	public boolean claim(File f) {
+		return (f.getName().hashCode() & 0x7FFFFFFF) % shardCount == shardIndex;
+	}
+
+	/**
+	 * @return	always false, the claims are not lost
+	 */
+	public boolean isLost(File f) {
+		return false;
+	}
+
+	public void release(File f) {
+	}
+
+	public void close() {
+	}
+}
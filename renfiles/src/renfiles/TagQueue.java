@@ -0,0 +1,123 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Collects the files to tag during a run and tags them in batches at the end.<p>
+ * The files are grouped by their tag set, and the {@link Tagger} backend is called once per group
+ * (split into chunks of at most batchSize files), instead of once per file.
+ * Failures are collected and returned by {@link #flush()}. The successfully tagged files are recorded
+ * in the {@link Journal}, if there is one.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class TagQueue {
+	private final Tagger tagger;
+	private final int batchSize;
+	private final Journal journal;
+	private final Map<String, List<File>> groups = new TreeMap<String, List<File>>();
+	private int taggedCount = 0;
+	private int callCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tagger		the backend that adds the tags
+	 * @param batchSize		the maximal number of files per backend call
+	 * @param journal		records the tagged files, or null
+	 */
+	public TagQueue(Tagger tagger, int batchSize, Journal journal) {
+		this.tagger = tagger;
+		this.batchSize = Math.max(1, batchSize);
+		this.journal = journal;
+	}
+
+	/**
+	 * Creates the tagger backend from its configuration name.
+	 *
+	 * @param backend	tool (external tag tool), xattr (extended attribute) or none
+	 * @param command	the path of the external tag tool
+	 * @return			the backend
+	 * @throws IllegalArgumentException if the backend is unknown
+	 */
+	public static Tagger createTagger(String backend, String command) {
+		if (backend.equals("tool")) {
+			return new TagToolTagger(command);
+		}
+		else if (backend.equals("xattr")) {
+			return new XattrTagger();
+		}
+		else if (backend.equals("none")) {
+			return new NoTagger();
+		}
+		throw new IllegalArgumentException("unknown tag backend: " + backend);
+	}
+
+	/**
+	 * Adds a file to tag; may be called concurrently.
+	 *
+	 * @param f		the (moved) file
+	 * @param tags	comma-separated list of tags
+	 */
+	public synchronized void add(File f, String tags) {
+		List<File> _files = groups.get(tags);
+		if (_files == null) {
+			_files = new ArrayList<File>();
+			groups.put(tags, _files);
+		}
+		_files.add(f);
+	}
+
+	/**
+	 * Tags all collected files.
+	 *
+	 * @return	the failures, one line per failed backend call
+	 */
+	public synchronized List<String> flush() {
+		List<String> _failures = new ArrayList<String>();
+		for (Map.Entry<String, List<File>> _group : groups.entrySet()) {
+			List<File> _files = _group.getValue();
+			Collections.sort(_files);
+			for (int i = 0; i < _files.size(); i += batchSize) {
+				List<File> _batch = _files.subList(i, Math.min(i + batchSize, _files.size()));
+				callCount++;
+				try {
+					tagger.addTags(_group.getKey(), _batch);
+					taggedCount += _batch.size();
+				}
+				catch (IOException _ex) {
+					_failures.add("tagging " + _batch.size() + " files with " + _group.getKey() + " failed with " + _ex.getMessage());
+					continue;
+				}
+				if (journal != null) {  // the files are tagged, even if the journal can not record it
+					try {
+						for (File _file : _batch) {
+							journal.tagged(_file);
+						}
+					}
+					catch (IOException _ex) {
+						_failures.add("recording " + _batch.size() + " tagged files in the journal failed with " + _ex.getMessage());
+					}
+				}
+			}
+		}
+		groups.clear();
+		return _failures;
+	}
+
+	/**
+	 * @return	the number of files tagged successfully so far
+	 */
+	public synchronized int getTaggedCount() {
+		return taggedCount;
+	}
+
+	/**
+	 * @return	the number of backend calls so far
+	 */
+	public synchronized int getCallCount() {
+		return callCount;
+	}
+}
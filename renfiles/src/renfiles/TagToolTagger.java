@@ -0,0 +1,65 @@
+package renfiles;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds finder tags with the external jdberry / tag tool.<p>
+ * The tool is called once per group of files (<code>tag -a tags file1 file2 ...</code>);
+ * the process is waited for and its output is drained, so that no child processes are left behind.
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class TagToolTagger implements Tagger {
+	private final String command;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param command	the path of the tag tool, e.g. /usr/local/bin/tag
+	 */
+	public TagToolTagger(String command) {
+		this.command = command;
+	}
+
+	/**
+	 * Calls the tag tool for a group of files.
+	 *
+	 * @param tags		comma-separated list of tags
+	 * @param files		the files to tag
+	 * @throws IOException if the tool could not be started or returns an error
+	 */
+	public void addTags(String tags, List<File> files) throws IOException {
+		List<String> _cmd = new ArrayList<String>(files.size() + 3);
+		_cmd.add(command);
+		_cmd.add("-a");
+		_cmd.add(tags);
+		for (File _f : files) {
+			_cmd.add(_f.getPath());		// passed as separate arguments, i.e. blanks in paths are allowed
+		}
+		Process _p = new ProcessBuilder(_cmd).redirectErrorStream(true).start();
+		StringBuilder _output = new StringBuilder();
+		Reader _reader = new InputStreamReader(_p.getInputStream());
+		try {
+			char[] _buf = new char[1024];
+			int n;
+			while ((n = _reader.read(_buf)) > 0) {
+				_output.append(_buf, 0, n);
+			}
+		}
+		finally {
+			_reader.close();
+		}
+		try {
+			int _rc = _p.waitFor();
+			if (_rc != 0) {
+				throw new IOException(command + " returned " + _rc + ": " + _output.toString().trim());
+			}
+		}
+		catch (InterruptedException _ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(command + " interrupted");
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A backend that adds finder tags to files (see {@link TagQueue}).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public interface Tagger {
+	/**
+	 * Adds the same tags to a group of files. Existing tags of the files are kept.
+	 *
+	 * @param tags		comma-separated list of tags
+	 * @param files		the files to tag
+	 * @throws IOException if the tags could not be added
+	 */
+	void addTags(String tags, List<File> files) throws IOException;
+}
@@ -0,0 +1,231 @@
+package renfiles;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds finder tags by writing the extended attribute <code>com.apple.metadata:_kMDItemUserTags</code>
+ * directly, i.e. without starting any external process.<p>
+ * The attribute contains a binary property list (bplist00) with an array of tag names; existing
+ * tags are read and kept. Requires a JDK whose file system supports user-defined file attributes
+ * (on Mac OS/X since JDK 17).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class XattrTagger implements Tagger {
+	private static final String ATTRIBUTE_NAME = "com.apple.metadata:_kMDItemUserTags";
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final Charset UTF16 = Charset.forName("UTF-16BE");
+
+	/**
+	 * Adds the tags to each of the files.
+	 *
+	 * @param tags		comma-separated list of tags
+	 * @param files		the files to tag
+	 * @throws IOException if the tags could not be added to one or more of the files
+	 */
+	public void addTags(String tags, List<File> files) throws IOException {
+		String _firstFailure = null;
+		int _failures = 0;
+		for (File _f : files) {
+			try {
+				addTags(tags, _f.toPath());
+			}
+			catch (IOException _ex) {
+				if (_firstFailure == null) {
+					_firstFailure = _f.getName() + ": " + _ex.getMessage();
+				}
+				_failures++;
+			}
+		}
+		if (_failures > 0) {
+			throw new IOException(_failures + " of " + files.size() + " files not tagged, e.g. " + _firstFailure);
+		}
+	}
+
+	private void addTags(String tags, Path path) throws IOException {
+		UserDefinedFileAttributeView _view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+		if (_view == null) {
+			throw new IOException("user-defined file attributes are not supported");
+		}
+		List<String> _tags = readTags(_view);
+		boolean _changed = false;
+		for (String _tag : tags.split(",")) {
+			_tag = _tag.trim();
+			if (_tag.length() > 0 && containsTag(_tags, _tag) == false) {
+				_tags.add(_tag);
+				_changed = true;
+			}
+		}
+		if (_changed) {
+			_view.write(ATTRIBUTE_NAME, encode(_tags));
+		}
+	}
+
+	/**
+	 * Reads the finder tags of a file; the colors appended by finder are removed.
+	 *
+	 * @param path	the file
+	 * @return		the tags (empty if the file has no tags or the file system does not support the attribute)
+	 * @throws IOException if the attribute can not be read
+	 */
+	static List<String> readTags(Path path) throws IOException {
+		UserDefinedFileAttributeView _view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+		List<String> _tags = new ArrayList<String>();
+		if (_view != null) {
+			for (String _tag : readTags(_view)) {
+				int _nl = _tag.indexOf('\n');
+				_tags.add(_nl < 0 ? _tag : _tag.substring(0, _nl));
+			}
+		}
+		return _tags;
+	}
+
+	private static List<String> readTags(UserDefinedFileAttributeView view) throws IOException {
+		List<String> _tags = new ArrayList<String>();
+		if (view.list().contains(ATTRIBUTE_NAME)) {
+			ByteBuffer _buf = ByteBuffer.allocate(view.size(ATTRIBUTE_NAME));
+			view.read(ATTRIBUTE_NAME, _buf);
+			_buf.flip();
+			_tags.addAll(decode(_buf));
+		}
+		return _tags;
+	}
+
+	/**
+	 * Checks whether a tag is already set; finder appends the color as "\nn" to the tag name.
+	 */
+	private static boolean containsTag(List<String> tags, String tag) {
+		for (String _t : tags) {
+			int _nl = _t.indexOf('\n');
+			if ((_nl < 0 ? _t : _t.substring(0, _nl)).equals(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Encodes a list of strings as binary property list (one array object referencing one string object per tag).
+	 */
+	static ByteBuffer encode(List<String> tags) {
+		int _objects = tags.size() + 1;
+		int _refSize = _objects < 256 ? 1 : 2;
+		List<byte[]> _data = new ArrayList<byte[]>();
+		int _size = 8 + 4 + tags.size() * _refSize;		// header, array marker (with count) and references
+		for (String _tag : tags) {
+			boolean _ascii = ASCII.newEncoder().canEncode(_tag);
+			byte[] _bytes = _tag.getBytes(_ascii ? ASCII : UTF16);
+			_data.add(_bytes);
+			_size += 4 + _bytes.length;
+		}
+		int _offsetSize = _size < 256 ? 1 : (_size < 65536 ? 2 : 4);
+		ByteBuffer _buf = ByteBuffer.allocate(_size + _objects * _offsetSize + 32);
+		int[] _offsets = new int[_objects];
+		_buf.put("bplist00".getBytes(ASCII));
+		_offsets[0] = _buf.position();
+		putMarker(_buf, 0xA0, tags.size());
+		for (int i = 1; i < _objects; i++) {
+			putInt(_buf, i, _refSize);
+		}
+		for (int i = 0; i < tags.size(); i++) {
+			_offsets[i + 1] = _buf.position();
+			boolean _ascii = ASCII.newEncoder().canEncode(tags.get(i));
+			putMarker(_buf, _ascii ? 0x50 : 0x60, _ascii ? _data.get(i).length : _data.get(i).length / 2);
+			_buf.put(_data.get(i));
+		}
+		int _offsetTable = _buf.position();
+		for (int i = 0; i < _objects; i++) {
+			putInt(_buf, _offsets[i], _offsetSize);
+		}
+		_buf.put(new byte[6]);		// unused, sort version
+		_buf.put((byte) _offsetSize);
+		_buf.put((byte) _refSize);
+		_buf.putLong(_objects);
+		_buf.putLong(0);			// top object
+		_buf.putLong(_offsetTable);
+		_buf.flip();
+		return _buf;
+	}
+
+	/**
+	 * Decodes a binary property list that contains an array of strings.
+	 * @throws IOException if the property list has another structure
+	 */
+	static List<String> decode(ByteBuffer buf) throws IOException {
+		List<String> _tags = new ArrayList<String>();
+		try {
+			int _len = buf.limit();
+			int _offsetSize = buf.get(_len - 26) & 0xFF;
+			int _refSize = buf.get(_len - 25) & 0xFF;
+			int _objects = (int) buf.getLong(_len - 24);
+			int _top = (int) buf.getLong(_len - 16);
+			int _offsetTable = (int) buf.getLong(_len - 8);
+			int[] _offsets = new int[_objects];
+			for (int i = 0; i < _objects; i++) {
+				_offsets[i] = getInt(buf, _offsetTable + i * _offsetSize, _offsetSize);
+			}
+			buf.position(_offsets[_top]);
+			int _count = getMarkerLength(buf, 0xA0);
+			int _refs = buf.position();
+			for (int i = 0; i < _count; i++) {
+				buf.position(_offsets[getInt(buf, _refs + i * _refSize, _refSize)]);
+				boolean _ascii = (buf.get(buf.position()) & 0xF0) == 0x50;
+				int _n = getMarkerLength(buf, _ascii ? 0x50 : 0x60);
+				byte[] _bytes = new byte[_ascii ? _n : _n * 2];
+				buf.get(_bytes);
+				_tags.add(new String(_bytes, _ascii ? ASCII : UTF16));
+			}
+		}
+		catch (RuntimeException _ex) {
+			throw new IOException("unexpected format of " + ATTRIBUTE_NAME + ": " + _ex.toString());
+		}
+		return _tags;
+	}
+
+	private static void putMarker(ByteBuffer buf, int type, int length) {
+		if (length < 15) {
+			buf.put((byte) (type | length));
+		}
+		else {
+			buf.put((byte) (type | 0x0F));
+			buf.put((byte) 0x11);		// 2 byte int
+			buf.putShort((short) length);
+		}
+	}
+
+	private static int getMarkerLength(ByteBuffer buf, int type) throws IOException {
+		int _marker = buf.get() & 0xFF;
+		if ((_marker & 0xF0) != type) {
+			throw new IOException("unexpected object type " + Integer.toHexString(_marker));
+		}
+		int _len = _marker & 0x0F;
+		if (_len == 0x0F) {
+			int _size = 1 << (buf.get() & 0x0F);
+			_len = getInt(buf, buf.position(), _size);
+			buf.position(buf.position() + _size);
+		}
+		return _len;
+	}
+
+	private static void putInt(ByteBuffer buf, int value, int size) {
+		for (int i = size - 1; i >= 0; i--) {
+			buf.put((byte) (value >>> (8 * i)));
+		}
+	}
+
+	private static int getInt(ByteBuffer buf, int pos, int size) {
+		int _value = 0;
+		for (int i = 0; i < size; i++) {
+			_value = (_value << 8) | (buf.get(pos + i) & 0xFF);
+		}
+		return _value;
+	}
+}
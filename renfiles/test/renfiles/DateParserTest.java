@@ -0,0 +1,150 @@
+package renfiles;
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that {@link DateParser} returns the same dates as the String based parsing it replaced
+ * (getLeadingDateFromString and SimpleDateFormat("yyyyMMdd") of the modification time).
+ *
+ * @author Bruno Kaiser
+ * @version $Id$
+ */
+public class DateParserTest {
+	private static final String[] ZONES = {
+		"UTC", "Europe/Zurich", "America/New_York", "America/St_Johns", "Australia/Lord_Howe", "Pacific/Kiritimati"
+	};
+	private static final long HOUR = 3600000L;
+
+	private final TimeZone defaultZone = TimeZone.getDefault();
+
+	@After
+	public void restoreZone() {
+		TimeZone.setDefault(defaultZone);
+	}
+
+	/**
+	 * The leading date as parsed before DateParser (see RenameFiles.getLeadingDateFromString in the history).
+	 */
+	private static String baselineLeading(String s) {
+		String _dateStr = null;
+		try {
+			if (s != null && s.length() >= 4) {
+				int i = Integer.valueOf(s.substring(0, 4));
+				if (i > 0 && i < 3000) {
+					_dateStr = s.substring(0, 4);
+					if (s.length() >= 6) {
+						i = Integer.valueOf(s.substring(4, 6));
+						if (i > 0 && i < 13) {
+							_dateStr = s.substring(0, 6);
+							if (s.length() >= 8) {
+								i = Integer.valueOf(s.substring(6, 8));
+								if (i > 0 && i < 32) {
+									_dateStr = s.substring(0, 8);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		catch (NumberFormatException _ex) {
+			// the date found so far
+		}
+		return _dateStr == null ? "" : _dateStr;
+	}
+
+	private static void assertLeading(String name) {
+		assertEquals(name, baselineLeading(name), DateParser.toString(DateParser.parseLeading(name)));
+	}
+
+	@Test
+	public void leadingDateOfRuleTableNames() {
+		String[] _names = {
+			"20140117ic_abc.pdf", "20140117rg_swisscom.pdf", "201401zkb.pdf", "2014abstract_x.pdf",
+			"20140203pf.pdf", "20131225lohn.pdf", "20140117pres.PDF", "20140117informatikSpektrum.pdf",
+			"2014-01-17 diary.pdf", "2014 1 x.pdf", "2014", "201401", "20140117", "2014011", "1999123",
+			"NZZ_20140106.pdf", "abcd", "201", "", "12345678901234567890"
+		};
+		for (String _name : _names) {
+			assertLeading(_name);
+		}
+	}
+
+	@Test
+	public void leadingDateOfInvalidDates() {
+		String[] _years = {"0000", "0001", "1999", "2999", "3000", "9999"};
+		StringBuilder _sb = new StringBuilder();
+		for (String _year : _years) {
+			for (int _month = 0; _month <= 13; _month++) {
+				for (int _day = 0; _day <= 32; _day++) {
+					_sb.setLength(0);
+					_sb.append(_year);
+					DateParser.appendDigits(_sb, _month, 2);
+					DateParser.appendDigits(_sb, _day, 2);
+					assertLeading(_sb.toString());
+					assertLeading(_sb.append("x.pdf").toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Signs and non-ASCII digits were accepted by Integer.valueOf, but are not a date of a file name.
+	 */
+	@Test
+	public void leadingDateOnlyOfAsciiDigits() {
+		assertEquals(DateParser.NONE, DateParser.parseLeading("+2014.pdf"));
+		assertEquals(DateParser.NONE, DateParser.parseLeading("-001.pdf"));
+		assertEquals(DateParser.NONE, DateParser.parseLeading("٢٠١٤.pdf"));
+		assertEquals("2014", DateParser.toString(DateParser.parseLeading("2014+1.pdf")));
+	}
+
+	@Test
+	public void datesAtAnOffset() {
+		assertEquals("20140106", DateParser.toString(DateParser.parseCompact("NZZ_20140106.pdf", 4)));
+		assertEquals("20140116", DateParser.toString(DateParser.parseCompact("kw03_mmgl_xx_20140116.pdf", 13)));
+		assertEquals("20140109", DateParser.toString(DateParser.parseDashed("taz-ges-2014-01-09.pdf", 8)));
+		assertEquals("201401", DateParser.toString(DateParser.parseMonth("communications201401.pdf", 14)));
+		assertEquals(DateParser.NONE, DateParser.parseCompact("NZZ_20141306.pdf", 4));
+		assertEquals(DateParser.NONE, DateParser.parseCompact("NZZ_20140100.pdf", 4));
+		assertEquals(DateParser.NONE, DateParser.parseCompact("NZZ_2014010.pdf", 4));
+		assertEquals(DateParser.NONE, DateParser.parseDashed("taz-ges-2014_01_09.pdf", 8));
+		assertEquals(DateParser.NONE, DateParser.parseMonth("communications2014", 14));
+	}
+
+	private static void assertFromMillis(SimpleDateFormat format, long millis) {
+		assertEquals(TimeZone.getDefault().getID() + " " + millis, format.format(millis),
+				DateParser.toString(DateParser.fromMillis(millis)));
+	}
+
+	@Test
+	public void fromMillisAsSimpleDateFormat() {
+		for (String _zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(_zone));
+			SimpleDateFormat _format = new SimpleDateFormat("yyyyMMdd");
+			// 1900 .. 2100 in steps of 7 hours, i.e. at all times of the day and before 1970
+			for (long _millis = -2208988800000L; _millis < 4102444800000L; _millis += 7 * HOUR) {
+				assertFromMillis(_format, _millis);
+			}
+			// 2013 .. 2015 in steps of a quarter of an hour, around the midnights and the daylight saving switches
+			for (long _millis = 1356998400000L; _millis < 1420070400000L; _millis += HOUR / 4) {
+				assertFromMillis(_format, _millis - 1);
+				assertFromMillis(_format, _millis);
+			}
+		}
+	}
+
+	@Test
+	public void fromMillisOutOfRange() {
+		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+		assertEquals("29991231", DateParser.toString(DateParser.fromMillis(32503680000000L - 1)));
+		assertEquals(DateParser.NONE, DateParser.fromMillis(32503680000000L));
+		assertEquals("00010101", DateParser.toString(DateParser.fromMillis(-62135596800000L)));
+		assertEquals(DateParser.NONE, DateParser.fromMillis(-62135596800000L - 1));
+	}
+}